@@ -3,6 +3,7 @@ package matcher;
 import matcher.classifier.*;
 import matcher.config.Config;
 import matcher.config.ProjectConfig;
+import matcher.serdes.MatchesJournal;
 import matcher.type.*;
 
 import java.io.IOException;
@@ -13,6 +14,7 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
 import java.util.function.Function;
@@ -156,6 +158,7 @@ public class Matcher {
 
 		a.setMatch(b);
 		b.setMatch(a);
+		logMatch(a, b);
 
 		// match array classes
 
@@ -297,6 +300,7 @@ public class Matcher {
 
 		a.setMatch(b);
 		b.setMatch(a);
+		if (matchHierarchyMembers) logMatch(a, b);
 
 		if (matchHierarchyMembers) {
 			// match parent/child methods
@@ -337,6 +341,7 @@ public class Matcher {
 
 		a.setMatch(b);
 		b.setMatch(a);
+		logMatch(a, b);
 
 		env.getCache().clear();
 	}
@@ -355,6 +360,7 @@ public class Matcher {
 
 		a.setMatch(b);
 		b.setMatch(a);
+		logMatch(a, b);
 
 		env.getCache().clear();
 	}
@@ -365,6 +371,7 @@ public class Matcher {
 
 		System.out.println("unmatch class "+cls+" (was "+cls.getMatch()+")"+(cls.hasMappedName() ? " ("+cls.getName(NameType.MAPPED_PLAIN)+")" : ""));
 
+		logUnmatch(cls);
 		cls.getMatch().setMatch(null);
 		cls.setMatch(null);
 
@@ -397,6 +404,7 @@ public class Matcher {
 			}
 		}
 
+		logUnmatch(m);
 		m.getMatch().setMatch(null);
 		m.setMatch(null);
 
@@ -415,29 +423,48 @@ public class Matcher {
 
 		System.out.println("unmatch method var "+a+" (was "+a.getMatch()+")"+(a.hasMappedName() ? " ("+a.getName(NameType.MAPPED_PLAIN)+")" : ""));
 
+		logUnmatch(a);
 		a.getMatch().setMatch(null);
 		a.setMatch(null);
 
 		env.getCache().clear();
 	}
 
-	public void autoMatchAll(DoubleConsumer progressReceiver) {
-		if (autoMatchClasses(ClassifierLevel.Initial, absClassAutoMatchThreshold, relClassAutoMatchThreshold, progressReceiver)) {
-			autoMatchClasses(ClassifierLevel.Initial, absClassAutoMatchThreshold, relClassAutoMatchThreshold, progressReceiver);
-		}
+	private void logMatch(Matchable<?> a, Matchable<?> b) {
+		MatchesJournal journal = env.getJournal();
+		if (journal != null) journal.logMatch(a, b);
+	}
 
-		autoMatchLevel(ClassifierLevel.Intermediate, progressReceiver);
-		autoMatchLevel(ClassifierLevel.Full, progressReceiver);
-		autoMatchLevel(ClassifierLevel.Extra, progressReceiver);
+	private void logUnmatch(Matchable<?> m) {
+		MatchesJournal journal = env.getJournal();
+		if (journal != null) journal.logUnmatch(m);
+	}
 
-		boolean matchedAny;
+	/**
+	 * Run all auto-match passes until they stop finding matches.
+	 *
+	 * <p>Pass a {@link TaskControl} as progressReceiver to allow cancelling, which keeps the matches of all passes
+	 * completed before.
+	 */
+	public void autoMatchAll(DoubleConsumer progressReceiver) {
+		try {
+			if (autoMatchClasses(ClassifierLevel.Initial, absClassAutoMatchThreshold, relClassAutoMatchThreshold, progressReceiver)) {
+				autoMatchClasses(ClassifierLevel.Initial, absClassAutoMatchThreshold, relClassAutoMatchThreshold, progressReceiver);
+			}
 
-		do {
-			matchedAny = autoMatchMethodArgs(ClassifierLevel.Full, absMethodArgAutoMatchThreshold, relMethodArgAutoMatchThreshold, progressReceiver);
-			matchedAny |= autoMatchMethodVars(ClassifierLevel.Full, absMethodVarAutoMatchThreshold, relMethodVarAutoMatchThreshold, progressReceiver);
-		} while (matchedAny);
+			autoMatchLevel(ClassifierLevel.Intermediate, progressReceiver);
+			autoMatchLevel(ClassifierLevel.Full, progressReceiver);
+			autoMatchLevel(ClassifierLevel.Extra, progressReceiver);
 
-		env.getCache().clear();
+			boolean matchedAny;
+
+			do {
+				matchedAny = autoMatchMethodArgs(ClassifierLevel.Full, absMethodArgAutoMatchThreshold, relMethodArgAutoMatchThreshold, progressReceiver);
+				matchedAny |= autoMatchMethodVars(ClassifierLevel.Full, absMethodVarAutoMatchThreshold, relMethodVarAutoMatchThreshold, progressReceiver);
+			} while (matchedAny);
+		} finally {
+			env.getCache().clear();
+		}
 	}
 
 	private void autoMatchLevel(ClassifierLevel level, DoubleConsumer progressReceiver) {
@@ -487,17 +514,21 @@ public class Matcher {
 		}, progressReceiver);
 
 		sanitizeMatches(matches);
-
-		for (Map.Entry<ClassInstance, ClassInstance> entry : matches.entrySet()) {
-			match(entry.getKey(), entry.getValue());
-		}
+		commit(matches, this::match);
 
 		System.out.println("Auto matched "+matches.size()+" classes ("+(classes.size() - matches.size())+" unmatched, "+env.getClassesA().size()+" total)");
 
 		return !matches.isEmpty();
 	}
 
+	/**
+	 * Process workSet on {@link #threadPool} and wait for completion.
+	 *
+	 * <p>If progressReceiver is a {@link TaskControl} that gets cancelled, the remaining items are skipped and a
+	 * CancellationException is thrown once the running ones completed.
+	 */
 	public static <T, C> void runInParallel(List<T> workSet, Consumer<T> worker, DoubleConsumer progressReceiver) {
+		TaskControl.checkCancelled(progressReceiver);
 		if (workSet.isEmpty()) return;
 
 		AtomicInteger itemsDone = new AtomicInteger();
@@ -505,6 +536,8 @@ public class Matcher {
 
 		try {
 			List<Future<Void>> futures = threadPool.invokeAll(workSet.stream().<Callable<Void>>map(workItem -> () -> {
+				if (TaskControl.isCancelled(progressReceiver)) return null;
+
 				worker.accept(workItem);
 
 				int cItemsDone = itemsDone.incrementAndGet();
@@ -522,6 +555,8 @@ public class Matcher {
 		} catch (ExecutionException | InterruptedException e) {
 			throw new RuntimeException(e);
 		}
+
+		TaskControl.checkCancelled(progressReceiver);
 	}
 
 	public boolean autoMatchMethods(DoubleConsumer progressReceiver) {
@@ -534,9 +569,7 @@ public class Matcher {
 				cls -> cls.getMethods(), MethodClassifier::rank, MethodClassifier.getMaxScore(level),
 				progressReceiver, totalUnmatched);
 
-		for (Map.Entry<MethodInstance, MethodInstance> entry : matches.entrySet()) {
-			match(entry.getKey(), entry.getValue());
-		}
+		commit(matches, this::match);
 
 		System.out.println("Auto matched "+matches.size()+" methods ("+totalUnmatched.get()+" unmatched)");
 
@@ -555,9 +588,7 @@ public class Matcher {
 				cls -> cls.getFields(), FieldClassifier::rank, maxScore,
 				progressReceiver, totalUnmatched);
 
-		for (Map.Entry<FieldInstance, FieldInstance> entry : matches.entrySet()) {
-			match(entry.getKey(), entry.getValue());
-		}
+		commit(matches, this::match);
 
 		System.out.println("Auto matched "+matches.size()+" fields ("+totalUnmatched.get()+" unmatched)");
 
@@ -670,15 +701,48 @@ public class Matcher {
 			sanitizeMatches(matches);
 		}
 
-		for (Map.Entry<MethodVarInstance, MethodVarInstance> entry : matches.entrySet()) {
-			match(entry.getKey(), entry.getValue());
-		}
+		commit(matches, this::match);
 
 		System.out.println("Auto matched "+matches.size()+" method "+(isArg ? "arg" : "var")+"s ("+totalUnmatched.get()+" unmatched)");
 
 		return !matches.isEmpty();
 	}
 
+	/**
+	 * Apply the matches found by an auto-match pass as a unit through the commit handler.
+	 *
+	 * <p>Pairs invalidated by concurrent changes since the pass started, e.g. manual matches while it was ranking, are
+	 * dropped from matches. They are all validated before the first gets applied, so the pass' own matches don't
+	 * conflict with each other.
+	 */
+	private <T extends Matchable<T>> void commit(Map<T, T> matches, BiConsumer<T, T> applier) {
+		if (matches.isEmpty()) return;
+
+		commitHandler.accept(() -> {
+			matches.entrySet().removeIf(entry -> !isUnmatchedPair(entry.getKey(), entry.getValue()));
+
+			for (Map.Entry<T, T> entry : matches.entrySet()) {
+				applier.accept(entry.getKey(), entry.getValue());
+			}
+		});
+	}
+
+	private static boolean isUnmatchedPair(Matchable<?> a, Matchable<?> b) {
+		return !a.hasMatch() && !b.hasMatch()
+				&& a.isMatchable() && b.isMatchable()
+				&& (a.getOwner() == null || a.getOwner().getMatch() == b.getOwner());
+	}
+
+	/**
+	 * Set the handler applying the results of each auto-match pass, by default they are applied directly.
+	 *
+	 * <p>The handler has to run the passed task exactly once before returning, it may do so on another thread to
+	 * serialize the match state changes with the threads reading it.
+	 */
+	public void setCommitHandler(Consumer<Runnable> commitHandler) {
+		this.commitHandler = commitHandler != null ? commitHandler : Runnable::run;
+	}
+
 	public static boolean checkRank(List<? extends RankResult<?>> ranking, double absThreshold, double relThreshold, double maxScore) {
 		if (ranking.isEmpty()) return false;
 
@@ -719,58 +783,22 @@ public class Matcher {
 		}
 	}
 
+	/**
+	 * Get the total and matched counts of side A, as maintained by {@link MatchCounter} without scanning the classes.
+	 */
 	public MatchingStatus getStatus(boolean inputsOnly) {
-		int totalClassCount = 0;
-		int matchedClassCount = 0;
-		int totalMethodCount = 0;
-		int matchedMethodCount = 0;
-		int totalMethodArgCount = 0;
-		int matchedMethodArgCount = 0;
-		int totalMethodVarCount = 0;
-		int matchedMethodVarCount = 0;
-		int totalFieldCount = 0;
-		int matchedFieldCount = 0;
-
-		for (ClassInstance cls : env.getClassesA()) {
-			if (inputsOnly && !cls.isInput()) continue;
-
-			totalClassCount++;
-			if (cls.hasMatch()) matchedClassCount++;
-
-			for (MethodInstance method : cls.getMethods()) {
-				if (method.isReal()) {
-					totalMethodCount++;
-
-					if (method.hasMatch()) matchedMethodCount++;
-
-					for (MethodVarInstance arg : method.getArgs()) {
-						totalMethodArgCount++;
-
-						if (arg.hasMatch()) matchedMethodArgCount++;
-					}
-
-					for (MethodVarInstance var : method.getVars()) {
-						totalMethodVarCount++;
-
-						if (var.hasMatch()) matchedMethodVarCount++;
-					}
-				}
-			}
+		int[] counts = env.getMatchCounter().getCounts(inputsOnly);
+		int cls = MatchableKind.CLASS.ordinal() * 2;
+		int method = MatchableKind.METHOD.ordinal() * 2;
+		int arg = MatchableKind.METHOD_ARG.ordinal() * 2;
+		int var = MatchableKind.METHOD_VAR.ordinal() * 2;
+		int field = MatchableKind.FIELD.ordinal() * 2;
 
-			for (FieldInstance field : cls.getFields()) {
-				if (field.isReal()) {
-					totalFieldCount++;
-
-					if (field.hasMatch()) matchedFieldCount++;
-				}
-			}
-		}
-
-		return new MatchingStatus(totalClassCount, matchedClassCount,
-				totalMethodCount, matchedMethodCount,
-				totalMethodArgCount, matchedMethodArgCount,
-				totalMethodVarCount, matchedMethodVarCount,
-				totalFieldCount, matchedFieldCount);
+		return new MatchingStatus(counts[cls], counts[cls + 1],
+				counts[method], counts[method + 1],
+				counts[arg], counts[arg + 1],
+				counts[var], counts[var + 1],
+				counts[field], counts[field + 1]);
 	}
 
 	public boolean propagateNames(DoubleConsumer progressReceiver) {
@@ -781,6 +809,8 @@ public class Matcher {
 		int propagatedArgNames = 0;
 
 		for (ClassInstance cls : env.getClassesB()) {
+			TaskControl.checkCancelled(progressReceiver); // names are only propagated per complete hierarchy
+
 			if (cls.getMethods().length > 0) {
 				for (MethodInstance method : cls.getMethods()) {
 					if (method.getAllHierarchyMembers().size() <= 1) continue;
@@ -896,4 +926,5 @@ public class Matcher {
 	private final double relMethodArgAutoMatchThreshold = 0.085;
 	private final double absMethodVarAutoMatchThreshold = 0.85;
 	private final double relMethodVarAutoMatchThreshold = 0.085;
+	private volatile Consumer<Runnable> commitHandler = Runnable::run;
 }
@@ -0,0 +1,320 @@
+package matcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleConsumer;
+
+import matcher.classifier.ClassClassifier;
+import matcher.type.ClassInstance;
+import matcher.type.FieldInstance;
+import matcher.type.Matchable;
+import matcher.type.MethodInstance;
+import matcher.type.MethodVarInstance;
+
+/**
+ * Case insensitive substring search over the names, string constants and numeric constants of one side's classes.
+ *
+ * <p>Every indexed text belongs to a class, the index maps each trigram to the classes having it in any of their
+ * texts. A query thus only scans the texts of the classes containing all of its trigrams. {@link #update} re-indexes
+ * the classes where the {@link ClassInstance#getNameVersion name version} of any class their names depend on changed,
+ * see {@link ClassInstance#addNameDependencies}. This covers name, mapping and match changes of the class, its members
+ * and vars as well as renames of outer classes.
+ *
+ * <p>Instances are thread safe, queries may run concurrently with updates.
+ */
+public final class SearchIndex {
+	public enum Kind {
+		NAME, STRING, NUMBER;
+	}
+
+	/**
+	 * Re-index the classes whose names changed since they were last indexed and drop the ones not in classes.
+	 *
+	 * @return number of classes indexed or dropped
+	 */
+	public int update(Collection<ClassInstance> classes, DoubleConsumer progressReceiver) {
+		List<ClassInstance> outdated = new ArrayList<>();
+		Set<ClassInstance> removed;
+
+		synchronized (this) {
+			removed = Util.newIdentityHashSet(entries.keySet());
+
+			for (ClassInstance cls : classes) {
+				removed.remove(cls);
+
+				ClassEntry entry = entries.get(cls);
+				if (entry == null || !entry.isValid()) outdated.add(cls);
+			}
+		}
+
+		List<ClassEntry> newEntries = Collections.synchronizedList(new ArrayList<>(outdated.size()));
+
+		Matcher.runInParallel(outdated, cls -> newEntries.add(createEntry(cls)), progressReceiver);
+
+		synchronized (this) {
+			for (ClassInstance cls : removed) {
+				remove(entries.remove(cls));
+			}
+
+			for (ClassEntry entry : newEntries) {
+				remove(entries.put(entry.cls, entry));
+
+				for (long gram : entry.grams) {
+					postings.computeIfAbsent(gram, ignore -> Util.newIdentityHashSet()).add(entry);
+				}
+			}
+		}
+
+		return removed.size() + newEntries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		postings.clear();
+	}
+
+	public synchronized int getClassCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Find the texts containing query, ignoring case.
+	 *
+	 * <p>Exact matches come first, then prefix matches, then the shortest texts. Queries shorter than a trigram scan all
+	 * texts and return the first matches found.
+	 */
+	public List<Result> search(String query, int maxResults) {
+		String str = fold(query.trim());
+		if (str.isEmpty() || maxResults <= 0) return Collections.emptyList();
+
+		List<Result> ret = new ArrayList<>();
+
+		synchronized (this) {
+			if (str.length() < gramLength) {
+				for (ClassEntry entry : entries.values()) {
+					if (!entry.find(str, ret, maxResults)) break;
+				}
+
+				return ret;
+			}
+
+			List<Set<ClassEntry>> sets = new ArrayList<>();
+
+			for (int i = 0; i + gramLength <= str.length(); i++) {
+				Set<ClassEntry> set = postings.get(getGram(str, i));
+				if (set == null) return ret;
+
+				sets.add(set);
+			}
+
+			sets.sort(Comparator.comparingInt(Set::size));
+
+			cands: for (ClassEntry entry : sets.get(0)) {
+				for (int i = 1; i < sets.size(); i++) {
+					if (!sets.get(i).contains(entry)) continue cands;
+				}
+
+				entry.find(str, ret, Integer.MAX_VALUE);
+			}
+		}
+
+		ret.sort(Comparator.<Result>comparingInt(r -> r.foldedText.equals(str) ? 0 : r.foldedText.startsWith(str) ? 1 : 2)
+				.thenComparingInt(r -> r.text.length())
+				.thenComparing(r -> r.text));
+
+		return ret.size() > maxResults ? new ArrayList<>(ret.subList(0, maxResults)) : ret;
+	}
+
+	private void remove(ClassEntry entry) {
+		if (entry == null) return;
+
+		for (long gram : entry.grams) {
+			Set<ClassEntry> set = postings.get(gram);
+			set.remove(entry);
+			if (set.isEmpty()) postings.remove(gram);
+		}
+	}
+
+	private static ClassEntry createEntry(ClassInstance cls) {
+		// read the versions before the names, a concurrent change will trigger another update
+		ClassInstance matchedCls = cls.getMatch();
+		Map<ClassInstance, Integer> dependencies = new IdentityHashMap<>();
+		cls.addNameDependencies(dependencies); // includes the matched and outer classes
+		List<Result> texts = new ArrayList<>();
+
+		addNames(cls, texts);
+
+		for (MethodInstance method : cls.getMethods()) {
+			addNames(method, texts);
+
+			for (MethodVarInstance arg : method.getArgs()) {
+				addNames(arg, texts);
+			}
+
+			for (MethodVarInstance var : method.getVars()) {
+				addNames(var, texts);
+			}
+		}
+
+		for (FieldInstance field : cls.getFields()) {
+			addNames(field, texts);
+		}
+
+		for (String str : cls.getStrings()) {
+			texts.add(new Result(cls, Kind.STRING, null, str));
+		}
+
+		Set<Integer> ints = new HashSet<>();
+		Set<Long> longs = new HashSet<>();
+		Set<Float> floats = new HashSet<>();
+		Set<Double> doubles = new HashSet<>();
+		ClassClassifier.extractNumbers(cls, ints, longs, floats, doubles);
+
+		for (Set<? extends Number> numbers : List.of(ints, longs, floats, doubles)) {
+			for (Number number : numbers) {
+				texts.add(new Result(cls, Kind.NUMBER, null, number.toString()));
+			}
+		}
+
+		Set<Long> grams = new HashSet<>();
+
+		for (Result text : texts) {
+			for (int i = 0; i + gramLength <= text.foldedText.length(); i++) {
+				grams.add(getGram(text.foldedText, i));
+			}
+		}
+
+		return new ClassEntry(cls, matchedCls, dependencies, texts.toArray(new Result[0]), grams.stream().mapToLong(Long::longValue).toArray());
+	}
+
+	private static void addNames(Matchable<?> matchable, List<Result> out) {
+		Set<String> added = new HashSet<>();
+
+		for (NameType type : indexedNameTypes) {
+			String name = matchable.getName(type);
+			if (name == null) continue;
+
+			if (matchable instanceof ClassInstance) name = name.replace('/', '.');
+			if (added.add(name)) out.add(new Result(matchable, Kind.NAME, type, name));
+		}
+	}
+
+	/**
+	 * Fold case and package separators, so class names match in either notation.
+	 */
+	private static String fold(String str) {
+		return str.replace('/', '.').toLowerCase(Locale.ROOT);
+	}
+
+	private static long getGram(String str, int pos) {
+		return (long) str.charAt(pos) << 32 | (long) str.charAt(pos + 1) << 16 | str.charAt(pos + 2);
+	}
+
+	public static final class Result {
+		Result(Matchable<?> matchable, Kind kind, NameType nameType, String text) {
+			this.matchable = matchable;
+			this.kind = kind;
+			this.nameType = nameType;
+			this.text = text;
+			this.foldedText = fold(text);
+		}
+
+		/**
+		 * Get the element named by the text or, for constants, its class.
+		 */
+		public Matchable<?> getMatchable() {
+			return matchable;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * Get the name type the name text was found for, null for constants.
+		 */
+		public NameType getNameType() {
+			return nameType;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public String toString() {
+			return kind+" "+text+" ("+matchable+")";
+		}
+
+		private final Matchable<?> matchable;
+		private final Kind kind;
+		private final NameType nameType;
+		private final String text;
+		private final String foldedText;
+	}
+
+	private static final class ClassEntry {
+		ClassEntry(ClassInstance cls, ClassInstance matchedCls, Map<ClassInstance, Integer> dependencies, Result[] texts, long[] grams) {
+			this.cls = cls;
+			this.matchedCls = matchedCls;
+			this.dependencies = dependencies.keySet().toArray(new ClassInstance[0]);
+			this.versions = new int[this.dependencies.length];
+			this.texts = texts;
+			this.grams = grams;
+
+			for (int i = 0; i < versions.length; i++) {
+				versions[i] = dependencies.get(this.dependencies[i]);
+			}
+		}
+
+		/**
+		 * Whether the names are still current, mapped names may come from the matched class and inner class names
+		 * from the outer classes.
+		 */
+		boolean isValid() {
+			if (cls.getMatch() != matchedCls) return false;
+
+			for (int i = 0; i < versions.length; i++) {
+				if (dependencies[i].getNameVersion() != versions[i]) return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Add the texts containing str to out until it holds maxResults.
+		 *
+		 * @return whether out has room for more results
+		 */
+		boolean find(String str, List<Result> out, int maxResults) {
+			for (Result text : texts) {
+				if (out.size() >= maxResults) return false;
+				if (text.foldedText.contains(str)) out.add(text);
+			}
+
+			return out.size() < maxResults;
+		}
+
+		final ClassInstance cls;
+		final ClassInstance matchedCls;
+		final ClassInstance[] dependencies;
+		final int[] versions;
+		final Result[] texts;
+		final long[] grams;
+	}
+
+	private static final int gramLength = 3;
+	private static final NameType[] indexedNameTypes = { NameType.PLAIN, NameType.MAPPED, NameType.TMP_PLAIN, NameType.AUX, NameType.AUX2 };
+
+	private final Map<ClassInstance, ClassEntry> entries = new IdentityHashMap<>();
+	private final Map<Long, Set<ClassEntry>> postings = new HashMap<>();
+}
@@ -0,0 +1,66 @@
+package matcher;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Progress receiver that also carries the cancellation state and optional wall-clock budget of an operation.
+ *
+ * <p>Long running operations take it in place of their plain progress receiver and check it between work items through
+ * the static helpers, which accept any progress receiver. Once cancelled or out of time, the operation stops with a
+ * {@link CancellationException} at a point where everything applied so far is complete.
+ */
+public final class TaskControl implements DoubleConsumer {
+	public TaskControl(DoubleConsumer progressReceiver) {
+		this(progressReceiver, 0);
+	}
+
+	/**
+	 * @param budget maximum run time in ms, 0 for no limit
+	 */
+	public TaskControl(DoubleConsumer progressReceiver, long budget) {
+		this.progressReceiver = progressReceiver;
+		this.deadline = budget > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget) : 0;
+		this.hasDeadline = budget > 0;
+	}
+
+	@Override
+	public void accept(double progress) {
+		progressReceiver.accept(progress);
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		if (cancelled) return true;
+
+		if (hasDeadline && System.nanoTime() - deadline >= 0) {
+			cancelled = true;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check whether the operation reporting to progressReceiver should stop.
+	 */
+	public static boolean isCancelled(DoubleConsumer progressReceiver) {
+		return progressReceiver instanceof TaskControl && ((TaskControl) progressReceiver).isCancelled();
+	}
+
+	/**
+	 * Throw a CancellationException if the operation reporting to progressReceiver should stop.
+	 */
+	public static void checkCancelled(DoubleConsumer progressReceiver) {
+		if (isCancelled(progressReceiver)) throw new CancellationException("operation cancelled");
+	}
+
+	private final DoubleConsumer progressReceiver;
+	private final long deadline;
+	private final boolean hasDeadline;
+	private volatile boolean cancelled;
+}
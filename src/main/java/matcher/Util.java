@@ -333,6 +333,4 @@ public class Util {
 			if (startB != posB) return -1;
 		}
 	}
-
-	public static final Object asmNodeSync = new Object();
 }
@@ -6,84 +6,112 @@ import matcher.NameType;
 import matcher.type.ClassEnv;
 import matcher.type.ClassInstance;
 import matcher.type.FieldInstance;
+import matcher.type.Matchable;
 import matcher.type.MethodInstance;
 import matcher.type.MethodVarInstance;
 
 public class AsmRemapper extends Remapper {
 	public AsmRemapper(ClassEnv env, NameType nameType) {
+		this(env, nameType, null);
+	}
+
+	/**
+	 * Create a remapper, resolving lookups through table if not null.
+	 */
+	public AsmRemapper(ClassEnv env, NameType nameType, RemapTable table) {
+		if (table != null && table.getNameType() != nameType) throw new IllegalArgumentException("name type mismatch");
+
 		this.env = env;
 		this.nameType = nameType;
+		this.table = table;
 	}
 
 	@Override
 	public String map(String typeName) {
-		ClassInstance cls = env.getClsByName(typeName);
+		ClassInstance cls = getClsByName(typeName);
 		if (cls == null) return typeName;
 
-		return cls.getName(nameType);
+		onClassUse(cls);
+
+		return getName(cls);
 	}
 
 	@Override
 	public String mapFieldName(String owner, String name, String desc) {
-		ClassInstance cls = env.getClsByName(owner);
+		ClassInstance cls = getClsByName(owner);
 		if (cls == null) return name;
 
-		FieldInstance field = cls.resolveField(name, desc);
+		onClassUse(cls);
+
+		FieldInstance field = resolveField(cls, name, desc);
 		if (field == null) return name;
+		if (field.getCls() != cls) onClassUse(field.getCls());
 
-		return field.getName(nameType);
+		return getName(field);
 	}
 
 	@Override
 	public String mapMethodName(String owner, String name, String desc) {
-		ClassInstance cls = env.getClsByName(owner);
+		ClassInstance cls = getClsByName(owner);
 		if (cls == null) return name;
 
-		MethodInstance method = cls.getMethod(name, desc);
+		onClassUse(cls);
+
+		MethodInstance method = getMethod(cls, name, desc);
 
 		if (method == null) {
 			assert false : String.format("can't find method %s%s in %s", name, desc, cls);;
 			return name;
 		}
 
-		return method.getName(nameType);
+		return getName(method);
 	}
 
 	public String mapMethodName(String owner, String name, String desc, boolean itf) {
-		ClassInstance cls = env.getClsByName(owner);
+		ClassInstance cls = getClsByName(owner);
 		if (cls == null) return name;
 
-		MethodInstance method = cls.resolveMethod(name, desc, itf);
+		onClassUse(cls);
+
+		MethodInstance method = resolveMethod(cls, name, desc, itf);
 		if (method == null) return name;
+		if (method.getCls() != cls) onClassUse(method.getCls());
 
-		return method.getName(nameType);
+		return getName(method);
 	}
 
 	public String mapArbitraryInvokeDynamicMethodName(String owner, String name) {
-		ClassInstance cls = env.getClsByName(owner);
+		ClassInstance cls = getClsByName(owner);
 		if (cls == null) return name;
 
-		MethodInstance method = cls.getMethod(name, null);
+		onClassUse(cls);
+
+		MethodInstance method = getMethod(cls, name, null);
 		if (method == null) return name;
+		if (method.getCls() != cls) onClassUse(method.getCls());
 
-		return method.getName(nameType);
+		return getName(method);
 	}
 
 	public String mapArgName(String className, String methodName, String methodDesc, String name, int asmIndex) {
-		ClassInstance cls = env.getClsByName(className);
+		ClassInstance cls = getClsByName(className);
 		if (cls == null) return name;
 
-		MethodInstance method = cls.getMethod(methodName, methodDesc);
+		onClassUse(cls);
+
+		MethodInstance method = getMethod(cls, methodName, methodDesc);
 		if (method == null) return name;
 
-		return method.getArg(asmIndex).getName(nameType);
+		return getName(method.getArg(asmIndex));
 	}
 
 	public String mapLocalVariableName(String className, String methodName, String methodDesc, String name, String desc, int lvIndex, int startInsn, int endInsn) {
-		ClassInstance cls = env.getClsByName(className);
+		ClassInstance cls = getClsByName(className);
 		if (cls == null) return name;
 
-		MethodInstance method = cls.getMethod(methodName, methodDesc);
+		onClassUse(cls);
+
+		MethodInstance method = getMethod(cls, methodName, methodDesc);
 		if (method == null) return name;
 
 		MethodVarInstance var = method.getArgOrVar(lvIndex, startInsn, endInsn);
@@ -91,12 +119,45 @@ public class AsmRemapper extends Remapper {
 		if (var != null) {
 			assert var.getType().getId().equals(desc);
 
-			name = var.getName(nameType);
+			name = getName(var);
 		}
 
 		return name;
 	}
 
+	private ClassInstance getClsByName(String name) {
+		return table != null ? table.getClsByName(name) : env.getClsByName(name);
+	}
+
+	private MethodInstance getMethod(ClassInstance cls, String name, String desc) {
+		return table != null ? table.getMethod(cls, name, desc) : cls.getMethod(name, desc);
+	}
+
+	private MethodInstance resolveMethod(ClassInstance cls, String name, String desc, boolean toInterface) {
+		return table != null ? table.resolveMethod(cls, name, desc, toInterface) : cls.resolveMethod(name, desc, toInterface);
+	}
+
+	private FieldInstance resolveField(ClassInstance cls, String name, String desc) {
+		return table != null ? table.resolveField(cls, name, desc) : cls.resolveField(name, desc);
+	}
+
+	private String getName(ClassInstance cls) {
+		return table != null ? table.getName(cls) : cls.getName(nameType);
+	}
+
+	/**
+	 * Get the target name for a member, arg or var.
+	 */
+	protected String getName(Matchable<?> matchable) {
+		return table != null ? table.getName(matchable) : matchable.getName(nameType);
+	}
+
+	/**
+	 * Called for every class whose names or whose members' names are used by the remapping.
+	 */
+	protected void onClassUse(ClassInstance cls) { }
+
 	private final ClassEnv env;
 	private final NameType nameType;
+	private final RemapTable table;
 }
@@ -0,0 +1,175 @@
+package matcher.bcremap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.DoubleConsumer;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import matcher.Matcher;
+import matcher.NameType;
+import matcher.TaskControl;
+import matcher.Util;
+import matcher.type.ClassEnvironment;
+import matcher.type.ClassInstance;
+import matcher.type.InputFile;
+import matcher.type.LocalClassEnv;
+
+/**
+ * Writes the input classes of one side, remapped to a name type, together with the inputs' other resources into a jar.
+ *
+ * <p>Entries are sorted by name and processed in windows: while one window gets compressed and written, the classes
+ * of the next are already being remapped on {@link Matcher#threadPool}. Entry timestamps are fixed, so the same state
+ * produces the same jar.
+ */
+public final class JarExporter {
+	public static void export(ClassEnvironment env, LocalClassEnv side, Path out, NameType nameType,
+			DoubleConsumer progressReceiver) throws IOException {
+		nameType = nameType.withPlain(true); // the other name types have no names for unmapped classes and members
+		Collection<InputFile> inputFiles = side == env.getEnvA() ? env.getInputFilesA() : env.getInputFilesB();
+		List<ZipFile> archives = new ArrayList<>();
+
+		try {
+			List<Entry> entries = new ArrayList<>();
+			Set<String> names = new HashSet<>();
+
+			for (ClassInstance cls : side.getClasses()) {
+				if (!cls.isInput() || cls.getAsmNodes() == null) continue;
+
+				String name = cls.getName(nameType)+".class";
+
+				if (names.add(name)) {
+					entries.add(new Entry(name, cls, nameType, null, null));
+				} else {
+					System.out.printf("skipping %s, its name %s is already in use%n", cls, name);
+				}
+			}
+
+			for (InputFile inputFile : inputFiles) {
+				if (!inputFile.hasPath()) continue;
+
+				ZipFile archive = new ZipFile(inputFile.path.toFile());
+				archives.add(archive);
+
+				for (Enumeration<? extends ZipEntry> it = archive.entries(); it.hasMoreElements(); ) {
+					ZipEntry zipEntry = it.nextElement();
+					String name = zipEntry.getName();
+
+					if (zipEntry.isDirectory() || name.endsWith(".class") || isSignature(name)) continue;
+
+					if (names.add(name)) entries.add(new Entry(name, null, null, archive, zipEntry));
+				}
+			}
+
+			// the manifest has to come first for JarInputStream to find it
+			entries.sort(Comparator.<Entry, Boolean>comparing(e -> !e.name.equals(JarFile.MANIFEST_NAME)).thenComparing(e -> e.name));
+
+			RemapTable remapTable = side.getRemapTable(nameType);
+			if (remapTable != null && nameType != NameType.PLAIN) remapTable.build(progress -> { });
+
+			try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(out))) {
+				List<CompletableFuture<byte[]>> next = startWindow(entries, 0);
+
+				for (int start = 0; start < entries.size(); start += windowSize) {
+					TaskControl.checkCancelled(progressReceiver);
+
+					List<CompletableFuture<byte[]>> current = next;
+					next = startWindow(entries, start + windowSize);
+
+					for (int i = 0; i < current.size(); i++) {
+						ZipEntry zipEntry = new ZipEntry(entries.get(start + i).name);
+						zipEntry.setTimeLocal(entryTime);
+						zos.putNextEntry(zipEntry);
+						zos.write(getData(current.get(i)));
+						zos.closeEntry();
+					}
+
+					progressReceiver.accept((double) (start + current.size()) / entries.size());
+				}
+			}
+		} finally {
+			for (ZipFile archive : archives) {
+				Util.closeSilently(archive);
+			}
+		}
+	}
+
+	private static List<CompletableFuture<byte[]>> startWindow(List<Entry> entries, int start) {
+		int end = Math.min(start + windowSize, entries.size());
+		List<CompletableFuture<byte[]>> ret = new ArrayList<>(Math.max(0, end - start));
+
+		for (int i = start; i < end; i++) {
+			Entry entry = entries.get(i);
+
+			ret.add(CompletableFuture.supplyAsync(() -> entry.read(), Matcher.threadPool));
+		}
+
+		return ret;
+	}
+
+	private static byte[] getData(CompletableFuture<byte[]> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Check whether name is a jar signature file, which would be invalidated by remapping.
+	 */
+	private static boolean isSignature(String name) {
+		if (!name.startsWith("META-INF/")) return false;
+
+		name = name.toUpperCase(Locale.ENGLISH);
+
+		return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+	}
+
+	private static final class Entry {
+		Entry(String name, ClassInstance cls, NameType nameType, ZipFile archive, ZipEntry zipEntry) {
+			this.name = name;
+			this.cls = cls;
+			this.nameType = nameType;
+			this.archive = archive;
+			this.zipEntry = zipEntry;
+		}
+
+		byte[] read() {
+			if (cls != null) return cls.serialize(nameType);
+
+			try (InputStream is = archive.getInputStream(zipEntry)) {
+				return is.readAllBytes();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		final String name;
+		final ClassInstance cls;
+		final NameType nameType;
+		final ZipFile archive;
+		final ZipEntry zipEntry;
+	}
+
+	private static final int windowSize = 256;
+	private static final LocalDateTime entryTime = LocalDateTime.of(1980, 2, 1, 0, 0); // earliest dos time
+}
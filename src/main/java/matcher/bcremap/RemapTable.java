@@ -0,0 +1,184 @@
+package matcher.bcremap;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleConsumer;
+
+import matcher.Matcher;
+import matcher.NameType;
+import matcher.type.ClassEnv;
+import matcher.type.ClassInstance;
+import matcher.type.FieldInstance;
+import matcher.type.Matchable;
+import matcher.type.MethodInstance;
+import matcher.type.MethodVarInstance;
+
+/**
+ * Lookup tables backing {@link AsmRemapper} for one class environment and name type.
+ *
+ * <p>Class and member resolution only depends on the class structure, which doesn't change after loading, so it is
+ * memoized permanently. Target names are memoized together with the name versions of the classes they were derived
+ * from and get recomputed individually once one of those classes sees a name or match change.
+ *
+ * <p>The table fills itself on demand, {@link #build} precomputes the names for all classes up front.
+ */
+public final class RemapTable {
+	public RemapTable(ClassEnv env, NameType nameType) {
+		this.env = env;
+		this.nameType = nameType;
+	}
+
+	public NameType getNameType() {
+		return nameType;
+	}
+
+	/**
+	 * Precompute the names of all classes in the environment and their members, args and vars in parallel.
+	 */
+	public void build(DoubleConsumer progressReceiver) {
+		List<ClassInstance> classes = new ArrayList<>();
+
+		for (ClassInstance cls : env.getClasses()) {
+			if (cls.isInput()) classes.add(cls);
+		}
+
+		Matcher.runInParallel(classes, cls -> {
+			getClsByName(cls.getName());
+			getName(cls);
+
+			for (MethodInstance method : cls.getMethods()) {
+				getName(method);
+
+				for (MethodVarInstance arg : method.getArgs()) {
+					getName(arg);
+				}
+
+				for (MethodVarInstance var : method.getVars()) {
+					getName(var);
+				}
+			}
+
+			for (FieldInstance field : cls.getFields()) {
+				getName(field);
+			}
+		}, progressReceiver);
+	}
+
+	public void clear() {
+		classes.clear();
+		resolved.clear();
+		names.clear();
+	}
+
+	public ClassInstance getClsByName(String name) {
+		ClassInstance ret = classes.get(name);
+		if (ret != null) return ret;
+
+		ret = env.getClsByName(name);
+		if (ret != null) classes.put(name, ret);
+
+		return ret;
+	}
+
+	public MethodInstance getMethod(ClassInstance cls, String name, String desc) {
+		return (MethodInstance) resolve(cls, 'm', name, desc);
+	}
+
+	public MethodInstance resolveMethod(ClassInstance cls, String name, String desc, boolean toInterface) {
+		return (MethodInstance) resolve(cls, toInterface ? 'i' : 'c', name, desc);
+	}
+
+	public FieldInstance resolveField(ClassInstance cls, String name, String desc) {
+		return (FieldInstance) resolve(cls, 'f', name, desc);
+	}
+
+	private Matchable<?> resolve(ClassInstance cls, char type, String name, String desc) {
+		Map<String, Matchable<?>> members = resolved.computeIfAbsent(cls, ignore -> new ConcurrentHashMap<>());
+		String key = type+name+(desc != null ? desc : "");
+		Matchable<?> ret = members.get(key);
+		if (ret != null) return ret;
+
+		switch (type) {
+		case 'm': ret = cls.getMethod(name, desc); break;
+		case 'i': ret = cls.resolveMethod(name, desc, true); break;
+		case 'c': ret = cls.resolveMethod(name, desc, false); break;
+		case 'f': ret = cls.resolveField(name, desc); break;
+		default: throw new IllegalArgumentException();
+		}
+
+		if (ret != null) members.put(key, ret);
+
+		return ret;
+	}
+
+	public String getName(ClassInstance cls) {
+		NameEntry entry = names.get(cls);
+		if (entry != null && entry.isValid()) return entry.name;
+
+		Map<ClassInstance, Integer> dependencies = new IdentityHashMap<>();
+		cls.addNameDependencies(dependencies); // before reading the name, a concurrent change will invalidate the entry
+		entry = new NameEntry(cls.getName(nameType), dependencies);
+		names.put(cls, entry);
+
+		return entry.name;
+	}
+
+	/**
+	 * Get the name of a member, arg or var.
+	 *
+	 * <p>Their names are tracked by the name version of the owning class.
+	 */
+	public String getName(Matchable<?> matchable) {
+		NameEntry entry = names.get(matchable);
+		if (entry != null && entry.isValid()) return entry.name;
+
+		ClassInstance owner = getOwnerClass(matchable);
+		Map<ClassInstance, Integer> dependencies = new IdentityHashMap<>(2);
+		dependencies.put(owner, owner.getNameVersion());
+		entry = new NameEntry(matchable.getName(nameType), dependencies);
+		names.put(matchable, entry);
+
+		return entry.name;
+	}
+
+	private static ClassInstance getOwnerClass(Matchable<?> matchable) {
+		while (!(matchable instanceof ClassInstance)) {
+			matchable = matchable.getOwner();
+		}
+
+		return (ClassInstance) matchable;
+	}
+
+	private static final class NameEntry {
+		NameEntry(String name, Map<ClassInstance, Integer> dependencies) {
+			this.name = name;
+			this.dependencies = dependencies.keySet().toArray(new ClassInstance[0]);
+			this.versions = new int[this.dependencies.length];
+
+			for (int i = 0; i < versions.length; i++) {
+				versions[i] = dependencies.get(this.dependencies[i]);
+			}
+		}
+
+		boolean isValid() {
+			for (int i = 0; i < versions.length; i++) {
+				if (dependencies[i].getNameVersion() != versions[i]) return false;
+			}
+
+			return true;
+		}
+
+		final String name;
+		final ClassInstance[] dependencies;
+		final int[] versions;
+	}
+
+	private final ClassEnv env;
+	private final NameType nameType;
+	private final Map<String, ClassInstance> classes = new ConcurrentHashMap<>();
+	private final Map<ClassInstance, Map<String, Matchable<?>>> resolved = new ConcurrentHashMap<>();
+	private final Map<Matchable<?>, NameEntry> names = new ConcurrentHashMap<>();
+}
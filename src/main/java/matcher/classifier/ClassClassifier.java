@@ -8,6 +8,8 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 public class ClassClassifier {
 	public static void init() {
@@ -34,6 +36,9 @@ public class ClassClassifier {
 		addClassifier(fieldWriteReferences, 5, ClassifierLevel.Intermediate, ClassifierLevel.Full, ClassifierLevel.Extra);
 		addClassifier(membersFull, 10, ClassifierLevel.Full, ClassifierLevel.Extra);
 		addClassifier(inRefsBci, 6, ClassifierLevel.Extra);
+
+		cheapClassifiers.addAll(Arrays.asList(classTypeCheck, signature, hierarchyDepth, parentClass, childClasses, interfaces, implementers,
+				outerClass, innerClasses, methodCount, fieldCount, hierarchySiblings));
 	}
 
 	public static void addClassifier(AbstractClassifier classifier, double weight, ClassifierLevel... levels) {
@@ -59,8 +64,29 @@ public class ClassClassifier {
 		return ClassifierUtil.rankParallel(src, dsts, classifiers.getOrDefault(level, Collections.emptyList()), ClassifierUtil::checkPotentialEquality, env, maxMismatch);
 	}
 
+	/**
+	 * Rank like {@link #rankParallel} without a mismatch limit, but score all candidates with the cheap structural
+	 * classifiers first and pass the resulting provisional ranking to provisionalReceiver before applying the others.
+	 */
+	public static List<RankResult<ClassInstance>> rankProgressive(ClassInstance src, ClassInstance[] dsts, ClassifierLevel level, ClassEnvironment env,
+			Consumer<List<RankResult<ClassInstance>>> provisionalReceiver, DoubleConsumer progressReceiver) {
+		List<IClassifier<ClassInstance>> cheap = new ArrayList<>();
+		List<IClassifier<ClassInstance>> expensive = new ArrayList<>();
+
+		for (IClassifier<ClassInstance> classifier : classifiers.getOrDefault(level, Collections.emptyList())) {
+			if (cheapClassifiers.contains(classifier)) {
+				cheap.add(classifier);
+			} else {
+				expensive.add(classifier);
+			}
+		}
+
+		return ClassifierUtil.rankProgressive(src, dsts, Arrays.asList(cheap, expensive), ClassifierUtil::checkPotentialEquality, env, provisionalReceiver, progressReceiver);
+	}
+
 	private static final Map<ClassifierLevel, List<IClassifier<ClassInstance>>> classifiers = new EnumMap<>(ClassifierLevel.class);
 	private static final Map<ClassifierLevel, Double> maxScore = new EnumMap<>(ClassifierLevel.class);
+	private static final Set<IClassifier<ClassInstance>> cheapClassifiers = Util.newIdentityHashSet(); // only compare counts or direct relations
 
 	private static AbstractClassifier classTypeCheck = new AbstractClassifier("class type check") {
 		@Override
@@ -501,7 +527,7 @@ public class ClassClassifier {
 		}
 	};
 
-	private static void extractNumbers(ClassInstance cls, Set<Integer> ints, Set<Long> longs, Set<Float> floats, Set<Double> doubles) {
+	public static void extractNumbers(ClassInstance cls, Set<Integer> ints, Set<Long> longs, Set<Float> floats, Set<Double> doubles) {
 		for (MethodInstance method : cls.getMethods()) {
 			MethodNode asmNode = method.getAsmNode();
 			if (asmNode == null) continue;
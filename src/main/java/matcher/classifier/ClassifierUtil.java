@@ -1,5 +1,7 @@
 package matcher.classifier;
 
+import matcher.Matcher;
+import matcher.TaskControl;
 import matcher.Util;
 import matcher.classifier.MatchingCache.CacheToken;
 import matcher.type.*;
@@ -683,6 +685,91 @@ public class ClassifierUtil {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Rank dsts in stages, scoring all candidates with one stage's classifiers before moving on to the next.
+	 *
+	 * <p>The ranking after each but the last stage is passed to provisionalReceiver, with the scores extrapolated from
+	 * the weights evaluated so far. Later stages process the candidates in their provisional order. The candidates are
+	 * scored on {@link Matcher#threadPool}, a cancelled {@link TaskControl} progressReceiver stops the ranking with a
+	 * CancellationException. Progress is reported for each stage.
+	 */
+	public static <T extends Matchable<T>> List<RankResult<T>> rankProgressive(T src, T[] dsts, List<? extends Collection<IClassifier<T>>> stages, BiPredicate<T, T> potentialEqualityCheck, ClassEnvironment env,
+			Consumer<List<RankResult<T>>> provisionalReceiver, DoubleConsumer progressReceiver) {
+		double totalWeight = 0;
+
+		for (Collection<IClassifier<T>> classifiers : stages) {
+			for (IClassifier<T> classifier : classifiers) {
+				totalWeight += classifier.getWeight();
+			}
+		}
+
+		List<PartialRank<T>> ranks = new ArrayList<>(dsts.length);
+
+		for (T dst : dsts) {
+			assert src.getEnv() != dst.getEnv();
+
+			ranks.add(new PartialRank<>(dst));
+		}
+
+		double weight = 0;
+		List<RankResult<T>> ret = Collections.emptyList();
+
+		for (int i = 0; i < stages.size(); i++) {
+			Collection<IClassifier<T>> classifiers = stages.get(i);
+			boolean first = i == 0;
+
+			Matcher.runInParallel(ranks, rank -> {
+				if (first && !potentialEqualityCheck.test(src, rank.dst)) {
+					rank.excluded = true;
+					return;
+				}
+
+				for (IClassifier<T> classifier : classifiers) {
+					double cScore = classifier.getScore(src, rank.dst, env);
+					assert cScore > -epsilon && cScore < 1 + epsilon : "invalid score from "+classifier.getName()+": "+cScore;
+
+					rank.score += cScore * classifier.getWeight();
+					rank.results.add(new ClassifierResult<>(classifier, cScore));
+				}
+			}, progressReceiver);
+
+			if (first) ranks.removeIf(rank -> rank.excluded);
+
+			for (IClassifier<T> classifier : classifiers) {
+				weight += classifier.getWeight();
+			}
+
+			boolean last = i + 1 == stages.size();
+			double scale = last || weight <= 0 ? 1 : totalWeight / weight;
+			ret = new ArrayList<>(ranks.size());
+
+			for (PartialRank<T> rank : ranks) {
+				ret.add(new RankResult<>(rank.dst, rank.score * scale, last ? rank.results : new ArrayList<>(rank.results)));
+			}
+
+			ret.sort(Comparator.<RankResult<T>, Double>comparing(RankResult::getScore).reversed());
+
+			if (!last) {
+				provisionalReceiver.accept(ret);
+
+				ranks.sort(Comparator.<PartialRank<T>>comparingDouble(rank -> rank.score).reversed());
+			}
+		}
+
+		return ret;
+	}
+
+	private static final class PartialRank<T> {
+		PartialRank(T dst) {
+			this.dst = dst;
+		}
+
+		final T dst;
+		final List<ClassifierResult<T>> results = new ArrayList<>();
+		double score;
+		boolean excluded;
+	}
+
 	private static <T extends Matchable<T>> RankResult<T> rank(T src, T dst, Collection<IClassifier<T>> classifiers, BiPredicate<T, T> potentialEqualityCheck, ClassEnvironment env, double maxMismatch) {
 		assert src.getEnv() != dst.getEnv();
 
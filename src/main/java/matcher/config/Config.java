@@ -22,6 +22,8 @@ public class Config {
 				setVerifyInputFiles(prefs.getBoolean(lastVerifyInputFilesKey, true));
 				setUidConfig(new UidConfig(prefs));
 				setDarkTheme(prefs.getBoolean(darkThemeKey, true));
+				String sourceCacheDir = prefs.get(sourceCacheDirKey, "");
+				setSourceCacheDir(sourceCacheDir.isEmpty() ? null : deserializePath(sourceCacheDir));
 			}
 		} catch (BackingStoreException e) { }
 	}
@@ -48,6 +50,13 @@ public class Config {
 		return darkTheme;
 	}
 
+	/**
+	 * Directory for persisting decompiled sources across sessions, null if disabled.
+	 */
+	public static Path getSourceCacheDir() {
+		return sourceCacheDir;
+	}
+
 	public static boolean setProjectConfig(ProjectConfig config) {
 		if (!config.isValid()) return false;
 
@@ -69,6 +78,10 @@ public class Config {
 		darkTheme = value;
 	}
 
+	public static void setSourceCacheDir(Path dir) {
+		sourceCacheDir = dir;
+	}
+
 	public static boolean setUidConfig(UidConfig config) {
 		if (!config.isValid()) return false;
 
@@ -85,6 +98,7 @@ public class Config {
 			saveList(root.node(lastInputDirsKey), inputDirs);
 			root.putBoolean(lastVerifyInputFilesKey, verifyInputFiles);
 			uidConfig.save(root);
+			root.put(sourceCacheDirKey, sourceCacheDir != null ? sourceCacheDir.toString() : "");
 
 			root.flush();
 		} catch (BackingStoreException e) {
@@ -136,6 +150,7 @@ public class Config {
 	private static final String lastInputDirsKey = "last-input-dirs";
 	private static final String lastVerifyInputFilesKey = "last-verify-input-files";
 	private static final String darkThemeKey = "use-dark-theme";
+	private static final String sourceCacheDirKey = "source-cache-dir";
 
 	private static ProjectConfig projectConfig = new ProjectConfig();
 	private static final List<Path> inputDirs = new ArrayList<>();
@@ -143,4 +158,5 @@ public class Config {
 	private static UidConfig uidConfig = new UidConfig();
 
 	private static boolean darkTheme = true;
+	private static Path sourceCacheDir;
 }
\ No newline at end of file
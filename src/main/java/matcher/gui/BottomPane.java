@@ -77,6 +77,8 @@ public class BottomPane extends StackPane implements IGuiComponent {
 		SelectListener selectListener = new SelectListener();
 		srcPane.addListener(selectListener);
 		dstPane.addListener(selectListener);
+
+		gui.matchTaskRunningProperty().addListener((observable, oldValue, newValue) -> updateMatchButtons());
 	}
 
 	@Override
@@ -87,6 +89,14 @@ public class BottomPane extends StackPane implements IGuiComponent {
 	}
 
 	private void updateMatchButtons() {
+		if (gui.isMatchTaskRunning()) { // manual changes would interfere with the running passes
+			for (Button button : Arrays.asList(matchButton, matchableButton, matchPerfectMembersButton, unmatchClassButton, unmatchMemberButton, unmatchVarButton)) {
+				button.setDisable(true);
+			}
+
+			return;
+		}
+
 		ClassInstance clsA = srcPane.getSelectedClass();
 		ClassInstance clsB = dstPane.getSelectedClass();
 
@@ -2,11 +2,14 @@ package matcher.gui;
 
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
@@ -15,20 +18,25 @@ import javafx.stage.*;
 import javafx.stage.FileChooser.ExtensionFilter;
 import matcher.Matcher;
 import matcher.NameType;
+import matcher.TaskControl;
 import matcher.config.Config;
 import matcher.gui.menu.MainMenuBar;
 import matcher.mapping.MappingFormat;
+import matcher.serdes.MatchesJournal;
 import matcher.srcprocess.BuiltinDecompiler;
+import matcher.srcprocess.SourceCache;
 import matcher.type.ClassEnvironment;
 import matcher.type.MatchType;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
 import java.util.stream.Collectors;
@@ -40,6 +48,7 @@ public class Gui extends Application {
 
 		env = new ClassEnvironment();
 		matcher = new Matcher(env);
+		sourceCache = new SourceCache(sourceCacheSize, Config.getSourceCacheDir(), decompileTimeout);
 
 		GridPane border = new GridPane();
 
@@ -68,6 +77,9 @@ public class Gui extends Application {
 		components.add(bottomPane);
 		border.add(bottomPane, 0, 2, 2, 1);
 
+		searchPane = new SearchPane(this);
+		components.add(searchPane);
+
 		scene = new Scene(border, 1400, 800);
 		Shortcuts.init(this);
 
@@ -86,7 +98,7 @@ public class Gui extends Application {
 
 	@Override
 	public void stop() throws Exception {
-		threadPool.shutdown();
+		scheduler.shutdown();
 	}
 
 	public ClassEnvironment getEnv() {
@@ -121,6 +133,10 @@ public class Gui extends Application {
 		return bottomPane;
 	}
 
+	public SearchPane getSearchPane() {
+		return searchPane;
+	}
+
 	public SortKey getSortKey() {
 		return sortKey;
 	}
@@ -131,9 +147,7 @@ public class Gui extends Application {
 
 		this.sortKey = sortKey;
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 	public boolean isSortMatchesAlphabetically() {
@@ -145,9 +159,7 @@ public class Gui extends Application {
 
 		this.sortMatchesAlphabetically = value;
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 	public boolean isUseClassTreeView() {
@@ -159,9 +171,7 @@ public class Gui extends Application {
 
 		this.useClassTreeView = value;
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 	public boolean isShowNonInputs() {
@@ -173,9 +183,7 @@ public class Gui extends Application {
 
 		this.showNonInputs = showNonInputs;
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 	public boolean isUseDiffColors() {
@@ -187,9 +195,7 @@ public class Gui extends Application {
 
 		this.useDiffColors = useDiffColors;
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 	public boolean isUseDarkTheme() {
@@ -205,9 +211,7 @@ public class Gui extends Application {
 
 		updateCss();
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 	private void updateCss() {
@@ -227,9 +231,7 @@ public class Gui extends Application {
 
 		this.nameType = value;
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 
@@ -237,35 +239,147 @@ public class Gui extends Application {
 		return decompiler;
 	}
 
+	public SourceCache getSourceCache() {
+		return sourceCache;
+	}
+
 	public void setDecompiler(BuiltinDecompiler value) {
 		if (this.decompiler == value) return;
 
 		this.decompiler = value;
 
-		for (IGuiComponent c : components) {
-			c.onViewChange();
-		}
+		onViewChange();
 	}
 
 	public void onProjectChange() {
+		sourceCache.clear(); // the classes got replaced, the disk cache stays valid through its content based keys
+
 		for (IGuiComponent c : components) {
 			c.onProjectChange();
 		}
 	}
 
+	/**
+	 * Queue a view change notification for the components, see {@link #onMatchChange}.
+	 */
+	public void onViewChange() {
+		pendingViewChange = true;
+		scheduleChangeDelivery();
+	}
+
+	/**
+	 * Queue a mapping change notification for the components, see {@link #onMatchChange}.
+	 */
 	public void onMappingChange() {
-		for (IGuiComponent c : components) {
-			c.onMappingChange();
-		}
+		pendingMappingChange = true;
+		scheduleChangeDelivery();
 	}
 
+	/**
+	 * Queue a match change notification for the components.
+	 *
+	 * <p>Change notifications get coalesced and delivered once after the current FX event completes, or after the
+	 * outermost bulk change ended if one is in progress, see {@link #beginBulkChange}. Each component then sees at most
+	 * one view, mapping and match change per batch, in that order, with the match types of all queued notifications.
+	 */
 	public void onMatchChange(Set<MatchType> types) {
-		for (IGuiComponent c : components) {
-			c.onMatchChange(types);
+		pendingMatchTypes.addAll(types);
+		scheduleChangeDelivery();
+	}
+
+	/**
+	 * Hold back change notifications until the matching {@link #endBulkChange} call.
+	 */
+	public void beginBulkChange() {
+		bulkChangeDepth++;
+	}
+
+	public void endBulkChange() {
+		if (bulkChangeDepth <= 0) throw new IllegalStateException("no bulk change in progress");
+
+		if (--bulkChangeDepth == 0) scheduleChangeDelivery();
+	}
+
+	private void scheduleChangeDelivery() {
+		if (bulkChangeDepth > 0 || changeDeliveryScheduled) return;
+		if (!pendingViewChange && !pendingMappingChange && pendingMatchTypes.isEmpty()) return;
+
+		changeDeliveryScheduled = true;
+		Platform.runLater(this::deliverChanges);
+	}
+
+	private void deliverChanges() {
+		changeDeliveryScheduled = false;
+		if (bulkChangeDepth > 0) return; // re-scheduled once the bulk change ends
+
+		boolean viewChange = pendingViewChange;
+		boolean mappingChange = pendingMappingChange;
+		Set<MatchType> matchTypes = EnumSet.copyOf(pendingMatchTypes);
+
+		// notifications queued by the components while handling these go into the next batch
+		pendingViewChange = false;
+		pendingMappingChange = false;
+		pendingMatchTypes.clear();
+
+		if (mappingChange || !matchTypes.isEmpty()) syncJournal();
+
+		if (viewChange) {
+			for (IGuiComponent c : components) {
+				c.onViewChange();
+			}
+		}
+
+		if (mappingChange) {
+			for (IGuiComponent c : components) {
+				c.onMappingChange();
+			}
+		}
+
+		if (!matchTypes.isEmpty()) {
+			for (IGuiComponent c : components) {
+				c.onMatchChange(matchTypes);
+			}
+		}
+	}
+
+	/**
+	 * Persist the changes of the just completed operation to the attached journal, compacting it in the background if
+	 * it grew too large.
+	 */
+	private void syncJournal() {
+		MatchesJournal journal = env.getJournal();
+		if (journal == null) return;
+
+		try {
+			journal.flush();
+
+			if (journal.needsCompaction()) {
+				MatchesJournal.Compaction compaction = journal.beginCompaction();
+
+				scheduler.executeDedicated(() -> {
+					try {
+						compaction.run();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				});
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 
 	public static <T> CompletableFuture<T> runAsyncTask(Callable<T> task) {
+		return runAsyncTask(task, TaskScheduler.Priority.INTERACTIVE, null);
+	}
+
+	/**
+	 * Run task on the {@link #getScheduler() scheduler}, completing the returned future on the FX thread.
+	 *
+	 * @param key view the task belongs to, a later task for the same key replaces it if it didn't start yet, which
+	 * cancels the returned future
+	 */
+	public static <T> CompletableFuture<T> runAsyncTask(Callable<T> task, TaskScheduler.Priority priority, Object key) {
 		Task<T> jfxTask = new Task<T>() {
 			@Override
 			protected T call() throws Exception {
@@ -279,18 +393,97 @@ public class Gui extends Application {
 		jfxTask.setOnFailed(event -> ret.completeExceptionally(jfxTask.getException()));
 		jfxTask.setOnCancelled(event -> ret.cancel(false));
 
-		threadPool.execute(jfxTask);
+		scheduler.execute(priority, key, jfxTask);
 
 		return ret;
 	}
 
+	public static TaskScheduler getScheduler() {
+		return scheduler;
+	}
+
 	public void runProgressTask(String labelText, Consumer<DoubleConsumer> task, Runnable onSuccess, Consumer<Throwable> onError) {
+		if (refuseWhileMatching()) return;
+
+		beginBulkChange();
+
+		runProgressTask(labelText, task, true, () -> {
+			try {
+				onSuccess.run();
+			} finally {
+				endBulkChange();
+			}
+		}, exc -> {
+			try {
+				onError.accept(exc);
+			} finally {
+				endBulkChange();
+			}
+		});
+	}
+
+	/**
+	 * Run an auto-match operation in the background while the main window stays usable.
+	 *
+	 * <p>The matcher applies the results of each pass on the FX thread, see {@link Matcher#setCommitHandler}, so the
+	 * components only ever see the state between passes and get notified of the changed types after each. Background
+	 * tasks reading matches, such as ranking, match status and search index updates or decompiling, have to go
+	 * through {@link ClassEnvironment#readConsistently} to not observe a pass midway. Only one such operation may run
+	 * at a time and all other state changing actions have to stay disabled meanwhile, see
+	 * {@link #matchTaskRunningProperty}.
+	 */
+	public void runMatchTask(String labelText, Consumer<DoubleConsumer> task, Set<MatchType> types) {
+		if (refuseWhileMatching()) return;
+
+		matchTaskRunning.set(true);
+		matcher.setCommitHandler(commit -> runOnFxThread(() -> {
+			commit.run();
+			onMatchChange(types);
+		}));
+
+		runProgressTask(labelText, task, false, () -> {
+			matcher.setCommitHandler(null);
+			matchTaskRunning.set(false);
+			onMatchChange(types);
+		}, exc -> {
+			matcher.setCommitHandler(null);
+			matchTaskRunning.set(false);
+			onMatchChange(types); // passes before the failure may have been applied
+			exc.printStackTrace();
+		});
+	}
+
+	public boolean isMatchTaskRunning() {
+		return matchTaskRunning.get();
+	}
+
+	/**
+	 * Get the property being true while a match task runs, for disabling the actions changing the project state.
+	 */
+	public ReadOnlyBooleanProperty matchTaskRunningProperty() {
+		return matchTaskRunning.getReadOnlyProperty();
+	}
+
+	/**
+	 * Check for a running match task, informing the user that the requested action has to wait for it.
+	 *
+	 * @return true if the action has to be refused
+	 */
+	public boolean refuseWhileMatching() {
+		if (!matchTaskRunning.get()) return false;
+
+		showAlert(AlertType.WARNING, "Matching in progress", "A matching operation is still running", "Wait for it to finish or cancel it first.");
+
+		return true;
+	}
+
+	private void runProgressTask(String labelText, Consumer<DoubleConsumer> task, boolean modal, Runnable onSuccess, Consumer<Throwable> onError) {
 		Stage stage = new Stage(StageStyle.UTILITY);
 		stage.initOwner(this.scene.getWindow());
 		VBox pane = new VBox(GuiConstants.padding);
 
 		stage.setScene(new Scene(pane));
-		stage.initModality(Modality.APPLICATION_MODAL);
+		stage.initModality(modal ? Modality.APPLICATION_MODAL : Modality.NONE);
 		stage.setOnCloseRequest(event -> event.consume());
 		stage.setResizable(false);
 		stage.setTitle("Operation progress");
@@ -303,12 +496,21 @@ public class Gui extends Application {
 		progress.setPrefWidth(400);
 		pane.getChildren().add(progress);
 
+		TaskControl control = new TaskControl(cProgress -> Platform.runLater(() -> progress.setProgress(cProgress)));
+		Button cancelButton = new Button("Cancel");
+		cancelButton.setOnAction(event -> {
+			control.cancel();
+			cancelButton.setText("Cancelling...");
+			cancelButton.setDisable(true);
+		});
+		pane.getChildren().add(cancelButton);
+
 		stage.show();
 
 		Task<Void> jfxTask = new Task<Void>() {
 			@Override
 			protected Void call() throws Exception {
-				task.accept(cProgress -> Platform.runLater(() -> progress.setProgress(cProgress)));
+				task.accept(control);
 
 				return null;
 			}
@@ -320,11 +522,49 @@ public class Gui extends Application {
 		});
 
 		jfxTask.setOnFailed(event -> {
-			onError.accept(jfxTask.getException());
+			if (control.isCancelled() && isCancellation(jfxTask.getException())) {
+				// the operations stop at a consistent point, so the completed part is handled like a regular result
+				System.out.println(labelText+" cancelled");
+				onSuccess.run();
+			} else {
+				onError.accept(jfxTask.getException());
+			}
+
 			stage.hide();
 		});
 
-		threadPool.execute(jfxTask);
+		// progress tasks may run for minutes, keep them out of the workers the short background refreshes need
+		scheduler.executeDedicated(jfxTask);
+	}
+
+	private static boolean isCancellation(Throwable exc) {
+		for (; exc != null; exc = exc.getCause()) {
+			if (exc instanceof CancellationException) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Run task on the FX thread and wait for its completion.
+	 */
+	private static void runOnFxThread(Runnable task) {
+		if (Platform.isFxApplicationThread()) {
+			task.run();
+			return;
+		}
+
+		FutureTask<Void> future = new FutureTask<>(task, null);
+		Platform.runLater(future);
+
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
 	}
 
 	public void showAlert(AlertType type, String title, String headerText, String text) {
@@ -459,10 +699,13 @@ public class Gui extends Application {
 
 	public static final List<Consumer<Gui>> loadListeners = new ArrayList<>();
 
-	private static final ExecutorService threadPool = Executors.newCachedThreadPool();
+	private static final TaskScheduler scheduler = new TaskScheduler("gui worker", Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+	private static final int sourceCacheSize = 256;
+	private static final long decompileTimeout = 10_000; // ms per decompiler before falling back to the next
 
 	private ClassEnvironment env;
 	private Matcher matcher;
+	private SourceCache sourceCache;
 
 	private Scene scene;
 	private final Collection<IGuiComponent> components = new ArrayList<>();
@@ -471,6 +714,7 @@ public class Gui extends Application {
 	private MatchPaneSrc srcPane;
 	private MatchPaneDst dstPane;
 	private BottomPane bottomPane;
+	private SearchPane searchPane;
 
 	private SortKey sortKey = SortKey.Name;
 	private boolean sortMatchesAlphabetically;
@@ -484,6 +728,13 @@ public class Gui extends Application {
 	private NameType nameType = NameType.MAPPED_PLAIN;
 	private BuiltinDecompiler decompiler = BuiltinDecompiler.CFR;
 
+	private final ReadOnlyBooleanWrapper matchTaskRunning = new ReadOnlyBooleanWrapper();
+	private int bulkChangeDepth;
+	private boolean changeDeliveryScheduled;
+	private boolean pendingViewChange;
+	private boolean pendingMappingChange;
+	private final Set<MatchType> pendingMatchTypes = EnumSet.noneOf(MatchType.class);
+
 	private static File lastChooserFile;
 	private static File lastMappingChooserFile;
 }
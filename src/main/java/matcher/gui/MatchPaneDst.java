@@ -1,12 +1,16 @@
 package matcher.gui;
 
+import javafx.application.Platform;
 import javafx.scene.control.ListView;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import matcher.NameType;
+import matcher.TaskControl;
 import matcher.classifier.*;
+import matcher.srcprocess.BuiltinDecompiler;
+import matcher.srcprocess.SourceCache;
 import matcher.type.*;
 
 import java.util.*;
@@ -38,6 +42,8 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 		matchList.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
 			if (suppressChangeEvents || oldValue == newValue) return;
 
+			selectedByUser = newValue != null;
+
 			Matchable<?> oldSel = oldValue != null ? oldValue.getSubject() : null;
 			Matchable<?> newSel = newValue != null ? newValue.getSubject() : null;
 
@@ -61,6 +67,8 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 		setDividerPosition(0, 1 - 0.25);
 
 		srcPane.addListener(srcListener);
+
+		Arrays.setAll(prefetchKeys, ignore -> new Object());
 	}
 
 	private class DstListCell extends StyledListCell<RankResult<? extends Matchable<?>>> {
@@ -231,6 +239,7 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 	@Override
 	public void onProjectChange() {
 		cmpClasses = gui.getEnv().getDisplayClassesB(!gui.isShowNonInputs());
+		invalidateRankCache();
 
 		IFwdGuiComponent.super.onProjectChange();
 	}
@@ -238,6 +247,7 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 	@Override
 	public void onViewChange() {
 		cmpClasses = gui.getEnv().getDisplayClassesB(!gui.isShowNonInputs());
+		invalidateRankCache();
 
 		suppressChangeEvents = true;
 
@@ -258,6 +268,8 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 
 	@Override
 	public void onMatchChange(Set<MatchType> types) {
+		// cached rankings check the match version themselves, see getCachedRanking
+
 		if (!types.isEmpty()) {
 			srcListener.onSelect(types);
 		} else {
@@ -269,6 +281,109 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 		IFwdGuiComponent.super.onMatchChange(types);
 	}
 
+	/**
+	 * Get the cached ranking of cls if no match changed since, see {@link ClassEnvironment#getMatchStateVersion}.
+	 *
+	 * <p>Candidate scores depend on the matches of the classes and members related to either side, which may be
+	 * anywhere in the project, so any class or member match or class matchability change invalidates all rankings.
+	 */
+	private List<RankResult<ClassInstance>> getCachedRanking(ClassInstance cls, ClassifierLevel level, int generation, long version) {
+		CachedRanking ret;
+
+		synchronized (rankCache) {
+			ret = rankCache.get(cls);
+		}
+
+		if (ret == null || ret.level != level || ret.generation != generation || ret.version != version) return null;
+
+		return ret.results;
+	}
+
+	/**
+	 * Cache a ranking of cls, version has to be obtained from {@link ClassEnvironment#getMatchStateVersion} before
+	 * ranking.
+	 */
+	private void putCachedRanking(ClassInstance cls, ClassifierLevel level, int generation, long version, List<RankResult<ClassInstance>> results) {
+		synchronized (rankCache) {
+			rankCache.put(cls, new CachedRanking(results, level, generation, version));
+		}
+	}
+
+	/**
+	 * Discard all cached rankings after the candidate set changed.
+	 */
+	private void invalidateRankCache() {
+		rankCacheGeneration++;
+
+		synchronized (rankCache) {
+			rankCache.clear();
+		}
+	}
+
+	/**
+	 * Speculatively prepare the next selections in the source list: rank and decompile the classes following cls, then
+	 * decompile their match or, if unmatched, their best candidate.
+	 *
+	 * <p>The work runs at prefetch priority and replaces the still queued prefetching for the previous selection.
+	 * Failures are ignored here, they surface once the class gets selected.
+	 */
+	private void prefetchFollowing(ClassInstance cls) {
+		List<ClassInstance> classes = srcPane.getFollowingClasses(cls, prefetchClassCount);
+		if (classes.isEmpty()) return;
+
+		ClassEnvironment env = gui.getEnv();
+		ClassifierLevel level = gui.getMatcher().getAutoMatchLevel();
+		ClassInstance[] cmp = cmpClasses.toArray(new ClassInstance[0]);
+		int generation = rankCacheGeneration;
+		SourceCache sourceCache = gui.getSourceCache();
+		BuiltinDecompiler decompiler = gui.getDecompiler();
+		NameType srcNameType = gui.getNameType().withUnmatchedTmp(true);
+		NameType dstNameType = gui.getNameType().withUnmatchedTmp(false);
+
+		for (int i = 0; i < classes.size(); i++) {
+			ClassInstance next = classes.get(i);
+
+			Gui.runAsyncTask(() -> env.readConsistently(() -> {
+				sourceCache.get(env, next, srcNameType, decompiler);
+
+				ClassInstance dst = next.getMatch();
+
+				if (next.isMatchable()) { // selecting next ranks it in any case, the best candidate gets selected along with it
+					long version = env.getMatchStateVersion();
+					List<RankResult<ClassInstance>> ranking = getCachedRanking(next, level, generation, version);
+
+					if (ranking == null) {
+						ranking = ClassClassifier.rank(next, cmp, level, env, Double.POSITIVE_INFINITY);
+						putCachedRanking(next, level, generation, version, ranking);
+					}
+
+					if (dst == null && !ranking.isEmpty()) dst = ranking.get(0).getSubject();
+				}
+
+				if (dst != null) sourceCache.get(env, dst, dstNameType, decompiler);
+
+				return null;
+			}), TaskScheduler.Priority.PREFETCH, prefetchKeys[i]);
+		}
+	}
+
+	/**
+	 * Speculatively decompile the runner-up candidates of a class ranking, the best one is already selected.
+	 */
+	private void prefetchCandidates(List<? extends RankResult<? extends Matchable<?>>> ranking) {
+		ClassEnvironment env = gui.getEnv();
+		SourceCache sourceCache = gui.getSourceCache();
+		BuiltinDecompiler decompiler = gui.getDecompiler();
+		NameType nameType = gui.getNameType().withUnmatchedTmp(false);
+
+		for (int i = 1; i <= candidatePrefetchCount && i < ranking.size(); i++) {
+			ClassInstance cls = getClass(ranking.get(i).getSubject());
+
+			Gui.runAsyncTask(() -> env.readConsistently(() -> sourceCache.get(env, cls, nameType, decompiler)),
+					TaskScheduler.Priority.PREFETCH, prefetchKeys[prefetchClassCount + i - 1]);
+		}
+	}
+
 	@Override
 	public Collection<IGuiComponent> getComponents() {
 		return components;
@@ -283,6 +398,13 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 	}
 
 	private void updateResults(Matchable<?> oldSelection) {
+		updateResults(oldSelection, null);
+	}
+
+	/**
+	 * Filter and display rankResults, selecting keepSelection if still listed or the best result otherwise.
+	 */
+	private void updateResults(Matchable<?> oldSelection, Matchable<?> keepSelection) {
 		List<RankResult<? extends Matchable<?>>> newItems = new ArrayList<>(rankResults.size());
 		String filterStr = filterField.getText();
 
@@ -324,6 +446,15 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 
 		matchList.getItems().setAll(newItems);
 
+		if (keepSelection != null && matchList.getSelectionModel().isEmpty()) {
+			for (RankResult<? extends Matchable<?>> item : newItems) {
+				if (item.getSubject() == keepSelection) {
+					matchList.getSelectionModel().select(item);
+					break;
+				}
+			}
+		}
+
 		if (matchList.getSelectionModel().isEmpty()) {
 			matchList.getSelectionModel().select(best);
 
@@ -602,6 +733,8 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 		@Override
 		public void onClassSelect(ClassInstance cls) {
 			onSelect(null);
+
+			if (cls != null) prefetchFollowing(cls);
 		}
 
 		@Override
@@ -636,6 +769,10 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 			}
 
 			oldSrcSelection = newSrcSelection;
+			selectedByUser = false;
+
+			if (rankControl != null) rankControl.cancel();
+			rankControl = null;
 
 			rankResults.clear();
 			suppressChangeEvents = true;
@@ -645,6 +782,7 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 			ClassifierLevel matchLevel = gui.getMatcher().getAutoMatchLevel();
 			ClassEnvironment env = gui.getEnv();
 			double maxMismatch = Double.POSITIVE_INFINITY;
+			final int cTaskId = ++taskId;
 
 			Callable<List<? extends RankResult<? extends Matchable<?>>>> ranker;
 
@@ -652,7 +790,27 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 				return;
 			} else if (newSrcSelection instanceof ClassInstance) { // unmatched class or no member/method var selected
 				ClassInstance cls = (ClassInstance) newSrcSelection;
-				ranker = () -> ClassClassifier.rankParallel(cls, cmpClasses.toArray(new ClassInstance[0]), matchLevel, env, maxMismatch);
+				int generation = rankCacheGeneration;
+				long version = env.getMatchStateVersion();
+				List<RankResult<ClassInstance>> cached = getCachedRanking(cls, matchLevel, generation, version);
+
+				if (cached != null) {
+					ranker = () -> cached;
+				} else {
+					ClassInstance[] cmp = cmpClasses.toArray(new ClassInstance[0]);
+					TaskControl control = rankControl = new TaskControl(progress -> { });
+
+					// publish the ranking by the cheap classifiers early, the full ranking may take seconds for large inputs
+					ranker = () -> {
+						List<RankResult<ClassInstance>> ret = ClassClassifier.rankProgressive(cls, cmp, matchLevel, env, provisional -> Platform.runLater(() -> {
+							if (taskId == cTaskId) applyResults(provisional);
+						}), control);
+
+						putCachedRanking(cls, matchLevel, generation, version, ret);
+
+						return ret;
+					};
+				}
 			} else if (newSrcSelection instanceof MethodInstance) { // unmatched method or no method var selected
 				MethodInstance method = (MethodInstance) newSrcSelection;
 				ranker = () -> MethodClassifier.rank(method, method.getCls().getMatch().getMethods(), matchLevel, env, maxMismatch);
@@ -668,19 +826,23 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 				throw new IllegalStateException();
 			}
 
-			final int cTaskId = ++taskId;
-
 			// update matches list
-			Gui.runAsyncTask(ranker)
+			Callable<List<? extends RankResult<? extends Matchable<?>>>> cRanker = ranker;
+
+			Gui.runAsyncTask(() -> env.readConsistently(cRanker), TaskScheduler.Priority.INTERACTIVE, this)
 			.whenComplete((res, exc) -> {
+				if (taskId != cTaskId) return; // superseded by a later selection, which also cancelled this one
+
+				rankControl = null;
+
 				if (exc != null) {
 					exc.printStackTrace();
-				} else if (taskId == cTaskId) {
-					assert rankResults.isEmpty();
-					rankResults.addAll(res);
+				} else {
+					applyResults(res);
 
-					updateResults(oldDstSelection);
-					oldDstSelection = null;
+					if (newSrcSelection instanceof ClassInstance) {
+						prefetchCandidates(res);
+					}
 
 					if (matchChangeTypes != null) {
 						onMatchChangeApply(matchChangeTypes);
@@ -689,6 +851,24 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 			});
 		}
 
+		/**
+		 * Replace the displayed, possibly provisional ranking, keeping the selection if the user picked it.
+		 */
+		private void applyResults(List<? extends RankResult<? extends Matchable<?>>> res) {
+			RankResult<? extends Matchable<?>> selection = matchList.getSelectionModel().getSelectedItem();
+			Matchable<?> oldSelection = selection != null ? selection.getSubject() : oldDstSelection;
+
+			rankResults.clear();
+			rankResults.addAll(res);
+
+			suppressChangeEvents = true;
+			matchList.getSelectionModel().clearSelection();
+			suppressChangeEvents = false;
+
+			updateResults(oldSelection, selectedByUser ? oldSelection : null);
+			oldDstSelection = null;
+		}
+
 		private Matchable<?> getMatchableSrcSelection() {
 			Matchable<?> ret = srcPane.getSelectedMethodVar();
 
@@ -710,10 +890,29 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 		}
 
 		private int taskId;
+		private TaskControl rankControl;
 		private Matchable<?> oldSrcSelection;
 		private Matchable<?> oldDstSelection;
 	}
 
+	private static final class CachedRanking {
+		CachedRanking(List<RankResult<ClassInstance>> results, ClassifierLevel level, int generation, long version) {
+			this.results = results;
+			this.level = level;
+			this.generation = generation;
+			this.version = version;
+		}
+
+		final List<RankResult<ClassInstance>> results;
+		final ClassifierLevel level;
+		final int generation;
+		final long version;
+	}
+
+	private static final int prefetchClassCount = 3;
+	private static final int candidatePrefetchCount = 2;
+	private static final int rankCacheSize = 64;
+
 	private final Gui gui;
 	private final MatchPaneSrc srcPane;
 	private final Collection<IGuiComponent> components = new ArrayList<>();
@@ -721,7 +920,16 @@ public class MatchPaneDst extends SplitPane implements IFwdGuiComponent, ISelect
 	private final TextField filterField = new TextField();
 	private final List<RankResult<? extends Matchable<?>>> rankResults = new ArrayList<>();
 	private final SrcListener srcListener = new SrcListener();
+	private final Object[] prefetchKeys = new Object[prefetchClassCount + candidatePrefetchCount];
+	private final Map<ClassInstance, CachedRanking> rankCache = new LinkedHashMap<ClassInstance, CachedRanking>(16, 0.75f, true) { // guarded by itself
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ClassInstance, CachedRanking> eldest) {
+			return size() > rankCacheSize;
+		}
+	};
 	private List<ClassInstance> cmpClasses;
 
 	private boolean suppressChangeEvents;
+	private boolean selectedByUser;
+	private int rankCacheGeneration;
 }
@@ -10,6 +10,7 @@ import javafx.scene.control.TreeView;
 import matcher.NameType;
 import matcher.Util;
 import matcher.gui.Gui.SortKey;
+import matcher.gui.TaskScheduler.Priority;
 import matcher.type.*;
 
 import java.util.*;
@@ -165,11 +166,14 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 	private String getCellStyle(Matchable<?> item) {
 		// TODO: Come up with better solution for determining cell styles
 
+		MatchStatus status = MatchStatus.get(item);
+		if (status.isPending()) return "";
+
 		boolean dark = gui.isUseDarkTheme();
 
 		if (gui.isUseDiffColors()) {
 			final float epsilon = 1e-5f;
-			float similarity = item.getSimilarity();
+			float similarity = status.getSimilarity();
 
 			if (similarity < epsilon) {
 				return dark ? "-fx-text-fill: #FF006E;" : "-fx-text-fill: darkred;";
@@ -198,17 +202,20 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 				return String.format("-fx-text-fill: #%02x%02x%02x", (int) (red * 255), (int) (green * 255), (int) (blue * 255));
 			}
 		} else {
-			if (!item.hasPotentialMatch()) {
+			switch (status.getState()) {
+			case UNMATCHABLE:
 				return dark ? "-fx-text-fill: silver;" : "-fx-text-fill: dimgray;";
-			} else if (item.getMatch() == null) {
+			case UNMATCHED:
 				return dark ? "-fx-text-fill: #FF006E;" : "-fx-text-fill: darkred;";
-			} else if (!item.isFullyMatched(false)) {
+			case PARTIAL:
 				return "-fx-text-fill: chocolate;";
-			} else if (!item.isFullyMatched(true)) {
+			case SHALLOW:
 				return "-fx-text-fill: coral;";
-			} else {
+			case FULL:
 				return dark ? "-fx-text-fill: #00FF11;" : "-fx-text-fill: darkgreen;";
 			}
+
+			throw new IllegalStateException("unhandled state: "+status.getState());
 		}
 	}
 
@@ -269,6 +276,53 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 		}
 	}
 
+	/**
+	 * Get up to count classes following cls in the current list or tree order.
+	 */
+	public List<ClassInstance> getFollowingClasses(ClassInstance cls, int count) {
+		List<ClassInstance> classes = useClassTree ? treeClasses : classList.getItems();
+		int idx = classes.indexOf(cls);
+		if (idx < 0) return Collections.emptyList();
+
+		return new ArrayList<>(classes.subList(idx + 1, Math.min(idx + 1 + count, classes.size())));
+	}
+
+	/**
+	 * Select and reveal matchable along with its class and method, as far as they are listed.
+	 */
+	public void select(Matchable<?> matchable) {
+		MethodVarInstance var = matchable instanceof MethodVarInstance ? (MethodVarInstance) matchable : null;
+		MemberInstance<?> member = var != null ? var.getMethod() : matchable instanceof MemberInstance<?> ? (MemberInstance<?>) matchable : null;
+		ClassInstance cls = member != null ? member.getCls() : (ClassInstance) matchable;
+
+		if (useClassTree) {
+			TreeItem<Object> item = classItems.get(cls);
+			if (item == null) return;
+
+			for (TreeItem<Object> parent = item.getParent(); parent != null; parent = parent.getParent()) {
+				parent.setExpanded(true);
+			}
+
+			classTree.getSelectionModel().select(item);
+			classTree.scrollTo(classTree.getRow(item));
+		} else {
+			if (!classList.getItems().contains(cls)) return;
+
+			classList.getSelectionModel().select(cls);
+			classList.scrollTo(cls);
+		}
+
+		if (member != null) {
+			memberList.getSelectionModel().select(member);
+			memberList.scrollTo(member);
+		}
+
+		if (var != null) {
+			varList.getSelectionModel().select(var);
+			varList.scrollTo(var);
+		}
+	}
+
 	@Override
 	public MemberInstance<?> getSelectedMember() {
 		return memberList.getSelectionModel().getSelectedItem();
@@ -296,6 +350,7 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 	@Override
 	public void onProjectChange() {
 		updateLists(true, true);
+		updateMatchStatus();
 
 		IFwdGuiComponent.super.onProjectChange();
 	}
@@ -328,9 +383,18 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 			updateLists(true, true);
 		}
 
+		updateMatchStatus(); // newly shown classes may lack a status
+
 		IFwdGuiComponent.super.onViewChange();
 	}
 
+	/**
+	 * Update the class and member lists.
+	 *
+	 * @param updateContents whether to rebuild the class list from the environment and fully sort it, otherwise only
+	 * the classes whose names or match status changed since get repositioned
+	 * @param updateMembers whether to resort the member list
+	 */
 	private void updateLists(boolean updateContents, boolean updateMembers) {
 		Comparator<ClassInstance> clsComparator = getClassComparator();
 		Comparator<MemberInstance<?>> memberComparator = getMemberComparator();
@@ -340,20 +404,20 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 
 		suppressChangeEvents = true;
 
-		List<ClassInstance> classes = updateContents ? gui.getEnv().getDisplayClassesA(!gui.isShowNonInputs()) : null;
-
+		if (updateContents) {
+			List<ClassInstance> classes = gui.getEnv().getDisplayClassesA(!gui.isShowNonInputs());
+			classes.sort(clsComparator);
 
-		if (useClassTree) {
-			updateClassTree(classes, clsComparator, selClass);
-		} else {
-			if (updateContents) {
-				classList.setItems(FXCollections.observableList(classes));
+			if (useClassTree) {
+				updateClassTree(classes, selClass);
 			} else {
-				classes = classList.getItems();
+				classList.setItems(FXCollections.observableList(classes));
+				classList.getSelectionModel().select(selClass);
 			}
 
-			classes.sort(clsComparator);
-			classList.getSelectionModel().select(selClass);
+			recordRowStates(classes);
+		} else {
+			updateClassPositions(clsComparator, selClass);
 		}
 
 		if (updateMembers) {
@@ -364,57 +428,115 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 		suppressChangeEvents = false;
 	}
 
-	private void updateClassTree(List<ClassInstance> newClasses, Comparator<ClassInstance> sortComparator, ClassInstance selectedClass) {
-		Map<String, List<TreeItem<Object>>> pkgNodeMap = null; // reuse pkg level nodes to keep their folding state
+	/**
+	 * Move the classes whose sort keys changed since the last update to their new positions.
+	 *
+	 * <p>The other classes keep their relative order, so the changed classes get removed and reinserted with a binary
+	 * search, unless so many changed that a full sort is cheaper.
+	 */
+	private void updateClassPositions(Comparator<ClassInstance> comparator, ClassInstance selClass) {
+		List<ClassInstance> classes = useClassTree ? treeClasses : classList.getItems();
+		boolean withStatus = isStatusSort();
+		Set<ClassInstance> changed = Util.newIdentityHashSet();
+
+		for (ClassInstance cls : classes) {
+			RowState state = new RowState(cls, withStatus);
+			RowState prev = rowStates.put(cls, state);
+
+			if (prev == null || !prev.matches(state)) changed.add(cls);
+		}
 
-		if (newClasses == null) {
-			newClasses = new ArrayList<>(2000);
-			pkgNodeMap = new HashMap<>(100);
+		if (changed.isEmpty()) return;
 
-			for (TreeItem<Object> pkgItem : classTree.getRoot().getChildren()) {
-				pkgNodeMap.computeIfAbsent((String) pkgItem.getValue(), ignore -> new ArrayList<>()).add(pkgItem);
+		if (changed.size() > classes.size() / fullSortDivisor) {
+			if (useClassTree) {
+				List<ClassInstance> newClasses = new ArrayList<>(classes);
+				newClasses.sort(comparator);
+				updateClassTree(newClasses, selClass);
+			} else {
+				classes.sort(comparator);
+				classList.getSelectionModel().select(selClass);
+			}
 
-				for (TreeItem<Object> item : pkgItem.getChildren()) {
-					newClasses.add((ClassInstance) item.getValue());
-				}
+			return;
+		}
 
-				pkgItem.getChildren().clear();
+		if (useClassTree) {
+			NameType nameType = getTreeNameType();
+
+			for (ClassInstance cls : changed) {
+				removeTreeItem(cls);
 			}
+
+			classes.removeAll(changed);
+
+			for (ClassInstance cls : changed) {
+				int idx = getInsertionIndex(classes, cls, comparator);
+				classes.add(idx, cls);
+				insertTreeItem(cls, idx, nameType);
+			}
+
+			TreeItem<Object> selItem = selClass != null ? classItems.get(selClass) : null;
+			if (selItem != null) classTree.getSelectionModel().select(selItem);
+		} else {
+			classes.removeAll(changed);
+
+			for (ClassInstance cls : changed) {
+				classes.add(getInsertionIndex(classes, cls, comparator), cls);
+			}
+
+			classList.getSelectionModel().select(selClass);
 		}
+	}
 
-		newClasses.sort(sortComparator);
+	private static <T> int getInsertionIndex(List<T> list, T element, Comparator<? super T> comparator) {
+		int ret = Collections.binarySearch(list, element, comparator);
 
-		NameType nameType = gui.getNameType()
-				.withMapped(gui.getSortKey() == SortKey.MappedName)
-				.withUnmatchedTmp(true);
+		return ret >= 0 ? ret : -ret - 1;
+	}
 
-		List<TreeItem<Object>> items = classTree.getRoot().getChildren();
-		items.clear();
+	private void recordRowStates(List<ClassInstance> classes) {
+		boolean withStatus = isStatusSort();
+		rowStates.clear();
+
+		for (ClassInstance cls : classes) {
+			rowStates.put(cls, new RowState(cls, withStatus));
+		}
+	}
+
+	private boolean isStatusSort() {
+		return gui.getSortKey() == SortKey.MatchStatus || gui.getSortKey() == SortKey.Similarity;
+	}
+
+	/**
+	 * Rebuild the class tree from the sorted classes, reusing the package nodes to keep their folding state.
+	 */
+	private void updateClassTree(List<ClassInstance> sortedClasses, ClassInstance selectedClass) {
+		Map<String, List<TreeItem<Object>>> pkgNodeMap = new HashMap<>(100);
+
+		for (TreeItem<Object> pkgItem : classTree.getRoot().getChildren()) {
+			pkgNodeMap.computeIfAbsent((String) pkgItem.getValue(), ignore -> new ArrayList<>()).add(pkgItem);
+			pkgItem.getChildren().clear();
+		}
+
+		NameType nameType = getTreeNameType();
+
+		List<TreeItem<Object>> items = new ArrayList<>();
 		String pkg = null;
 		List<TreeItem<Object>> pkgItems = null;
 		TreeItem<Object> toSelect = null;
 
-		for (ClassInstance cls : newClasses) {
-			ClassInstance outerCls = cls;
+		treeClasses = sortedClasses;
+		classItems.clear();
 
-			while (outerCls.getOuterClass() != null) {
-				outerCls = outerCls.getOuterClass();
-			}
-
-			String name = outerCls.getDisplayName(nameType, true);
-			int pos = name.lastIndexOf('.');
-
-			if (pos == -1) {
-				name = "<no package>";
-			} else {
-				name = name.substring(0, pos);
-			}
+		for (ClassInstance cls : sortedClasses) {
+			String name = getPackage(cls, nameType);
 
 			if (!name.equals(pkg)) {
 				TreeItem<Object> item;
 				List<TreeItem<Object>> pkgNode;
 
-				if (pkgNodeMap != null && (pkgNode = pkgNodeMap.remove(name)) != null) {
+				if ((pkgNode = pkgNodeMap.remove(name)) != null) {
 					item = pkgNode.remove(0);
 					if (!pkgNode.isEmpty()) pkgNodeMap.put(name, pkgNode);
 				} else {
@@ -428,15 +550,105 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 
 			TreeItem<Object> item = new TreeItem<>(cls);
 			pkgItems.add(item);
+			classItems.put(cls, item);
 
 			if (cls == selectedClass) toSelect = item;
 		}
 
+		classTree.getRoot().getChildren().setAll(items);
+
 		if (toSelect != null) {
 			classTree.getSelectionModel().select(toSelect);
 		}
 	}
 
+	private void removeTreeItem(ClassInstance cls) {
+		TreeItem<Object> item = classItems.remove(cls);
+		TreeItem<Object> pkgItem = item.getParent();
+		pkgItem.getChildren().remove(item);
+
+		if (!pkgItem.getChildren().isEmpty()) return;
+
+		List<TreeItem<Object>> pkgItems = classTree.getRoot().getChildren();
+		int pos = pkgItems.indexOf(pkgItem);
+		pkgItems.remove(pos);
+
+		// merge the now adjacent nodes if they are for the same package
+		if (pos > 0 && pos < pkgItems.size() && pkgItems.get(pos - 1).getValue().equals(pkgItems.get(pos).getValue())) {
+			TreeItem<Object> next = pkgItems.remove(pos);
+			List<TreeItem<Object>> moved = new ArrayList<>(next.getChildren());
+			next.getChildren().clear();
+			pkgItems.get(pos - 1).getChildren().addAll(moved);
+		}
+	}
+
+	/**
+	 * Insert the tree item for cls, which is at idx in treeClasses, next to its neighbors in the flattened order.
+	 */
+	private void insertTreeItem(ClassInstance cls, int idx, NameType nameType) {
+		String pkg = getPackage(cls, nameType);
+		TreeItem<Object> item = new TreeItem<>(cls);
+		TreeItem<Object> prev = idx > 0 ? classItems.get(treeClasses.get(idx - 1)) : null;
+		TreeItem<Object> next = idx + 1 < treeClasses.size() ? classItems.get(treeClasses.get(idx + 1)) : null;
+		classItems.put(cls, item);
+
+		if (prev != null && prev.getParent().getValue().equals(pkg)) {
+			List<TreeItem<Object>> siblings = prev.getParent().getChildren();
+			siblings.add(siblings.indexOf(prev) + 1, item);
+		} else if (next != null && next.getParent().getValue().equals(pkg)) {
+			List<TreeItem<Object>> siblings = next.getParent().getChildren();
+			siblings.add(siblings.indexOf(next), item);
+		} else {
+			TreeItem<Object> pkgItem = new TreeItem<>(pkg);
+			pkgItem.getChildren().add(item);
+			List<TreeItem<Object>> pkgItems = classTree.getRoot().getChildren();
+
+			if (prev == null) {
+				pkgItems.add(0, pkgItem);
+			} else {
+				TreeItem<Object> prevPkgItem = prev.getParent();
+				int pos = pkgItems.indexOf(prevPkgItem) + 1;
+
+				if (next != null && next.getParent() == prevPkgItem) { // inserting within another package's node, split it
+					List<TreeItem<Object>> children = prevPkgItem.getChildren();
+					int split = children.indexOf(prev) + 1;
+					List<TreeItem<Object>> moved = new ArrayList<>(children.subList(split, children.size()));
+					children.subList(split, children.size()).clear();
+
+					TreeItem<Object> tail = new TreeItem<>(prevPkgItem.getValue());
+					tail.setExpanded(prevPkgItem.isExpanded());
+					tail.getChildren().setAll(moved);
+					pkgItems.add(pos, tail);
+				}
+
+				pkgItems.add(pos, pkgItem);
+			}
+		}
+	}
+
+	private NameType getTreeNameType() {
+		return gui.getNameType()
+				.withMapped(gui.getSortKey() == SortKey.MappedName)
+				.withUnmatchedTmp(true);
+	}
+
+	private static String getPackage(ClassInstance cls, NameType nameType) {
+		ClassInstance outerCls = cls;
+
+		while (outerCls.getOuterClass() != null) {
+			outerCls = outerCls.getOuterClass();
+		}
+
+		String name = outerCls.getDisplayName(nameType, true);
+		int pos = name.lastIndexOf('.');
+
+		if (pos == -1) {
+			return "<no package>";
+		} else {
+			return name.substring(0, pos);
+		}
+	}
+
 	private void refreshClassList() {
 		if (useClassTree) {
 			classTree.refresh();
@@ -521,23 +733,53 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 
 	@Override
 	public void onMatchChange(Set<MatchType> types) {
-		if (gui.getSortKey() == SortKey.MatchStatus || gui.getSortKey() == SortKey.Similarity) {
-			updateLists(false, true);
-		} else if (types.contains(MatchType.Class)) {
+		if (types.contains(MatchType.Class) && gui.getSortKey() != SortKey.MatchStatus && gui.getSortKey() != SortKey.Similarity) {
 			updateLists(false, false);
 		}
 
-		refreshClassList(); // unconditional because it could affect the fully matched status
+		// the status colors and sort order follow once the affected statuses got recomputed
+		updateMatchStatus();
 
-		if (types.contains(MatchType.Method) || types.contains(MatchType.Field) || types.contains(MatchType.MethodVar)) {
-			memberList.refresh();
-		}
+		IFwdGuiComponent.super.onMatchChange(types);
+	}
 
-		if (types.contains(MatchType.MethodVar)) {
-			varList.refresh();
+	/**
+	 * Recompute the outdated match statuses of the listed classes in the background, then publish them, refresh and
+	 * resort the lists on the FX thread.
+	 *
+	 * <p>Requests arriving while an update is running get coalesced into a single follow-up update.
+	 */
+	private void updateMatchStatus() {
+		if (matchStatusUpdating) {
+			matchStatusUpdatePending = true;
+			return;
 		}
 
-		IFwdGuiComponent.super.onMatchChange(types);
+		matchStatusUpdating = true;
+		ClassEnvironment env = gui.getEnv();
+		boolean inputsOnly = !gui.isShowNonInputs();
+
+		Gui.runAsyncTask(() -> env.readConsistently(() -> MatchStatus.computeUpdates(env.getDisplayClassesA(inputsOnly), progress -> { })), Priority.BATCH, null)
+		.whenComplete((updates, exc) -> {
+			matchStatusUpdating = false;
+
+			if (exc != null) {
+				exc.printStackTrace();
+			} else if (updates.apply() > 0) {
+				if (gui.getSortKey() == SortKey.MatchStatus || gui.getSortKey() == SortKey.Similarity) {
+					updateLists(false, true);
+				}
+
+				refreshClassList();
+				memberList.refresh();
+				varList.refresh();
+			}
+
+			if (matchStatusUpdatePending) {
+				matchStatusUpdatePending = false;
+				updateMatchStatus();
+			}
+		});
 	}
 
 	@Override
@@ -564,54 +806,56 @@ public class MatchPaneSrc extends SplitPane implements IFwdGuiComponent, ISelect
 		}
 	};
 
-	private static final Comparator<? extends Matchable<?>> matchStatusComparator = (a, b) -> {
-		// sort order: unmatched partially-matched fully-matched-shallow fully-matched-recursive unmatchable
+	// sort order: unmatched partially-matched fully-matched-shallow fully-matched-recursive unmatchable
+	private static final Comparator<? extends Matchable<?>> matchStatusComparator = Comparator.comparing((Matchable<?> m) -> MatchStatus.get(m).getState());
 
-		boolean aMatchable = a.hasPotentialMatch();
-		boolean bMatchable = b.hasPotentialMatch();
+	private static final Comparator<? extends Matchable<?>> similarityComparator = (a, b) -> {
+		return Float.compare(MatchStatus.get(a).getSimilarity(), MatchStatus.get(b).getSimilarity());
+	};
 
-		if (aMatchable != bMatchable) {
-			return aMatchable ? -1 : 1;
-		} else if (!aMatchable) {
-			return 0;
-		} else if (a.hasMatch() != b.hasMatch()) {
-			return a.hasMatch() ? 1 : -1;
-		} else if (!a.hasMatch()) {
-			return 0;
-		}
+	private static final Comparator<String> clsNameComparator = Util::compareNatural;
 
-		boolean aFull = a.isFullyMatched(false);
-		boolean bFull = b.isFullyMatched(false);
+	/**
+	 * Name and match state a class was last positioned with.
+	 *
+	 * <p>The version combines the class' own name version with those of its outer and matched classes, which determine
+	 * its display name.
+	 */
+	private static final class RowState {
+		RowState(ClassInstance cls, boolean withStatus) {
+			long version = (long) cls.getNameVersion() << 32;
+
+			for (ClassInstance c = cls; c != null; c = c.getOuterClass()) {
+				version += c.getNameVersion();
+				if (c.getMatch() != null) version += c.getMatch().getNameVersion();
+			}
 
-		if (aFull != bFull) {
-			return aFull ? 1 : -1;
-		} else if (!aFull) {
-			return 0;
+			this.version = version;
+			this.status = withStatus ? MatchStatus.get(cls) : null;
 		}
 
-		aFull = a.isFullyMatched(true);
-		bFull = b.isFullyMatched(true);
-
-		if (aFull != bFull) {
-			return aFull ? 1 : -1;
+		boolean matches(RowState o) {
+			return version == o.version && status == o.status;
 		}
 
-		return 0;
-	};
-
-	private static final Comparator<? extends Matchable<?>> similarityComparator = (a, b) -> {
-		return Float.compare(a.getSimilarity(), b.getSimilarity());
-	};
+		final long version;
+		final MatchStatus status;
+	}
 
-	private static final Comparator<String> clsNameComparator = Util::compareNatural;
+	private static final int fullSortDivisor = 8;
 
 	private final Gui gui;
 	private final Collection<IGuiComponent> components = new ArrayList<>();
 	private boolean useClassTree;
 	private ListView<ClassInstance> classList;
 	private TreeView<Object> classTree;
+	private List<ClassInstance> treeClasses = new ArrayList<>(); // classes in tree order
+	private final Map<ClassInstance, TreeItem<Object>> classItems = new IdentityHashMap<>();
+	private final Map<ClassInstance, RowState> rowStates = new IdentityHashMap<>();
 	private final ListView<MemberInstance<?>> memberList = new ListView<>();
 	private final ListView<MethodVarInstance> varList = new ListView<>();
 
 	private boolean suppressChangeEvents;
+	private boolean matchStatusUpdating;
+	private boolean matchStatusUpdatePending;
 }
@@ -0,0 +1,292 @@
+package matcher.gui;
+
+import java.util.List;
+import java.util.Set;
+
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import matcher.SearchIndex;
+import matcher.SearchIndex.Result;
+import matcher.type.ClassEnvironment;
+import matcher.type.ClassInstance;
+import matcher.type.FieldInstance;
+import matcher.type.MatchType;
+import matcher.type.Matchable;
+import matcher.type.MethodInstance;
+import matcher.type.MethodVarInstance;
+
+/**
+ * Window for finding the classes, members and vars of either side by name or by the constants used in their classes.
+ *
+ * <p>The {@link SearchIndex} of each side is kept current in the background while the gui runs, also while the window
+ * is closed, so queries get answered right away. Activating a result selects it in the source pane, for side B
+ * through its match or the match of its closest matched owner.
+ */
+public class SearchPane extends VBox implements IGuiComponent {
+	public SearchPane(Gui gui) {
+		super(GuiConstants.padding);
+
+		this.gui = gui;
+
+		init();
+	}
+
+	private void init() {
+		setPadding(new Insets(GuiConstants.padding));
+
+		HBox top = new HBox(GuiConstants.padding);
+		getChildren().add(top);
+
+		queryField.setPromptText("name, string or number");
+		queryField.textProperty().addListener((observable, oldValue, newValue) -> search());
+		queryField.setOnKeyPressed(event -> {
+			if (event.getCode() == KeyCode.DOWN && !resultList.getItems().isEmpty()) {
+				resultList.requestFocus();
+				resultList.getSelectionModel().selectFirst();
+				event.consume();
+			} else if (event.getCode() == KeyCode.ENTER && !resultList.getItems().isEmpty()) {
+				select(resultList.getItems().get(0));
+			}
+		});
+		top.getChildren().add(queryField);
+		HBox.setHgrow(queryField, Priority.ALWAYS);
+
+		ToggleGroup sideGroup = new ToggleGroup();
+		sideAButton.setToggleGroup(sideGroup);
+		sideBButton.setToggleGroup(sideGroup);
+		sideAButton.setSelected(true);
+		sideGroup.selectedToggleProperty().addListener((observable, oldValue, newValue) -> search());
+		top.getChildren().addAll(sideAButton, sideBButton);
+
+		resultList.setCellFactory(ignore -> new StyledListCell<Result>() {
+			@Override
+			protected String getText(Result item) {
+				return getResultText(item);
+			}
+		});
+		resultList.setOnMouseClicked(event -> {
+			Result result = resultList.getSelectionModel().getSelectedItem();
+			if (result != null && event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) select(result);
+		});
+		resultList.setOnKeyPressed(event -> {
+			Result result = resultList.getSelectionModel().getSelectedItem();
+			if (result != null && event.getCode() == KeyCode.ENTER) select(result);
+		});
+		getChildren().add(resultList);
+		VBox.setVgrow(resultList, Priority.ALWAYS);
+
+		getChildren().add(statusLabel);
+	}
+
+	/**
+	 * Open the search window or bring it to the front.
+	 */
+	public void show() {
+		if (stage == null) {
+			stage = new Stage();
+			stage.initOwner(gui.getScene().getWindow());
+			stage.initModality(Modality.NONE);
+			stage.setTitle("Search");
+			stage.setScene(new Scene(this, 700, 500));
+		}
+
+		stage.getScene().getStylesheets().setAll(gui.getScene().getStylesheets());
+		stage.show();
+		stage.toFront();
+		queryField.requestFocus();
+		queryField.selectAll();
+
+		search();
+	}
+
+	private boolean isShowing() {
+		return stage != null && stage.isShowing();
+	}
+
+	private void search() {
+		final int cSearchId = ++searchId;
+		String query = queryField.getText();
+
+		if (query.isBlank()) {
+			resultList.getItems().clear();
+			updateStatus(null, 0);
+			return;
+		}
+
+		SearchIndex index = sideAButton.isSelected() ? indexA : indexB;
+		double[] time = new double[1];
+
+		Gui.runAsyncTask(() -> {
+			long startTime = System.nanoTime();
+			List<Result> ret = index.search(query, maxResults);
+			time[0] = (System.nanoTime() - startTime) * 1e-6;
+
+			return ret;
+		}, TaskScheduler.Priority.INTERACTIVE, this)
+		.whenComplete((res, exc) -> {
+			if (cSearchId != searchId) return; // superseded by a later query
+
+			if (exc != null) {
+				exc.printStackTrace();
+				resultList.getItems().clear();
+				statusLabel.setText("search error: "+exc);
+			} else {
+				resultList.getItems().setAll(res);
+				updateStatus(res, time[0]);
+			}
+		});
+	}
+
+	private void updateStatus(List<Result> results, double time) {
+		String indexing = indexUpdating ? ", indexing..." : "";
+
+		if (results == null) {
+			statusLabel.setText(indexUpdating ? "indexing..." : "");
+		} else if (results.size() >= maxResults) {
+			statusLabel.setText(String.format("first %d results in %.1f ms%s", results.size(), time, indexing));
+		} else {
+			statusLabel.setText(String.format("%d results in %.1f ms%s", results.size(), time, indexing));
+		}
+	}
+
+	private String getResultText(Result result) {
+		Matchable<?> matchable = result.getMatchable();
+		String location = matchable.getDisplayName(gui.getNameType(), true);
+
+		switch (result.getKind()) {
+		case NAME:
+			return String.format("%s  (%s %s)", result.getText(), getTypeName(matchable), location);
+		case STRING:
+			return String.format("\"%s\"  (string in %s)", result.getText(), location);
+		case NUMBER:
+			return String.format("%s  (number in %s)", result.getText(), location);
+		}
+
+		throw new IllegalStateException("unhandled kind: "+result.getKind());
+	}
+
+	private static String getTypeName(Matchable<?> matchable) {
+		if (matchable instanceof ClassInstance) {
+			return "class";
+		} else if (matchable instanceof MethodInstance) {
+			return "method";
+		} else if (matchable instanceof FieldInstance) {
+			return "field";
+		} else if (((MethodVarInstance) matchable).isArg()) {
+			return "arg";
+		} else {
+			return "var";
+		}
+	}
+
+	private void select(Result result) {
+		Matchable<?> matchable = result.getMatchable();
+
+		if (matchable.getEnv() != gui.getEnv().getEnvA()) {
+			while (matchable != null && !matchable.hasMatch()) {
+				matchable = matchable.getOwner();
+			}
+
+			if (matchable == null) {
+				statusLabel.setText("no matched counterpart to select");
+				return;
+			}
+
+			matchable = matchable.getMatch();
+		}
+
+		gui.getSrcPane().select(matchable);
+	}
+
+	@Override
+	public void onProjectChange() {
+		indexA.clear();
+		indexB.clear();
+		updateIndexes();
+	}
+
+	@Override
+	public void onViewChange() {
+		if (stage != null) stage.getScene().getStylesheets().setAll(gui.getScene().getStylesheets());
+
+		updateIndexes(); // the displayed classes may have changed
+		if (isShowing()) resultList.refresh();
+	}
+
+	@Override
+	public void onMappingChange() {
+		updateIndexes();
+	}
+
+	@Override
+	public void onMatchChange(Set<MatchType> types) {
+		updateIndexes();
+	}
+
+	/**
+	 * Re-index the classes with changed names in the background.
+	 *
+	 * <p>Requests arriving while an update is running get coalesced into a single follow-up update.
+	 */
+	private void updateIndexes() {
+		if (indexUpdating) {
+			indexUpdatePending = true;
+			return;
+		}
+
+		indexUpdating = true;
+		ClassEnvironment env = gui.getEnv();
+		boolean inputsOnly = !gui.isShowNonInputs();
+		List<ClassInstance> classesA = env.getDisplayClassesA(inputsOnly);
+		List<ClassInstance> classesB = env.getDisplayClassesB(inputsOnly);
+
+		Gui.runAsyncTask(() -> {
+			int[] changed = new int[1]; // the index keeps the entries updated by an attempt that had to be repeated
+			env.readConsistently(() -> changed[0] += indexA.update(classesA, progress -> { }) + indexB.update(classesB, progress -> { }));
+
+			return changed[0];
+		}, TaskScheduler.Priority.BATCH, null)
+		.whenComplete((changed, exc) -> {
+			indexUpdating = false;
+
+			if (exc != null) {
+				exc.printStackTrace();
+			} else if (isShowing() && (changed > 0 || !indexUpdatePending)) {
+				search();
+			}
+
+			if (indexUpdatePending) {
+				indexUpdatePending = false;
+				updateIndexes();
+			}
+		});
+	}
+
+	private static final int maxResults = 1000;
+
+	private final Gui gui;
+	private final TextField queryField = new TextField();
+	private final RadioButton sideAButton = new RadioButton("A");
+	private final RadioButton sideBButton = new RadioButton("B");
+	private final ListView<Result> resultList = new ListView<>();
+	private final Label statusLabel = new Label();
+	private final SearchIndex indexA = new SearchIndex();
+	private final SearchIndex indexB = new SearchIndex();
+	private Stage stage;
+
+	private int searchId;
+	private boolean indexUpdating;
+	private boolean indexUpdatePending;
+}
@@ -1,6 +1,7 @@
 package matcher.gui;
 
 import javafx.event.ActionEvent;
+import javafx.scene.control.Button;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
@@ -12,7 +13,7 @@ class Shortcuts {
 		Map<KeyCombination, Runnable> accelerators = gui.getScene().getAccelerators();
 
 		// M - match
-		accelerators.put(new KeyCodeCombination(KeyCode.M), () -> gui.getBottomPane().getMatchButton().fireEvent(new ActionEvent()));
+		accelerators.put(new KeyCodeCombination(KeyCode.M), () -> fire(gui.getBottomPane().getMatchButton()));
 		// U - unmatch
 		accelerators.put(new KeyCodeCombination(KeyCode.U), () -> {
 			if (!gui.getBottomPane().getUnmatchVarButton().isDisable()) {
@@ -24,8 +25,14 @@ class Shortcuts {
 			}
 		});
 		// I - ignore (toggle matchable)
-		accelerators.put(new KeyCodeCombination(KeyCode.I), () -> gui.getBottomPane().getMatchableButton().fireEvent(new ActionEvent()));
+		accelerators.put(new KeyCodeCombination(KeyCode.I), () -> fire(gui.getBottomPane().getMatchableButton()));
 		// A - match 100%
-		accelerators.put(new KeyCodeCombination(KeyCode.A), () -> gui.getBottomPane().getMatchPerfectMembersButton().fireEvent(new ActionEvent()));
+		accelerators.put(new KeyCodeCombination(KeyCode.A), () -> fire(gui.getBottomPane().getMatchPerfectMembersButton()));
+		// Ctrl+F - search
+		accelerators.put(new KeyCodeCombination(KeyCode.F, KeyCombination.SHORTCUT_DOWN), () -> gui.getSearchPane().show());
+	}
+
+	private static void fire(Button button) {
+		if (!button.isDisable()) button.fireEvent(new ActionEvent());
 	}
 }
@@ -0,0 +1,263 @@
+package matcher.gui;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the background work of the gui on a fixed number of workers, in order of priority.
+ *
+ * <p>One worker is reserved for {@link Priority#INTERACTIVE} tasks, so prefetching and batch operations can't delay
+ * the response to the current selection. Tasks submitted with a key replace a queued task with the same key, which
+ * lets each view keep at most one pending request. Replaced tasks that are {@link Future}s get cancelled. Running
+ * tasks are never interrupted, they have to observe their own cancellation state.
+ *
+ * <p>Long running operations go through {@link #executeDedicated} instead, which gives each of them its own thread.
+ * The bounded workers may be as few as one for all background work, a multi-minute operation holding it would
+ * otherwise delay every short refresh queued behind it.
+ */
+public final class TaskScheduler {
+	public enum Priority {
+		INTERACTIVE, PREFETCH, BATCH;
+	}
+
+	public TaskScheduler(String name, int parallelism) {
+		if (parallelism < 2) throw new IllegalArgumentException("parallelism < 2");
+
+		this.name = name;
+		this.parallelism = parallelism;
+
+		for (Priority priority : Priority.values()) {
+			queues.put(priority, new ArrayDeque<>());
+			running.put(priority, 0);
+		}
+
+		for (int i = 0; i < parallelism; i++) {
+			Thread thread = new Thread(this::work, name+" "+i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Queue task for execution.
+	 *
+	 * @param key view the task belongs to, replacing its queued task, or null to keep all tasks
+	 */
+	public void execute(Priority priority, Object key, Runnable task) {
+		Entry entry = new Entry(priority, key, task);
+		Entry replaced = null;
+
+		synchronized (lock) {
+			if (shutdown) throw new IllegalStateException("scheduler is shut down");
+
+			if (key != null) {
+				replaced = queuedByKey.put(key, entry);
+
+				if (replaced != null) {
+					queues.get(replaced.priority).remove(replaced);
+					dropped++;
+				}
+			}
+
+			queues.get(priority).addLast(entry);
+			lock.notify();
+		}
+
+		if (replaced != null) cancel(replaced);
+	}
+
+	/**
+	 * Run a long operation on its own thread, outside of the bounded workers and their priority order.
+	 */
+	public void executeDedicated(Runnable task) {
+		synchronized (lock) {
+			if (shutdown) throw new IllegalStateException("scheduler is shut down");
+
+			dedicatedRunning++;
+		}
+
+		Thread thread = new Thread(() -> {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				t.printStackTrace();
+			} finally {
+				synchronized (lock) {
+					dedicatedRunning--;
+					completed++;
+				}
+			}
+		}, name+" dedicated");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the workers after their current tasks, discarding all queued tasks.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+
+			for (ArrayDeque<Entry> queue : queues.values()) {
+				for (Entry entry : queue) {
+					cancel(entry);
+				}
+
+				queue.clear();
+			}
+
+			queuedByKey.clear();
+			lock.notifyAll();
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getQueuedCount(Priority priority) {
+		synchronized (lock) {
+			return queues.get(priority).size();
+		}
+	}
+
+	public int getRunningCount(Priority priority) {
+		synchronized (lock) {
+			return running.get(priority);
+		}
+	}
+
+	/**
+	 * Get the number of running tasks submitted through {@link #executeDedicated}.
+	 */
+	public int getDedicatedRunningCount() {
+		synchronized (lock) {
+			return dedicatedRunning;
+		}
+	}
+
+	public long getCompletedCount() {
+		synchronized (lock) {
+			return completed;
+		}
+	}
+
+	/**
+	 * Get the number of tasks replaced by a later task for the same key before they started.
+	 */
+	public long getDroppedCount() {
+		synchronized (lock) {
+			return dropped;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+
+		synchronized (lock) {
+			for (Priority priority : Priority.values()) {
+				ret.append(priority.name().toLowerCase()).append(": ");
+				ret.append(running.get(priority)).append(" running, ");
+				ret.append(queues.get(priority).size()).append(" queued; ");
+			}
+
+			ret.append(dedicatedRunning).append(" dedicated running; ");
+			ret.append(completed).append(" completed, ").append(dropped).append(" dropped");
+		}
+
+		return ret.toString();
+	}
+
+	private void work() {
+		for (;;) {
+			Entry entry;
+
+			synchronized (lock) {
+				while ((entry = poll()) == null) {
+					if (shutdown) return;
+
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				running.merge(entry.priority, 1, Integer::sum);
+			}
+
+			try {
+				entry.task.run();
+			} catch (Throwable t) {
+				t.printStackTrace();
+			} finally {
+				synchronized (lock) {
+					running.merge(entry.priority, -1, Integer::sum);
+					completed++;
+					lock.notifyAll(); // a background task may be startable now
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take the next task that may start now, must be called with lock held.
+	 */
+	private Entry poll() {
+		if (shutdown) return null;
+
+		int background = 0;
+
+		for (Priority priority : Priority.values()) {
+			if (priority != Priority.INTERACTIVE) background += running.get(priority);
+		}
+
+		for (Priority priority : Priority.values()) {
+			if (priority != Priority.INTERACTIVE && background >= parallelism - 1) break;
+
+			Entry ret = queues.get(priority).pollFirst();
+
+			if (ret != null) {
+				if (ret.key != null) queuedByKey.remove(ret.key, ret);
+
+				return ret;
+			}
+		}
+
+		return null;
+	}
+
+	private static void cancel(Entry entry) {
+		if (entry.task instanceof Future<?>) {
+			((Future<?>) entry.task).cancel(false);
+		}
+	}
+
+	private static final class Entry {
+		Entry(Priority priority, Object key, Runnable task) {
+			this.priority = priority;
+			this.key = key;
+			this.task = task;
+		}
+
+		final Priority priority;
+		final Object key;
+		final Runnable task;
+	}
+
+	private final String name;
+	private final int parallelism;
+	private final Object lock = new Object();
+	private final Map<Priority, ArrayDeque<Entry>> queues = new EnumMap<>(Priority.class);
+	private final Map<Priority, Integer> running = new EnumMap<>(Priority.class);
+	private final Map<Object, Entry> queuedByKey = new IdentityHashMap<>();
+	private int dedicatedRunning;
+	private long completed;
+	private long dropped;
+	private boolean shutdown;
+}
@@ -0,0 +1,60 @@
+package matcher.gui.menu;
+
+import javafx.collections.FXCollections;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import matcher.NameType;
+import matcher.gui.GuiConstants;
+
+import java.util.Arrays;
+
+class ExportJarPane extends GridPane {
+	ExportJarPane() {
+		init();
+	}
+
+	private void init() {
+		setHgap(GuiConstants.padding);
+		setVgap(GuiConstants.padding);
+
+		add(new Label("Environment:"), 0, 0);
+
+		HBox hBox = new HBox();
+		ToggleGroup envGroup = new ToggleGroup();
+
+		rbA = new RadioButton("A (left)");
+		rbA.setToggleGroup(envGroup);
+		hBox.getChildren().add(rbA);
+
+		rbB = new RadioButton("B (right)");
+		rbB.setToggleGroup(envGroup);
+		rbB.setSelected(true);
+		hBox.getChildren().add(rbB);
+
+		add(hBox, 1, 0);
+
+		add(new Label("Name type:"), 0, 1);
+		cbNameType = new ComboBox<>(FXCollections.observableArrayList(Arrays.stream(NameType.values()).filter(type -> type.plain).toArray(NameType[]::new))); // complete names only
+		cbNameType.getSelectionModel().select(NameType.MAPPED_PLAIN);
+		add(cbNameType, 1, 1);
+	}
+
+	public JarExportSettings getSettings() {
+		return new JarExportSettings(rbA.isSelected(), cbNameType.getValue());
+	}
+
+	public static class JarExportSettings {
+		public JarExportSettings(boolean a, NameType nameType) {
+			this.a = a;
+			this.nameType = nameType;
+		}
+
+		public final boolean a;
+		public final NameType nameType;
+	}
+
+	private RadioButton rbA;
+	private RadioButton rbB;
+	private ComboBox<NameType> cbNameType;
+}
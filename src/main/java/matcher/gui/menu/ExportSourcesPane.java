@@ -0,0 +1,97 @@
+package matcher.gui.menu;
+
+import javafx.collections.FXCollections;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import matcher.NameType;
+import matcher.gui.GuiConstants;
+import matcher.srcprocess.BuiltinDecompiler;
+
+class ExportSourcesPane extends GridPane {
+	ExportSourcesPane(BuiltinDecompiler decompiler) {
+		init(decompiler);
+	}
+
+	private void init(BuiltinDecompiler decompiler) {
+		setHgap(GuiConstants.padding);
+		setVgap(GuiConstants.padding);
+
+		add(new Label("Environment:"), 0, 0);
+
+		HBox hBox = new HBox();
+		ToggleGroup envGroup = new ToggleGroup();
+
+		rbA = new RadioButton("A (left)");
+		rbA.setToggleGroup(envGroup);
+		hBox.getChildren().add(rbA);
+
+		rbB = new RadioButton("B (right)");
+		rbB.setToggleGroup(envGroup);
+		rbB.setSelected(true);
+		hBox.getChildren().add(rbB);
+
+		add(hBox, 1, 0);
+
+		add(new Label("Name type:"), 0, 1);
+		cbNameType = new ComboBox<>(FXCollections.observableArrayList(NameType.values()));
+		cbNameType.getSelectionModel().select(NameType.MAPPED_PLAIN);
+		add(cbNameType, 1, 1);
+
+		add(new Label("Decompiler:"), 0, 2);
+		cbDecompiler = new ComboBox<>(FXCollections.observableArrayList(BuiltinDecompiler.values()));
+		cbDecompiler.getSelectionModel().select(decompiler);
+		add(cbDecompiler, 1, 2);
+
+		add(new Label("Timeout per class (s):"), 0, 3);
+		tfTimeout = new TextField("60");
+		add(tfTimeout, 1, 3);
+
+		cbDecorate = new CheckBox("apply mapped comments");
+		cbDecorate.setSelected(true);
+		add(cbDecorate, 0, 4, 2, 1);
+
+		cbZip = new CheckBox("write zip archive");
+		add(cbZip, 0, 5, 2, 1);
+	}
+
+	public SourcesExportSettings getSettings() {
+		long timeout;
+
+		try {
+			timeout = Math.max(0, Long.parseLong(tfTimeout.getText().trim()) * 1000);
+		} catch (NumberFormatException e) {
+			timeout = 0;
+		}
+
+		return new SourcesExportSettings(rbA.isSelected(), cbNameType.getValue(), cbDecompiler.getValue(),
+				cbDecorate.isSelected(), timeout, cbZip.isSelected());
+	}
+
+	public static class SourcesExportSettings {
+		public SourcesExportSettings(boolean a, NameType nameType, BuiltinDecompiler decompiler,
+				boolean decorate, long timeout, boolean zip) {
+			this.a = a;
+			this.nameType = nameType;
+			this.decompiler = decompiler;
+			this.decorate = decorate;
+			this.timeout = timeout;
+			this.zip = zip;
+		}
+
+		public final boolean a;
+		public final NameType nameType;
+		public final BuiltinDecompiler decompiler;
+		public final boolean decorate;
+		public final long timeout;
+		public final boolean zip;
+	}
+
+	private RadioButton rbA;
+	private RadioButton rbB;
+	private ComboBox<NameType> cbNameType;
+	private ComboBox<BuiltinDecompiler> cbDecompiler;
+	private TextField tfTimeout;
+	private CheckBox cbDecorate;
+	private CheckBox cbZip;
+}
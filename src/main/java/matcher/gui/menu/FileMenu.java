@@ -8,24 +8,32 @@ import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Window;
 import matcher.Util;
+import matcher.bcremap.JarExporter;
 import matcher.config.Config;
 import matcher.config.ProjectConfig;
 import matcher.gui.Gui;
 import matcher.gui.Gui.SelectedFile;
 import matcher.gui.menu.LoadMappingsPane.MappingsLoadSettings;
 import matcher.gui.menu.LoadProjectPane.ProjectLoadSettings;
+import matcher.gui.menu.ExportJarPane.JarExportSettings;
+import matcher.gui.menu.ExportSourcesPane.SourcesExportSettings;
 import matcher.gui.menu.SaveMappingsPane.MappingsSaveSettings;
 import matcher.mapping.MappingFormat;
 import matcher.mapping.MappingReader;
 import matcher.mapping.Mappings;
 import matcher.serdes.MatchesIo;
+import matcher.serdes.MatchesJournal;
+import matcher.srcprocess.SourceExporter;
 import matcher.type.ClassEnvironment;
 import matcher.type.MatchType;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
@@ -88,6 +96,21 @@ public class FileMenu extends Menu {
 
 		getItems().add(new SeparatorMenuItem());
 
+		menuItem = new MenuItem("Export sources");
+		getItems().add(menuItem);
+		menuItem.setOnAction(event -> exportSources());
+
+		menuItem = new MenuItem("Export remapped jar");
+		getItems().add(menuItem);
+		menuItem.setOnAction(event -> exportJar());
+
+		getItems().add(new SeparatorMenuItem());
+
+		// all of the above change or read the project state, which a running match task may modify concurrently
+		for (MenuItem item : getItems()) {
+			item.disableProperty().bind(gui.matchTaskRunningProperty());
+		}
+
 		menuItem = new MenuItem("Exit");
 		getItems().add(menuItem);
 		menuItem.setOnAction(event -> Platform.exit());
@@ -98,6 +121,8 @@ public class FileMenu extends Menu {
 	}
 
 	public CompletableFuture<Boolean> newProject(ProjectConfig config) {
+		if (gui.refuseWhileMatching()) return CompletableFuture.completedFuture(false);
+
 		Dialog<ProjectConfig> dialog = new Dialog<>();
 		//dialog.initModality(Modality.APPLICATION_MODAL);
 		dialog.setResizable(true);
@@ -126,7 +151,10 @@ public class FileMenu extends Menu {
 					gui.getMatcher().init(newConfig, progressReceiver);
 					ret.complete(true);
 				},
-				() -> gui.onProjectChange(),
+				() -> {
+					ret.complete(false); // no-op unless cancelled
+					gui.onProjectChange();
+				},
 				exc -> {
 					exc.printStackTrace();
 					ret.complete(false);
@@ -146,7 +174,10 @@ public class FileMenu extends Menu {
 		gui.onProjectChange();
 
 		gui.runProgressTask("Initializing files...",
-				progressReceiver -> MatchesIo.read(res.path, newConfig.paths, newConfig.verifyFiles, gui.getMatcher(), progressReceiver),
+				progressReceiver -> {
+					MatchesIo.read(res.path, newConfig.paths, newConfig.verifyFiles, gui.getMatcher(), progressReceiver);
+					openJournal(res.path);
+				},
 				() -> gui.onProjectChange(),
 				Throwable::printStackTrace);
 	}
@@ -191,6 +222,9 @@ public class FileMenu extends Menu {
 
 		if (file == null) return;
 
+		MappingsLoadSettings settings;
+		final MappingFormat loadFormat = format;
+
 		try {
 			String[] namespaces = MappingReader.getNamespaces(file, format);
 
@@ -203,26 +237,37 @@ public class FileMenu extends Menu {
 			LoadMappingsPane content = new LoadMappingsPane(namespaces);
 			dialog.getDialogPane().setContent(content);
 			dialog.setResultConverter(button -> button == ButtonType.OK ? content.getSettings() : null);
-			final MappingFormat loadFormat = format;
 
 			Optional<MappingsLoadSettings> result = dialog.showAndWait();
 			if (!result.isPresent()) return;
 
-			MappingsLoadSettings settings = result.get();
-			ClassEnvironment env = gui.getMatcher().getEnv();
-
-			Mappings.load(file, loadFormat,
-					settings.nsSource, settings.nsTarget,
-					settings.fieldSource, settings.fieldTarget,
-					(settings.a ? env.getEnvA() : env.getEnvB()),
-					settings.replace);
+			settings = result.get();
 		} catch (IOException e) {
 			e.printStackTrace();
 			gui.showAlert(AlertType.ERROR, "Load error", "Error while loading mappings", e.toString());
 			return;
 		}
 
-		gui.onMappingChange();
+		ClassEnvironment env = gui.getMatcher().getEnv();
+
+		gui.runProgressTask("Loading mappings...",
+				progressReceiver -> {
+					try {
+						Mappings.load(file, loadFormat,
+								settings.nsSource, settings.nsTarget,
+								settings.fieldSource, settings.fieldTarget,
+								(settings.a ? env.getEnvA() : env.getEnvB()),
+								settings.replace, progressReceiver);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				},
+				() -> gui.onMappingChange(),
+				exc -> {
+					exc.printStackTrace();
+					gui.showAlert(AlertType.ERROR, "Load error", "Error while loading mappings", exc.toString());
+					gui.onMappingChange(); // the failed load cleared the mappings
+				});
 	}
 
 	private void saveMappings(MappingFormat format) {
@@ -285,23 +330,62 @@ public class FileMenu extends Menu {
 
 		dialog.showAndWait().ifPresent(settings -> {
 			ClassEnvironment env = gui.getMatcher().getEnv();
-
-			try {
-				if (Files.exists(savePath)) {
-					Files.deleteIfExists(savePath);
-				}
-
-				if (!Mappings.save(savePath, saveFormat, (settings.a ? env.getEnvA() : env.getEnvB()),
-						settings.nsTypes, settings.nsNames, settings.verbosity, settings.fieldsFirst)) {
-					gui.showAlert(AlertType.WARNING, "Mapping save warning", "No mappings to save", "There are currently no names mapped to matched classes, so saving was aborted.");
-				}
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			boolean[] saved = { false };
+			boolean[] cancelled = { false };
+
+			gui.runProgressTask("Saving mappings...",
+					progressReceiver -> {
+						// write next to the target and move it into place once complete, a cancelled or failed save keeps the old mappings
+						Path tmpPath = savePath.resolveSibling(savePath.getFileName().toString()+".tmp");
+
+						try {
+							deleteTmpSave(tmpPath);
+
+							if (Mappings.save(tmpPath, saveFormat, (settings.a ? env.getEnvA() : env.getEnvB()),
+									settings.nsTypes, settings.nsNames, settings.verbosity, settings.fieldsFirst, progressReceiver)) {
+								if (saveFormat.hasSingleFile()) {
+									Files.move(tmpPath, savePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+								} else { // directories can't be replaced atomically, the existing one got emptied before
+									Files.move(tmpPath, savePath, StandardCopyOption.REPLACE_EXISTING);
+								}
+
+								saved[0] = true;
+							}
+						} catch (CancellationException e) {
+							cancelled[0] = true;
+							deleteTmpSave(tmpPath);
+							throw e;
+						} catch (IOException e) {
+							deleteTmpSave(tmpPath);
+							throw new UncheckedIOException(e);
+						} catch (RuntimeException e) {
+							deleteTmpSave(tmpPath);
+							throw e;
+						}
+					},
+					() -> {
+						if (cancelled[0]) {
+							gui.showAlert(AlertType.INFORMATION, "Mapping save cancelled", "Saving was cancelled", "The mappings were not saved, an existing mapping file is left as it was.");
+						} else if (!saved[0]) {
+							gui.showAlert(AlertType.WARNING, "Mapping save warning", "No mappings to save", "There are currently no names mapped to matched classes, so saving was aborted.");
+						}
+					},
+					exc -> {
+						exc.printStackTrace();
+						gui.showAlert(AlertType.ERROR, "Save error", "Error while saving mappings", exc.toString());
+					});
 		});
 	}
 
+	private static void deleteTmpSave(Path tmpPath) {
+		try {
+			if (Files.isDirectory(tmpPath)) Util.clearDir(tmpPath, file -> false);
+			Files.deleteIfExists(tmpPath);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	private static boolean isDirEmpty(Path dir) {
 		try (Stream<Path> stream = Files.list(dir)) {
 			return !stream.anyMatch(ignore -> true);
@@ -341,9 +425,18 @@ public class FileMenu extends Menu {
 		if (res == null) return;
 
 		MatchesIo.read(res.path, null, false, gui.getMatcher(), progress -> {});
+		if (gui.getMatcher().getEnv().getJournal() == null) openJournal(res.path);
 		gui.onMatchChange(EnumSet.allOf(MatchType.class));
 	}
 
+	private void openJournal(Path matchesFile) {
+		try {
+			MatchesJournal.open(matchesFile, gui.getMatcher());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	private static List<ExtensionFilter> getMatchesLoadExtensionFilters() {
 		return Arrays.asList(new FileChooser.ExtensionFilter("Matches", "*.match"));
 	}
@@ -359,6 +452,13 @@ public class FileMenu extends Menu {
 		}
 
 		try {
+			MatchesJournal journal = gui.getMatcher().getEnv().getJournal();
+
+			if (journal != null && journal.getMatchesFile().equals(path)) { // snapshot + journal already represent the current state
+				journal.flush();
+				return;
+			}
+
 			if (Files.isDirectory(path)) {
 				gui.showAlert(AlertType.ERROR, "Save error", "Invalid file selection", "The selected file is a directory.");
 			} else if (Files.exists(path)) {
@@ -367,7 +467,13 @@ public class FileMenu extends Menu {
 
 			if (!MatchesIo.write(gui.getMatcher(), path)) {
 				gui.showAlert(AlertType.WARNING, "Matches save warning", "No matches to save", "There are currently no matched classes, so saving was aborted.");
+				return;
 			}
+
+			// continue journaling on top of the fresh snapshot
+			if (journal != null) journal.close();
+			MatchesJournal.delete(path);
+			openJournal(path);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -375,5 +481,108 @@ public class FileMenu extends Menu {
 		}
 	}
 
+	private void exportSources() {
+		Dialog<SourcesExportSettings> dialog = new Dialog<>();
+		dialog.setResizable(true);
+		dialog.setTitle("Sources export settings");
+		dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+		ExportSourcesPane content = new ExportSourcesPane(gui.getDecompiler());
+		dialog.getDialogPane().setContent(content);
+		dialog.setResultConverter(button -> button == ButtonType.OK ? content.getSettings() : null);
+
+		SourcesExportSettings settings = dialog.showAndWait().orElse(null);
+		if (settings == null) return;
+
+		Window window = gui.getScene().getWindow();
+		Path path;
+
+		if (settings.zip) {
+			SelectedFile res = Gui.requestFile("Save sources archive", window, Arrays.asList(new FileChooser.ExtensionFilter("Zip archive", "*.zip")), false);
+			if (res == null) return;
+
+			path = res.path;
+
+			if (!path.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".zip")) {
+				path = path.resolveSibling(path.getFileName().toString()+".zip");
+			}
+		} else {
+			path = Gui.requestDir("Save sources dir", window);
+			if (path == null) return;
+
+			if (Files.exists(path) && !isDirEmpty(path)) {
+				if (!gui.requestConfirmation("Save Confirmation", "Replace existing data", "The selected save location is not empty.\nDo you want to clear and reuse it?")) return;
+
+				try {
+					if (!Util.clearDir(path, file -> !Files.isDirectory(file) && !file.getFileName().toString().endsWith(".java"))) {
+						gui.showAlert(AlertType.ERROR, "Save error", "Error while preparing save location", "The target directory contains non-source files.");
+						return;
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+					gui.showAlert(AlertType.ERROR, "Save error", "Error while preparing save location", e.getMessage());
+					return;
+				}
+			}
+		}
+
+		ClassEnvironment env = gui.getMatcher().getEnv();
+		Path savePath = path;
+		int[] failed = new int[1];
+
+		gui.runProgressTask("Exporting sources...",
+				progressReceiver -> {
+					try {
+						failed[0] = SourceExporter.export(env, settings.a ? env.getEnvA() : env.getEnvB(), savePath,
+								settings.nameType, settings.decompiler, settings.decorate, settings.timeout, progressReceiver);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				},
+				() -> {
+					if (failed[0] > 0) {
+						gui.showAlert(AlertType.WARNING, "Sources export warning", "Incomplete export", failed[0]+" classes couldn't be exported, see the log for details.");
+					}
+				},
+				Throwable::printStackTrace);
+	}
+
+	private void exportJar() {
+		Dialog<JarExportSettings> dialog = new Dialog<>();
+		dialog.setResizable(true);
+		dialog.setTitle("Jar export settings");
+		dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+		ExportJarPane content = new ExportJarPane();
+		dialog.getDialogPane().setContent(content);
+		dialog.setResultConverter(button -> button == ButtonType.OK ? content.getSettings() : null);
+
+		JarExportSettings settings = dialog.showAndWait().orElse(null);
+		if (settings == null) return;
+
+		SelectedFile res = Gui.requestFile("Save remapped jar", gui.getScene().getWindow(), Arrays.asList(new FileChooser.ExtensionFilter("Jar file", "*.jar")), false);
+		if (res == null) return;
+
+		Path path = res.path;
+
+		if (!path.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".jar")) {
+			path = path.resolveSibling(path.getFileName().toString()+".jar");
+		}
+
+		ClassEnvironment env = gui.getMatcher().getEnv();
+		Path savePath = path;
+
+		gui.runProgressTask("Exporting remapped jar...",
+				progressReceiver -> {
+					try {
+						JarExporter.export(env, settings.a ? env.getEnvA() : env.getEnvB(), savePath, settings.nameType, progressReceiver);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				},
+				() -> {},
+				Throwable::printStackTrace);
+	}
+
 	private final Gui gui;
 }
@@ -14,6 +14,8 @@ public class MappingMenu extends Menu {
 	}
 
 	private void init() {
+		disableProperty().bind(gui.matchTaskRunningProperty());
+
 		MenuItem menuItem = new MenuItem("Propagate names");
 		getItems().add(menuItem);
 		menuItem.setOnAction(event -> gui.runProgressTask(
@@ -22,53 +22,47 @@ public class MatchingMenu extends Menu {
 	private void init() {
 		MenuItem menuItem = new MenuItem("Auto match all");
 		getItems().add(menuItem);
-		menuItem.setOnAction(event -> gui.runProgressTask(
+		menuItem.setOnAction(event -> gui.runMatchTask(
 				"Auto matching...",
 				gui.getMatcher()::autoMatchAll,
-				() -> gui.onMatchChange(EnumSet.allOf(MatchType.class)),
-				Throwable::printStackTrace));
+				EnumSet.allOf(MatchType.class)));
 
 		getItems().add(new SeparatorMenuItem());
 
 		menuItem = new MenuItem("Auto class match");
 		getItems().add(menuItem);
-		menuItem.setOnAction(event -> gui.runProgressTask(
+		menuItem.setOnAction(event -> gui.runMatchTask(
 				"Auto matching classes...",
 				gui.getMatcher()::autoMatchClasses,
-				() -> gui.onMatchChange(EnumSet.allOf(MatchType.class)),
-				Throwable::printStackTrace));
+				EnumSet.allOf(MatchType.class)));
 
 		menuItem = new MenuItem("Auto method match");
 		getItems().add(menuItem);
-		menuItem.setOnAction(event -> gui.runProgressTask(
+		menuItem.setOnAction(event -> gui.runMatchTask(
 				"Auto matching methods...",
 				gui.getMatcher()::autoMatchMethods,
-				() -> gui.onMatchChange(EnumSet.of(MatchType.Method)),
-				Throwable::printStackTrace));
+				EnumSet.of(MatchType.Method)));
 
 		menuItem = new MenuItem("Auto field match");
 		getItems().add(menuItem);
-		menuItem.setOnAction(event -> gui.runProgressTask(
+		menuItem.setOnAction(event -> gui.runMatchTask(
 				"Auto matching fields...",
 				gui.getMatcher()::autoMatchFields,
-				() -> gui.onMatchChange(EnumSet.of(MatchType.Field)),
-				Throwable::printStackTrace));
+				EnumSet.of(MatchType.Field)));
 
 		menuItem = new MenuItem("Auto method arg match");
 		getItems().add(menuItem);
-		menuItem.setOnAction(event -> gui.runProgressTask(
+		menuItem.setOnAction(event -> gui.runMatchTask(
 				"Auto matching method args...",
 				gui.getMatcher()::autoMatchMethodArgs,
-				() -> gui.onMatchChange(EnumSet.of(MatchType.MethodVar)),
-				Throwable::printStackTrace));
+				EnumSet.of(MatchType.MethodVar)));
 
 		menuItem = new MenuItem("Auto method var match");
 		getItems().add(menuItem);
-		menuItem.setOnAction(event -> gui.runProgressTask(
+		menuItem.setOnAction(event -> gui.runMatchTask(
 				"Auto matching method vars...",
 				gui.getMatcher()::autoMatchMethodVars,
-				() -> gui.onMatchChange(EnumSet.of(MatchType.MethodVar)),
-				Throwable::printStackTrace));
+				EnumSet.of(MatchType.MethodVar)));
 
 		getItems().add(new SeparatorMenuItem());
 
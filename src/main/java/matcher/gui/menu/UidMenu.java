@@ -41,6 +41,8 @@ public class UidMenu extends Menu {
 	}
 
 	private void init() {
+		disableProperty().bind(gui.matchTaskRunningProperty());
+
 		MenuItem menuItem = new MenuItem("Setup");
 		getItems().add(menuItem);
 		menuItem.setOnAction(event -> setup());
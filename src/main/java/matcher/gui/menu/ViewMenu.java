@@ -110,6 +110,12 @@ public class ViewMenu extends Menu implements IGuiComponent {
 		});
 
 		getItems().add(menu);
+
+		getItems().add(new SeparatorMenuItem());
+
+		MenuItem menuItem = new MenuItem("Search...");
+		menuItem.setOnAction(event -> gui.getSearchPane().show());
+		getItems().add(menuItem);
 	}
 
 	@Override
@@ -1,17 +1,38 @@
 package matcher.gui.tab;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.util.Textifier;
 import org.objectweb.asm.util.TraceClassVisitor;
 
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.control.Tab;
-import javafx.scene.control.TextArea;
+import matcher.NameType;
 import matcher.gui.Gui;
 import matcher.gui.IGuiComponent;
 import matcher.gui.ISelectionProvider;
+import matcher.gui.TaskScheduler.Priority;
 import matcher.type.ClassInstance;
 
+/**
+ * Disassembly of the selected class.
+ *
+ * <p>The text is produced in the background from the cached class file for the current name type and split into one
+ * cell per member, so only the visible members get laid out. Results are kept per class and name type until the
+ * class file changes.
+ */
 public class BytecodeTab extends Tab implements IGuiComponent {
 	public BytecodeTab(Gui gui, ISelectionProvider selectionProvider, boolean unmatchedTmp) {
 		super("bytecode");
@@ -24,9 +45,23 @@ public class BytecodeTab extends Tab implements IGuiComponent {
 	}
 
 	private void init() {
-		text.setEditable(false);
+		list.setCellFactory(ignore -> new ListCell<String>() {
+			@Override
+			protected void updateItem(String item, boolean empty) {
+				super.updateItem(item, empty);
 
-		setContent(text);
+				if (empty || item == null) {
+					setText(null);
+					setStyle("");
+				} else {
+					setText(item);
+					setStyle("-fx-font-family: monospace;");
+				}
+			}
+		});
+
+		list.setPlaceholder(placeholder);
+		setContent(list);
 	}
 
 	@Override
@@ -44,21 +79,133 @@ public class BytecodeTab extends Tab implements IGuiComponent {
 	}
 
 	private void update(ClassInstance cls, boolean isRefresh) {
+		final int cUpdateId = ++updateId;
+
 		if (cls == null) {
-			text.setText("");
-		} else {
-			StringWriter writer = new StringWriter();
+			placeholder.setText("no class selected");
+			list.getItems().clear();
+			return;
+		}
+
+		if (!isRefresh) {
+			placeholder.setText("disassembling...");
+			list.getItems().clear();
+		}
+
+		NameType nameType = gui.getNameType().withUnmatchedTmp(unmatchedTmp);
+
+		Gui.runAsyncTask(() -> getMembers(cls, nameType, () -> cUpdateId != updateId), Priority.INTERACTIVE, this)
+		.whenComplete((res, exc) -> {
+			if (cUpdateId != updateId) return; // superseded by a later update, which also cancelled this one
 
-			try (PrintWriter pw = new PrintWriter(writer)) {
-				cls.accept(new TraceClassVisitor(pw), gui.getNameType().withUnmatchedTmp(unmatchedTmp));
+			if (exc != null) {
+				exc.printStackTrace();
+				placeholder.setText("disassembly error: "+exc);
+				list.getItems().clear();
+			} else {
+				placeholder.setText("no bytecode available");
+				list.getItems().setAll(res);
 			}
+		});
+	}
+
+	private List<String> getMembers(ClassInstance cls, NameType nameType, BooleanSupplier cancelled) {
+		if (cls.getMergedAsmNode() == null) return List.of();
+
+		byte[] data = cls.serialize(nameType); // shared array, identity changes with the content
+		Disassembly ret;
 
-			text.setText(writer.toString());
+		synchronized (cache) {
+			Map<NameType, Disassembly> entries = cache.get(cls);
+			ret = entries != null ? entries.get(nameType) : null;
 		}
+
+		if (ret != null && ret.data == data) return ret.members;
+
+		ret = new Disassembly(data, disassemble(data, cancelled));
+
+		synchronized (cache) {
+			cache.computeIfAbsent(cls, ignore -> new EnumMap<>(NameType.class)).put(nameType, ret);
+		}
+
+		return ret.members;
 	}
 
+	/**
+	 * Disassemble a class file into the class header and one entry per field or method.
+	 */
+	private static List<String> disassemble(byte[] data, BooleanSupplier cancelled) {
+		Textifier textifier = new Textifier();
+
+		new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9, new TraceClassVisitor(null, textifier, null)) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				if (cancelled.getAsBoolean()) throw new CancellationException();
+
+				return super.visitMethod(access, name, descriptor, signature, exceptions);
+			}
+		}, 0);
+
+		List<String> ret = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+
+		for (Object part : textifier.getText()) {
+			append(part, sb);
+
+			if (part instanceof List) { // field or method body, completing the member
+				addMember(sb, ret);
+			}
+		}
+
+		addMember(sb, ret);
+
+		return ret;
+	}
+
+	private static void append(Object part, StringBuilder out) {
+		if (part instanceof List) {
+			for (Object p : (List<?>) part) {
+				append(p, out);
+			}
+		} else {
+			out.append(part);
+		}
+	}
+
+	private static void addMember(StringBuilder sb, List<String> out) {
+		int start = 0;
+		int end = sb.length();
+
+		while (start < end && sb.charAt(start) == '\n') start++;
+		while (end > start && sb.charAt(end - 1) == '\n') end--;
+
+		if (start < end) out.add(sb.substring(start, end));
+		sb.setLength(0);
+	}
+
+	private static class Disassembly {
+		Disassembly(byte[] data, List<String> members) {
+			this.data = data;
+			this.members = members;
+		}
+
+		final byte[] data;
+		final List<String> members;
+	}
+
+	private static final int cacheSize = 32;
+
 	private final Gui gui;
 	private final ISelectionProvider selectionProvider;
 	private final boolean unmatchedTmp;
-	private final TextArea text = new TextArea();
+	private final ListView<String> list = new ListView<>();
+	private final Label placeholder = new Label();
+	private final Map<ClassInstance, Map<NameType, Disassembly>> cache = new LinkedHashMap<ClassInstance, Map<NameType, Disassembly>>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ClassInstance, Map<NameType, Disassembly>> eldest) {
+			return size() > cacheSize;
+		}
+	};
+
+	private volatile int updateId;
 }
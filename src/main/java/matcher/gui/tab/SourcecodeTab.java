@@ -9,9 +9,10 @@ import matcher.config.Config;
 import matcher.gui.Gui;
 import matcher.gui.IGuiComponent;
 import matcher.gui.ISelectionProvider;
+import matcher.gui.TaskScheduler.Priority;
 import matcher.srcprocess.HtmlUtil;
-import matcher.srcprocess.SrcDecorator;
 import matcher.srcprocess.SrcDecorator.SrcParseException;
+import matcher.type.ClassEnvironment;
 import matcher.type.ClassInstance;
 import matcher.type.FieldInstance;
 import matcher.type.MatchType;
@@ -84,10 +85,10 @@ public class SourcecodeTab extends Tab implements IGuiComponent {
 		}
 
 		NameType nameType = gui.getNameType().withUnmatchedTmp(unmatchedTmp);
+		ClassEnvironment env = gui.getEnv();
 
 		//Gui.runAsyncTask(() -> gui.getEnv().decompile(cls, true))
-		Gui.runAsyncTask(() -> SrcDecorator.decorate(gui.getEnv().decompile(gui.getDecompiler().get(), cls, nameType),
-				cls, nameType))
+		Gui.runAsyncTask(() -> env.readConsistently(() -> gui.getSourceCache().get(env, cls, nameType, gui.getDecompiler())), Priority.INTERACTIVE, this)
 		.whenComplete((res, exc) -> {
 			if (cDecompId == decompId) {
 				if (exc != null) {
@@ -170,9 +171,67 @@ public class SourcecodeTab extends Tab implements IGuiComponent {
 	}
 
 	private void displayHtml(String html) {
+		if (countLines(html) > chunkedThreshold) html = toChunks(html);
+
 		webView.getEngine().loadContent(TEMPLATE.replace("%theme%", Config.getDarkTheme() ? "dark" : "light").replace("%text%", html));
 	}
 
+	private static int countLines(String str) {
+		int ret = 1;
+
+		for (int i = 0, max = str.length(); i < max; i++) {
+			if (str.charAt(i) == '\n') ret++;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Split html into blocks of whole members with at least chunkLines lines, which the template inserts lazily.
+	 *
+	 * <p>Blocks are only cut where no span is open, so they contain complete members and their ids. Each block becomes
+	 * an empty div sized to its line count, followed by a template holding its content.
+	 */
+	private static String toChunks(String html) {
+		StringBuilder ret = new StringBuilder(html.length() + 1024);
+		int depth = 0;
+		int lines = 0;
+		int chunkStart = 0;
+		int pos = 0;
+
+		for (;;) {
+			int end = html.indexOf('\n', pos);
+			int lineEnd = end >= 0 ? end : html.length();
+
+			depth += count(html, "<span", pos, lineEnd) - count(html, "</span>", pos, lineEnd);
+			lines++;
+			pos = lineEnd + 1;
+
+			if (end < 0 || depth == 0 && lines >= chunkLines) {
+				// no whitespace between the elements, the body preserves it
+				ret.append("<div class=\"chunk\" style=\"--lines: ").append(lines).append("\"></div>");
+				ret.append("<template class=\"chunk-content\">").append(html, chunkStart, lineEnd).append("</template>");
+
+				if (end < 0) break;
+
+				chunkStart = pos;
+				lines = 0;
+			}
+		}
+
+		return ret.toString();
+	}
+
+	private static int count(String str, String part, int start, int end) {
+		int ret = 0;
+
+		for (int i = start, max = end - part.length(); i <= max; i++) {
+			if (str.startsWith(part, i)) ret++;
+		}
+
+		return ret;
+	}
+
 	private double getScrollTop() {
 		Object result;
 
@@ -215,6 +274,8 @@ public class SourcecodeTab extends Tab implements IGuiComponent {
 	}
 
 	private static final String TEMPLATE = readTemplate("ui/codeview/template.html");
+	private static final int chunkedThreshold = 3000; // lines
+	private static final int chunkLines = 100;
 
 	private final Gui gui;
 	private final ISelectionProvider selectionProvider;
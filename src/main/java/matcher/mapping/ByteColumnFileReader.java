@@ -0,0 +1,259 @@
+package matcher.mapping;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Column reader operating directly on the raw bytes of a UTF-8 file.
+ *
+ * <p>Columns are located by scanning the raw bytes, which is safe since all separators are ASCII. Only columns
+ * actually requested as strings get decoded, integer and expected-content columns are parsed in place and
+ * pure ASCII columns skip the UTF-8 decoder.
+ *
+ * <p>The file gets read completely up front instead of being memory mapped. A mapping can't be released before the
+ * buffer is garbage collected, which keeps the file locked on Windows and makes saving over it fail.
+ */
+final class ByteColumnFileReader extends ColumnFileReader {
+	public ByteColumnFileReader(Path file, char columnSeparator) throws IOException {
+		super(columnSeparator);
+
+		if (columnSeparator >= 0x80) throw new IllegalArgumentException("non-ascii column separator");
+
+		this.buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		this.view = buffer.duplicate();
+		this.columnSeparator = (byte) columnSeparator;
+		this.limit = buffer.limit();
+	}
+
+	@Override
+	public void close() {
+		// nothing to release, the file is closed after reading it
+	}
+
+	@Override
+	public boolean nextCol(String expect) {
+		if (eol) return false;
+
+		int len = expect.length();
+		if (pos + len > limit) return false;
+
+		for (int i = 0; i < len; i++) {
+			assert expect.charAt(i) < 0x80;
+
+			if (buffer.get(pos + i) != expect.charAt(i)) return false;
+		}
+
+		int trailing = 0;
+
+		if (pos + len < limit // not eof
+				&& (trailing = buffer.get(pos + len)) != columnSeparator // not end of column
+				&& trailing != '\n' // not end of line
+				&& trailing != '\r') {
+			return false; // read failed, column contains data beyond expect
+		}
+
+		pos += len;
+
+		// seek to the start of the next column
+		if (trailing == columnSeparator) {
+			pos++;
+		} else {
+			eol = true;
+		}
+
+		return true;
+	}
+
+	@Override
+	public String nextCol() {
+		return nextCol(false);
+	}
+
+	@Override
+	public String nextEscapedCol() {
+		return nextCol(true);
+	}
+
+	@Override
+	public String nextCol(boolean unescape) {
+		if (eol) return null;
+
+		int start = pos;
+		int end = seekColEnd();
+		int len = end - start;
+
+		if (len == 0) return "";
+
+		String ret = decode(start, len, colAscii);
+
+		return unescape && colEscaped ? Tiny2Util.unescape(ret) : ret;
+	}
+
+	@Override
+	public int nextIntCol() throws IOException {
+		if (eol) return -1;
+
+		int start = pos;
+		int end = seekColEnd();
+		int len = end - start;
+
+		if (len > 0 && len < 10) { // fast path, can't overflow
+			int ret = 0;
+			int i;
+
+			for (i = start; i < end; i++) {
+				int c = buffer.get(i) - '0';
+				if (c < 0 || c > 9) break;
+
+				ret = ret * 10 + c;
+			}
+
+			if (i == end) return ret;
+		}
+
+		String str = decode(start, len, colAscii);
+
+		try {
+			return Integer.parseInt(str);
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid number in line "+lineNumber+": "+str);
+		}
+	}
+
+	/**
+	 * Move past the current column, recording whether it is pure ASCII and whether it contains escapes.
+	 *
+	 * @return end offset of the column
+	 */
+	private int seekColEnd() {
+		int end = pos;
+		boolean ascii = true;
+		boolean escaped = false;
+
+		while (end < limit) {
+			byte c = buffer.get(end);
+
+			if (c == columnSeparator || c == '\n' || c == '\r') break;
+
+			if (c < 0) {
+				ascii = false;
+			} else if (c == '\\') {
+				escaped = true;
+			}
+
+			end++;
+		}
+
+		if (end < limit && buffer.get(end) == columnSeparator) {
+			pos = end + 1;
+		} else {
+			pos = end;
+			eol = true;
+		}
+
+		colAscii = ascii;
+		colEscaped = escaped;
+
+		return end;
+	}
+
+	private String decode(int start, int len, boolean ascii) {
+		if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+
+		view.position(start);
+		view.get(scratch, 0, len);
+
+		return new String(scratch, 0, len, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public boolean nextLine(int indent) {
+		while (pos < limit) {
+			byte c = buffer.get(pos);
+
+			if (c == '\n') {
+				if (indent == 0) { // skip empty lines if indent is 0
+					if (pos + 2 > limit) break;
+
+					c = buffer.get(pos + 1);
+
+					if (c == '\n' || c == '\r') { // 2+ consecutive new lines, consume first nl and retry
+						pos++;
+						lineNumber++;
+						continue;
+					}
+				}
+
+				if (pos + indent + 1 > limit) return false;
+
+				for (int i = 1; i <= indent; i++) {
+					if (buffer.get(pos + i) != '\t') return false;
+				}
+
+				pos += indent + 1;
+				lineNumber++;
+				eol = false;
+
+				return true;
+			}
+
+			pos++;
+		}
+
+		eol = eof = true;
+
+		return false;
+	}
+
+	@Override
+	public boolean hasExtraIndents() {
+		return pos < limit && buffer.get(pos) == '\t';
+	}
+
+	@Override
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public boolean isAtEof() {
+		return eof;
+	}
+
+	@Override
+	public void mark() {
+		mark = pos;
+		markLineNumber = lineNumber;
+		markEol = eol;
+		markEof = eof;
+	}
+
+	@Override
+	public void reset() {
+		if (mark < 0) throw new IllegalStateException("not marked");
+
+		pos = mark;
+		lineNumber = markLineNumber;
+		eol = markEol;
+		eof = markEof;
+	}
+
+	private final ByteBuffer buffer;
+	private final ByteBuffer view; // separate position for bulk reads
+	private final byte columnSeparator;
+	private final int limit;
+	private byte[] scratch = new byte[256];
+	private int pos;
+	private int mark = -1;
+	private int markLineNumber;
+	private boolean markEol;
+	private boolean markEof;
+	private int lineNumber = 1;
+	private boolean eol; // tracks whether the last column has been read, otherwise ambiguous if the last col is empty
+	private boolean eof;
+	private boolean colAscii;
+	private boolean colEscaped;
+}
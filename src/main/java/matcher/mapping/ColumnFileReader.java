@@ -5,10 +5,20 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Arrays;
 
-final class ColumnFileReader implements Closeable {
+class ColumnFileReader implements Closeable {
 	public ColumnFileReader(Reader reader, char columnSeparator) {
 		this.reader = reader;
 		this.columnSeparator = columnSeparator;
+		this.buffer = new char[4096 * 4];
+	}
+
+	/**
+	 * Constructor for implementations not backed by a {@link Reader}, those have to override all public methods.
+	 */
+	protected ColumnFileReader(char columnSeparator) {
+		this.reader = null;
+		this.columnSeparator = columnSeparator;
+		this.buffer = null;
 	}
 
 	@Override
@@ -208,12 +218,21 @@ final class ColumnFileReader implements Closeable {
 		}
 
 		mark = bufferPos;
+		markLineNumber = lineNumber;
+		markEol = eol;
+		markEof = eof;
 	}
 
+	/**
+	 * Rewind to the position and line state of the last {@link #mark} call.
+	 */
 	public void reset() {
 		if (mark < 0) throw new IllegalStateException("not marked");
 
 		bufferPos = mark;
+		lineNumber = markLineNumber;
+		eol = markEol;
+		eof = markEof;
 	}
 
 	private boolean fillBuffer(int count) throws IOException {
@@ -250,10 +269,13 @@ final class ColumnFileReader implements Closeable {
 
 	private final Reader reader;
 	private final char columnSeparator;
-	private char[] buffer = new char[4096 * 4];
+	private char[] buffer;
 	private int bufferPos;
 	private int bufferLimit;
 	private int mark = -1;
+	private int markLineNumber;
+	private boolean markEol;
+	private boolean markEof;
 	private int lineNumber = 1;
 	private boolean eol; // tracks whether the last column has been read, otherwise ambiguous if the last col is empty
 	private boolean eof;
@@ -1,5 +1,6 @@
 package matcher.mapping;
 
+import matcher.Matcher;
 import matcher.mapping.MappingState.*;
 import matcher.type.ClassInstance;
 
@@ -292,20 +293,42 @@ class EnigmaImpl {
 	}
 
 	public static void write(Path file, MappingState state) throws IOException {
-		file = file.toAbsolutePath();
+		Path dir = file.toAbsolutePath();
+		List<ClassMappingState> classes = new ArrayList<>();
 
 		for (ClassMappingState clsState : state.classMap.values()) {
 			if (ClassInstance.hasOuterName(clsState.name)) continue;
 
 			String name = clsState.mappedName != null ? clsState.mappedName : clsState.name;
-			Path path = file.resolve(name+".mapping").toAbsolutePath();
-			if (!path.startsWith(file)) throw new RuntimeException("invalid mapped name: "+name);
+			Path path = dir.resolve(name+".mapping").toAbsolutePath();
+			if (!path.startsWith(dir)) throw new RuntimeException("invalid mapped name: "+name);
 
-			Files.createDirectories(path.getParent());
+			classes.add(clsState);
+		}
+
+		// every top level class has its own file, write them concurrently
+
+		try {
+			Matcher.runInParallel(classes, clsState -> {
+				String name = clsState.mappedName != null ? clsState.mappedName : clsState.name;
+				Path path = dir.resolve(name+".mapping").toAbsolutePath();
+
+				try {
+					Files.createDirectories(path.getParent());
 
-			try (Writer writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
-				writeClass(clsState, "", writer);
+					try (Writer writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+						writeClass(clsState, "", writer);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, progress -> { });
+		} catch (RuntimeException e) {
+			for (Throwable t = e; t != null; t = t.getCause()) {
+				if (t instanceof UncheckedIOException) throw ((UncheckedIOException) t).getCause();
 			}
+
+			throw e;
 		}
 	}
 
@@ -0,0 +1,139 @@
+package matcher.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Records the content visits of a flat mapping visitor to replay them later, e.g. after producing them concurrently.
+ *
+ * <p>Passed arrays are copied since callers commonly reuse them between visits.
+ */
+final class FlatMappingBuffer implements FlatMappingVisitor {
+	public void replay(FlatMappingVisitor visitor) {
+		for (Consumer<FlatMappingVisitor> visit : visits) {
+			visit.accept(visitor);
+		}
+	}
+
+	@Override
+	public void visitNamespaces(String srcNamespace, List<String> dstNamespaces) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean visitClass(String srcName, String[] dstNames) {
+		String[] dstNamesCopy = copy(dstNames);
+		visits.add(v -> v.visitClass(srcName, dstNamesCopy));
+
+		return true;
+	}
+
+	@Override
+	public void visitClassComment(String srcName, String[] dstNames, String comment) {
+		String[] dstNamesCopy = copy(dstNames);
+		visits.add(v -> v.visitClassComment(srcName, dstNamesCopy, comment));
+	}
+
+	@Override
+	public boolean visitField(String srcClsName, String srcName, String srcDesc,
+			String[] dstClsNames, String[] dstNames, String[] dstDescs) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstNamesCopy = copy(dstNames);
+		String[] dstDescsCopy = copy(dstDescs);
+		visits.add(v -> v.visitField(srcClsName, srcName, srcDesc, dstClsNamesCopy, dstNamesCopy, dstDescsCopy));
+
+		return true;
+	}
+
+	@Override
+	public void visitFieldComment(String srcClsName, String srcName, String srcDesc,
+			String[] dstClsNames, String[] dstNames, String[] dstDescs,
+			String comment) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstNamesCopy = copy(dstNames);
+		String[] dstDescsCopy = copy(dstDescs);
+		visits.add(v -> v.visitFieldComment(srcClsName, srcName, srcDesc, dstClsNamesCopy, dstNamesCopy, dstDescsCopy, comment));
+	}
+
+	@Override
+	public boolean visitMethod(String srcClsName, String srcName, String srcDesc,
+			String[] dstClsNames, String[] dstNames, String[] dstDescs) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstNamesCopy = copy(dstNames);
+		String[] dstDescsCopy = copy(dstDescs);
+		visits.add(v -> v.visitMethod(srcClsName, srcName, srcDesc, dstClsNamesCopy, dstNamesCopy, dstDescsCopy));
+
+		return true;
+	}
+
+	@Override
+	public void visitMethodComment(String srcClsName, String srcName, String srcDesc,
+			String[] dstClsNames, String[] dstNames, String[] dstDescs,
+			String comment) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstNamesCopy = copy(dstNames);
+		String[] dstDescsCopy = copy(dstDescs);
+		visits.add(v -> v.visitMethodComment(srcClsName, srcName, srcDesc, dstClsNamesCopy, dstNamesCopy, dstDescsCopy, comment));
+	}
+
+	@Override
+	public boolean visitMethodArg(String srcClsName, String srcMethodName, String srcMethodDesc,
+			int argPosition, int lvIndex, String srcArgName,
+			String[] dstClsNames, String[] dstMethodNames, String[] dstMethodDescs, String[] dstArgNames) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstMethodNamesCopy = copy(dstMethodNames);
+		String[] dstMethodDescsCopy = copy(dstMethodDescs);
+		String[] dstArgNamesCopy = copy(dstArgNames);
+		visits.add(v -> v.visitMethodArg(srcClsName, srcMethodName, srcMethodDesc, argPosition, lvIndex, srcArgName,
+				dstClsNamesCopy, dstMethodNamesCopy, dstMethodDescsCopy, dstArgNamesCopy));
+
+		return true;
+	}
+
+	@Override
+	public void visitMethodArgComment(String srcClsName, String srcMethodName, String srcMethodDesc,
+			int argPosition, int lvIndex, String srcArgName,
+			String[] dstClsNames, String[] dstMethodNames, String[] dstMethodDescs, String[] dstArgNames,
+			String comment) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstMethodNamesCopy = copy(dstMethodNames);
+		String[] dstMethodDescsCopy = copy(dstMethodDescs);
+		String[] dstArgNamesCopy = copy(dstArgNames);
+		visits.add(v -> v.visitMethodArgComment(srcClsName, srcMethodName, srcMethodDesc, argPosition, lvIndex, srcArgName,
+				dstClsNamesCopy, dstMethodNamesCopy, dstMethodDescsCopy, dstArgNamesCopy, comment));
+	}
+
+	@Override
+	public boolean visitMethodVar(String srcClsName, String srcMethodName, String srcMethodDesc,
+			int lvtRowIndex, int lvIndex, int startOpIdx, String srcVarName,
+			String[] dstClsNames, String[] dstMethodNames, String[] dstMethodDescs, String[] dstVarNames) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstMethodNamesCopy = copy(dstMethodNames);
+		String[] dstMethodDescsCopy = copy(dstMethodDescs);
+		String[] dstVarNamesCopy = copy(dstVarNames);
+		visits.add(v -> v.visitMethodVar(srcClsName, srcMethodName, srcMethodDesc, lvtRowIndex, lvIndex, startOpIdx, srcVarName,
+				dstClsNamesCopy, dstMethodNamesCopy, dstMethodDescsCopy, dstVarNamesCopy));
+
+		return true;
+	}
+
+	@Override
+	public void visitMethodVarComment(String srcClsName, String srcMethodName, String srcMethodDesc,
+			int lvtRowIndex, int lvIndex, int startOpIdx, String srcVarName,
+			String[] dstClsNames, String[] dstMethodNames, String[] dstMethodDescs, String[] dstVarNames,
+			String comment) {
+		String[] dstClsNamesCopy = copy(dstClsNames);
+		String[] dstMethodNamesCopy = copy(dstMethodNames);
+		String[] dstMethodDescsCopy = copy(dstMethodDescs);
+		String[] dstVarNamesCopy = copy(dstVarNames);
+		visits.add(v -> v.visitMethodVarComment(srcClsName, srcMethodName, srcMethodDesc, lvtRowIndex, lvIndex, startOpIdx, srcVarName,
+				dstClsNamesCopy, dstMethodNamesCopy, dstMethodDescsCopy, dstVarNamesCopy, comment));
+	}
+
+	private static String[] copy(String[] array) {
+		return array != null ? array.clone() : null;
+	}
+
+	private final List<Consumer<FlatMappingVisitor>> visits = new ArrayList<>();
+}
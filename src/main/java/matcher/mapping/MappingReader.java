@@ -104,10 +104,7 @@ public final class MappingReader {
 		switch (format) {
 		case TINY:
 			//readTiny(file, nsSource, nsTarget, new RegularAsFlatMappingVisitor(visitor));
-			try (Reader reader = createReader(file, false)) {
-				Tiny1Reader.read(reader, new MappingSourceNsSwitch(visitor, nsSource));
-			}
-
+			Tiny1Reader.read(file, new MappingSourceNsSwitch(visitor, nsSource));
 			break;
 		case TINY_GZIP:
 			//readGzTiny(file, nsSource, nsTarget, new RegularAsFlatMappingVisitor(visitor));
@@ -118,10 +115,7 @@ public final class MappingReader {
 			break;
 		case TINY_2:
 			//readTiny2(file, nsSource, nsTarget, new RegularAsFlatMappingVisitor(visitor));
-			try (Reader reader = createReader(file, false)) {
-				Tiny2Reader.read(reader, new MappingSourceNsSwitch(visitor, nsSource));
-			}
-
+			Tiny2Reader.read(file, new MappingSourceNsSwitch(visitor, nsSource));
 			break;
 		case ENIGMA:
 			EnigmaImpl.read(file, isReverseMapping(nsSource, nsTarget), new RegularAsFlatMappingVisitor(visitor));
@@ -135,12 +129,12 @@ public final class MappingReader {
 		case TSRG:
 			readTSrg(file, isReverseMapping(nsSource, nsTarget), new RegularAsFlatMappingVisitor(visitor));
 			break;
+		case TSRG2:
+			TsrgReader.read(file, new MappingSourceNsSwitch(visitor, nsSource));
+			break;
 		case PROGUARD:
 			//readProguard(file, isReverseMapping(nsSource, nsTarget), new RegularAsFlatMappingVisitor(visitor));
-			try (Reader reader = createReader(file, false)) {
-				ProGuardReader.read(reader, new MappingSourceNsSwitch(visitor, nsSource));
-			}
-
+			ProGuardReader.read(file, new MappingSourceNsSwitch(visitor, nsSource));
 			break;
 		default:
 			throw new IllegalStateException();
@@ -1,28 +1,71 @@
 package matcher.mapping;
 
+import matcher.Matcher;
 import matcher.NameType;
-import matcher.Util;
+import matcher.TaskControl;
+import matcher.serdes.MatchesJournal;
 import matcher.type.*;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.DoubleConsumer;
 
 public class Mappings {
 	public static void load(Path path, MappingFormat format,
 			String nsSource, String nsTarget,
 			MappingField fieldSource, MappingField fieldTarget,
 			LocalClassEnv env, final boolean replace) throws IOException {
+		load(path, format, nsSource, nsTarget, fieldSource, fieldTarget, env, replace, progress -> { });
+	}
+
+	/**
+	 * Load mappings into env.
+	 *
+	 * <p>Cancelling through a {@link TaskControl} progressReceiver is possible until the mappings start getting
+	 * applied, which then happens as a whole.
+	 */
+	public static void load(Path path, MappingFormat format,
+			String nsSource, String nsTarget,
+			MappingField fieldSource, MappingField fieldTarget,
+			LocalClassEnv env, final boolean replace,
+			DoubleConsumer progressReceiver) throws IOException {
+		MatchesJournal journal = env.getGlobal().getJournal();
+		if (journal != null) journal.beginBulkChange(); // persisted at once instead of record by record
+
+		try {
+			loadUnjournaled(path, format, nsSource, nsTarget, fieldSource, fieldTarget, env, replace, progressReceiver);
+		} finally {
+			if (journal != null) journal.endBulkChange();
+		}
+	}
+
+	private static void loadUnjournaled(Path path, MappingFormat format,
+			String nsSource, String nsTarget,
+			MappingField fieldSource, MappingField fieldTarget,
+			LocalClassEnv env, final boolean replace,
+			DoubleConsumer progressReceiver) throws IOException {
 		assert fieldTarget != MappingField.PLAIN;
 		int[] dstNameCounts = new int[MatchableKind.VALUES.length];
 		int[] commentCounts = new int[MatchableKind.VALUES.length];
-		Set<String> warnedClasses = new HashSet<>();
 
 		try {
+			// index the local classes by the source name type before reading, resolving then needs a single lookup per class
+
+			Map<String, ClassInstance> clsIndex = fieldSource != MappingField.PLAIN ? indexClasses(env, fieldSource.type) : null;
+			Map<String, ClassRecord> records = new LinkedHashMap<>();
+			Map<String, Integer> uidMetadata = new HashMap<>();
+
+			// buffer the mapping per class and the uid state, nothing gets resolved or applied while the file is being read
+
 			MappingReader.read(path, format, nsSource, nsTarget, new MappingVisitor() {
 				@Override
 				public void visitNamespaces(String srcNamespace, List<String> dstNamespaces) {
@@ -34,377 +77,346 @@ public class Mappings {
 				public void visitMetadata(String key, String value) {
 					if (fieldTarget == MappingField.UID) {
 						switch (key) {
-						case Mappings.metaUidNextClass: {
-							int val = Integer.parseInt(value);
-							if (replace || env.getGlobal().nextClassUid < val) env.getGlobal().nextClassUid = val;
-							break;
-						}
-						case Mappings.metaUidNextMethod: {
-							int val = Integer.parseInt(value);
-							if (replace || env.getGlobal().nextMethodUid < val) env.getGlobal().nextMethodUid = val;
-							break;
-						}
-						case Mappings.metaUidNextField: {
-							int val = Integer.parseInt(value);
-							if (replace || env.getGlobal().nextFieldUid < val) env.getGlobal().nextFieldUid = val;
+						case Mappings.metaUidNextClass:
+						case Mappings.metaUidNextMethod:
+						case Mappings.metaUidNextField:
+							uidMetadata.put(key, Integer.parseInt(value));
 							break;
 						}
-						}
 					}
 				}
 
 				@Override
 				public boolean visitClass(String srcName) {
-					method = null;
-					field = null;
-					arg = null;
-					var = null;
+					TaskControl.checkCancelled(progressReceiver);
 
-					cur = cls = findClass(srcName, fieldSource, env);
-
-					if (cls == null) {
-						if (warnedClasses.add(srcName)) System.out.println("can't find mapped class "+srcName);
-						return false;
-					}
+					cls = records.computeIfAbsent(srcName, ClassRecord::new);
+					cur = cls;
+					method = null;
 
 					return true;
 				}
 
 				@Override
 				public boolean visitMethod(String srcName, String srcDesc) {
-					field = null;
-					arg = null;
-					var = null;
-
-					cur = method = cls.getMethod(srcName, srcDesc, fieldSource.type);
-
-					if (method == null || !method.isReal()) {
-						System.out.printf("can't find mapped method %s/%s%s%n",
-								cls.getName(fieldSource.type), srcName, srcDesc);
-						return false;
-					}
+					cur = method = cls.add(new ElementRecord(MappedElementKind.METHOD, srcName, srcDesc));
 
 					return true;
 				}
 
 				@Override
 				public boolean visitMethodArg(int argPosition, int lvIndex, String srcArgName) {
-					var = null;
-
-					cur = arg = getMethodVar(argPosition, lvIndex, -1, -1, true);
-
-					if (arg == null) {
-						return false;
-					}
+					cur = cls.add(new ElementRecord(MappedElementKind.METHOD_ARG, method, argPosition, lvIndex, -1, -1));
 
 					return true;
 				}
 
 				@Override
 				public boolean visitMethodVar(int asmIndex, int lvIndex, int startOpIdx, String srcArgName) {
-					arg = null;
+					cur = cls.add(new ElementRecord(MappedElementKind.METHOD_VAR, method, -1, lvIndex, startOpIdx, asmIndex));
 
-					cur = var = getMethodVar(-1, lvIndex, startOpIdx, asmIndex, false);
+					return true;
+				}
 
-					if (var == null) {
-						return false;
-					}
+				@Override
+				public boolean visitField(String srcName, String srcDesc) {
+					cur = cls.add(new ElementRecord(MappedElementKind.FIELD, srcName, srcDesc));
+					method = null;
 
 					return true;
 				}
 
-				private MethodVarInstance getMethodVar(int varIndex, int lvIndex, int startOpIdx, int asmIndex, boolean isArg) {
-					if (isArg && varIndex < -1 || varIndex >= method.getArgs().length) {
-						System.out.println("invalid var index "+varIndex+" for method "+method);
-					} else if (lvIndex < -1 || lvIndex >= (isArg ? method.getArgs() : method.getVars()).length * 2 + 1) {
-						System.out.println("invalid lv index "+lvIndex+" for method "+method);
-					} else if (asmIndex < -1) {
-						System.out.println("invalid lv asm index "+asmIndex+" for method "+method);
-					} else {
-						if (!isArg || varIndex == -1) {
-							if (asmIndex >= 0) {
-								varIndex = findVarIndexByAsm(isArg ? method.getArgs() : method.getVars(), asmIndex);
+				@Override
+				public void visitDstName(MappedElementKind targetKind, int namespace, String name) {
+					if (namespace != dstNs) return;
 
-								if (varIndex == -1) {
-									System.out.println("invalid lv asm index "+asmIndex+" for method "+method);
-									return null;
-								}
-							} else if (lvIndex <= -1) {
-								System.out.println("missing arg+lvt index "+lvIndex+" for method "+method);
-								return null;
-							} else {
-								varIndex = findVarIndexByLv(isArg ? method.getArgs() : method.getVars(), lvIndex, startOpIdx);
+					cur.dstNames.add(name);
+				}
 
-								if (varIndex == -1) {
-									System.out.println("invalid lv index "+lvIndex+" for method "+method);
-									return null;
-								}
-							}
-						}
+				@Override
+				public void visitComment(MappedElementKind targetKind, String comment) {
+					cur.comments.add(comment);
+				}
 
-						MethodVarInstance var = isArg ? method.getArg(varIndex) : method.getVar(varIndex);
+				private int dstNs;
 
-						if (lvIndex != -1 && var.getLvIndex() != lvIndex) {
-							System.out.println("mismatched lv index "+lvIndex+" for method "+method);
-							return null;
-						}
+				private ClassRecord cls;
+				private ElementRecord method;
+				private ElementRecord cur;
+			});
 
-						if (asmIndex != -1 && var.getAsmIndex() != asmIndex) {
-							System.out.println("mismatched lv asm index "+asmIndex+" for method "+method);
-							return null;
-						}
+			// resolve the buffered classes and their members concurrently
+
+			List<ClassRecord> classes = new ArrayList<>(records.values());
+			Matcher.runInParallel(classes, record -> record.resolve(fieldSource, env, clsIndex), progressReceiver);
+			TaskControl.checkCancelled(progressReceiver); // last chance, the rest gets applied as a whole
+
+			for (Map.Entry<String, Integer> entry : uidMetadata.entrySet()) {
+				int val = entry.getValue();
+
+				switch (entry.getKey()) {
+				case Mappings.metaUidNextClass:
+					if (replace || env.getGlobal().nextClassUid < val) env.getGlobal().nextClassUid = val;
+					break;
+				case Mappings.metaUidNextMethod:
+					if (replace || env.getGlobal().nextMethodUid < val) env.getGlobal().nextMethodUid = val;
+					break;
+				case Mappings.metaUidNextField:
+					if (replace || env.getGlobal().nextFieldUid < val) env.getGlobal().nextFieldUid = val;
+					break;
+				}
+			}
 
-						return var;
-					}
+			// apply in file order, this keeps which of conflicting hierarchy member names wins and the warning order stable
 
-					return null;
+			for (ClassRecord record : classes) {
+				if (record.cls == null) {
+					System.out.println("can't find mapped class "+record.srcName);
+					continue;
 				}
 
-				@Override
-				public boolean visitField(String srcName, String srcDesc) {
-					method = null;
-					arg = null;
-					var = null;
+				apply(record, record.cls, fieldTarget, env, replace, dstNameCounts, commentCounts);
 
-					cur = field = cls.getField(srcName, srcDesc, fieldSource.type);
-
-					if (field == null || !field.isReal()) {
-						System.out.println("can't find mapped field "+cls.getName(fieldSource.type)+"/"+srcName);
-						return false;
-					}
+				for (ElementRecord element : record.elements) {
+					if (element.warning != null) System.out.println(element.warning);
+					if (element.matchable == null) continue;
 
-					return true;
+					apply(element, element.matchable, fieldTarget, env, replace, dstNameCounts, commentCounts);
 				}
+			}
+		} catch (CancellationException e) {
+			throw e; // nothing applied yet
+		} catch (Throwable t) {
+			clear(env);
+			throw t;
+		}
 
-				@Override
-				public void visitDstName(MappedElementKind targetKind, int namespace, String name) {
-					if (namespace != dstNs) return;
-
-					switch (targetKind) {
-					case CLASS:
-						switch (fieldTarget) {
-						case MAPPED:
-							if (!cls.hasMappedName() || replace) {
-								if (ClassInstance.hasOuterName(name)) {
-									name = ClassInstance.getInnerName(name);
-								}
+		System.out.printf("Loaded mappings for %d classes, %d methods (%d args, %d vars) and %d fields (comments: %d/%d/%d).%n",
+				dstNameCounts[MatchableKind.CLASS.ordinal()],
+				dstNameCounts[MatchableKind.METHOD.ordinal()],
+				dstNameCounts[MatchableKind.METHOD_ARG.ordinal()],
+				dstNameCounts[MatchableKind.METHOD_VAR.ordinal()],
+				dstNameCounts[MatchableKind.FIELD.ordinal()],
+				commentCounts[MatchableKind.CLASS.ordinal()],
+				commentCounts[MatchableKind.METHOD.ordinal()],
+				commentCounts[MatchableKind.FIELD.ordinal()]);
+	}
 
-								cls.setMappedName(name);
-							}
+	private static void apply(ElementRecord record, Matchable<?> cur, MappingField fieldTarget, LocalClassEnv env, boolean replace,
+			int[] dstNameCounts, int[] commentCounts) {
+		for (String name : record.dstNames) {
+			if (applyDstName(cur, name, fieldTarget, env, replace)) {
+				dstNameCounts[cur.getKind().ordinal()]++;
+			}
+		}
 
-							break;
-						case AUX:
-						case AUX2:
-							if (!cls.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) {
-								if (ClassInstance.hasOuterName(name)) {
-									name = ClassInstance.getInnerName(name);
-								}
+		for (String comment : record.comments) {
+			if (cur.getMappedComment() == null || replace) {
+				cur.setMappedComment(comment);
+				commentCounts[cur.getKind().ordinal()]++;
+			}
+		}
+	}
 
-								cls.setAuxName(fieldTarget.type.getAuxIndex(), name);
-							}
+	private static boolean applyDstName(Matchable<?> cur, String name, MappingField fieldTarget, LocalClassEnv env, boolean replace) {
+		switch (cur.getKind()) {
+		case CLASS: {
+			ClassInstance cls = (ClassInstance) cur;
 
-							break;
-						case UID:
-							String prefix = env.getGlobal().classUidPrefix;
+			switch (fieldTarget) {
+			case MAPPED:
+				if (!cls.hasMappedName() || replace) {
+					if (ClassInstance.hasOuterName(name)) {
+						name = ClassInstance.getInnerName(name);
+					}
 
-							if (!name.startsWith(prefix)) {
-								System.out.println("Invalid uid class name "+name);
-								return;
-							} else {
-								int innerNameStart = name.lastIndexOf('$') + 1;
-								String uidStr;
-
-								if (innerNameStart > 0) {
-									int subPrefixStart = prefix.lastIndexOf('/') + 1;
-
-									if (!name.startsWith(prefix.substring(subPrefixStart), innerNameStart)) {
-										System.out.println("Invalid uid class name "+name);
-										return;
-									} else {
-										uidStr = name.substring(innerNameStart + prefix.length() - subPrefixStart);
-									}
-								} else {
-									uidStr = name.substring(prefix.length());
-								}
+					cls.setMappedName(name);
+				}
 
-								int uid = Integer.parseInt(uidStr);
+				break;
+			case AUX:
+			case AUX2:
+				if (!cls.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) {
+					if (ClassInstance.hasOuterName(name)) {
+						name = ClassInstance.getInnerName(name);
+					}
 
-								if (uid < 0) {
-									System.out.println("Invalid class uid "+uid);
-									return;
-								} else if (cls.getUid() < 0 || cls.getUid() > uid || replace) {
-									cls.setUid(uid);
-								}
-							}
+					cls.setAuxName(fieldTarget.type.getAuxIndex(), name);
+				}
 
-							break;
-						default:
-							throw new IllegalArgumentException();
-						}
+				break;
+			case UID:
+				String prefix = env.getGlobal().classUidPrefix;
 
-						break;
-					case FIELD:
-						switch (fieldTarget) {
-						case MAPPED:
-							if (!field.hasMappedName() || replace) {
-								for (FieldInstance f : field.getAllHierarchyMembers()) {
-									f.setMappedName(name);
-								}
-							}
+				if (!name.startsWith(prefix)) {
+					System.out.println("Invalid uid class name "+name);
+					return false;
+				} else {
+					int innerNameStart = name.lastIndexOf('$') + 1;
+					String uidStr;
 
-							break;
-						case AUX:
-						case AUX2:
-							if (!field.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) {
-								for (FieldInstance f : field.getAllHierarchyMembers()) {
-									f.setAuxName(fieldTarget.type.getAuxIndex(), name);
-								}
-							}
+					if (innerNameStart > 0) {
+						int subPrefixStart = prefix.lastIndexOf('/') + 1;
 
-							break;
-						case UID:
-							String prefix = env.getGlobal().fieldUidPrefix;
+						if (!name.startsWith(prefix.substring(subPrefixStart), innerNameStart)) {
+							System.out.println("Invalid uid class name "+name);
+							return false;
+						} else {
+							uidStr = name.substring(innerNameStart + prefix.length() - subPrefixStart);
+						}
+					} else {
+						uidStr = name.substring(prefix.length());
+					}
 
-							if (!name.startsWith(prefix)) {
-								System.out.println("Invalid uid field name "+name);
-								return;
-							} else {
-								int uid = Integer.parseInt(name.substring(prefix.length()));
-
-								if (uid < 0) {
-									System.out.println("Invalid field uid "+uid);
-									return;
-								} else if (field.getUid() < 0 || field.getUid() > uid || replace) {
-									for (FieldInstance f : field.getAllHierarchyMembers()) {
-										f.setUid(uid);
-									}
-								}
-							}
+					int uid = Integer.parseInt(uidStr);
 
-							break;
-						default:
-							throw new IllegalArgumentException();
-						}
+					if (uid < 0) {
+						System.out.println("Invalid class uid "+uid);
+						return false;
+					} else if (cls.getUid() < 0 || cls.getUid() > uid || replace) {
+						cls.setUid(uid);
+					}
+				}
 
-						break;
-					case METHOD:
-						switch (fieldTarget) {
-						case MAPPED:
-							if (!method.hasMappedName() || replace) {
-								for (MethodInstance m : method.getAllHierarchyMembers()) {
-									m.setMappedName(name);
-								}
-							}
+				break;
+			default:
+				throw new IllegalArgumentException();
+			}
 
-							break;
-						case AUX:
-						case AUX2:
-							if (!method.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) {
-								for (MethodInstance m : method.getAllHierarchyMembers()) {
-									m.setAuxName(fieldTarget.type.getAuxIndex(), name);
-								}
-							}
+			break;
+		}
+		case FIELD: {
+			FieldInstance field = (FieldInstance) cur;
+
+			switch (fieldTarget) {
+			case MAPPED:
+				if (!field.hasMappedName() || replace) {
+					for (FieldInstance f : field.getAllHierarchyMembers()) {
+						f.setMappedName(name);
+					}
+				}
 
-							break;
-						case UID:
-							String prefix = env.getGlobal().methodUidPrefix;
+				break;
+			case AUX:
+			case AUX2:
+				if (!field.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) {
+					for (FieldInstance f : field.getAllHierarchyMembers()) {
+						f.setAuxName(fieldTarget.type.getAuxIndex(), name);
+					}
+				}
 
-							if (!name.startsWith(prefix)) {
-								System.out.println("Invalid uid method name "+name);
-								return;
-							} else {
-								int uid = Integer.parseInt(name.substring(prefix.length()));
-
-								if (uid < 0) {
-									System.out.println("Invalid method uid "+uid);
-									return;
-								} else if (method.getUid() < 0 || method.getUid() > uid || replace) {
-									for (MethodInstance m : method.getAllHierarchyMembers()) {
-										m.setUid(uid);
-									}
-								}
-							}
+				break;
+			case UID:
+				String prefix = env.getGlobal().fieldUidPrefix;
 
-							break;
-						default:
-							throw new IllegalArgumentException();
-						}
+				if (!name.startsWith(prefix)) {
+					System.out.println("Invalid uid field name "+name);
+					return false;
+				} else {
+					int uid = Integer.parseInt(name.substring(prefix.length()));
 
-						break;
-					case METHOD_ARG:
-						switch (fieldTarget) {
-						case MAPPED:
-							if (!arg.hasMappedName() || replace) arg.setMappedName(name);
-							break;
-						case AUX:
-						case AUX2:
-							if (!arg.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) arg.setAuxName(fieldTarget.type.getAuxIndex(), name);
-							break;
-						case UID:
-							// not applicable
-							break;
-						default:
-							throw new IllegalArgumentException();
+					if (uid < 0) {
+						System.out.println("Invalid field uid "+uid);
+						return false;
+					} else if (field.getUid() < 0 || field.getUid() > uid || replace) {
+						for (FieldInstance f : field.getAllHierarchyMembers()) {
+							f.setUid(uid);
 						}
+					}
+				}
 
-						break;
-					case METHOD_VAR:
-						switch (fieldTarget) {
-						case MAPPED:
-							if (!var.hasMappedName() || replace) var.setMappedName(name);
-							break;
-						case AUX:
-						case AUX2:
-							if (!var.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) var.setAuxName(fieldTarget.type.getAuxIndex(), name);
-							break;
-						case UID:
-							// not applicable
-							break;
-						default:
-							throw new IllegalArgumentException();
-						}
+				break;
+			default:
+				throw new IllegalArgumentException();
+			}
 
-						break;
+			break;
+		}
+		case METHOD: {
+			MethodInstance method = (MethodInstance) cur;
+
+			switch (fieldTarget) {
+			case MAPPED:
+				if (!method.hasMappedName() || replace) {
+					for (MethodInstance m : method.getAllHierarchyMembers()) {
+						m.setMappedName(name);
 					}
+				}
 
-					dstNameCounts[cur.getKind().ordinal()]++;
+				break;
+			case AUX:
+			case AUX2:
+				if (!method.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) {
+					for (MethodInstance m : method.getAllHierarchyMembers()) {
+						m.setAuxName(fieldTarget.type.getAuxIndex(), name);
+					}
 				}
 
-				@Override
-				public void visitComment(MappedElementKind targetKind, String comment) {
-					if (cur.getMappedComment() == null || replace) {
-						cur.setMappedComment(comment);
-						commentCounts[cur.getKind().ordinal()]++;
+				break;
+			case UID:
+				String prefix = env.getGlobal().methodUidPrefix;
+
+				if (!name.startsWith(prefix)) {
+					System.out.println("Invalid uid method name "+name);
+					return false;
+				} else {
+					int uid = Integer.parseInt(name.substring(prefix.length()));
+
+					if (uid < 0) {
+						System.out.println("Invalid method uid "+uid);
+						return false;
+					} else if (method.getUid() < 0 || method.getUid() > uid || replace) {
+						for (MethodInstance m : method.getAllHierarchyMembers()) {
+							m.setUid(uid);
+						}
 					}
 				}
 
-				private int dstNs;
+				break;
+			default:
+				throw new IllegalArgumentException();
+			}
 
-				private ClassInstance cls;
-				private FieldInstance field;
-				private MethodInstance method;
-				private MethodVarInstance arg;
-				private MethodVarInstance var;
+			break;
+		}
+		case METHOD_ARG:
+		case METHOD_VAR: {
+			MethodVarInstance var = (MethodVarInstance) cur;
+
+			switch (fieldTarget) {
+			case MAPPED:
+				if (!var.hasMappedName() || replace) var.setMappedName(name);
+				break;
+			case AUX:
+			case AUX2:
+				if (!var.hasAuxName(fieldTarget.type.getAuxIndex()) || replace) var.setAuxName(fieldTarget.type.getAuxIndex(), name);
+				break;
+			case UID:
+				// not applicable
+				break;
+			default:
+				throw new IllegalArgumentException();
+			}
 
-				private Matchable<?> cur;
-			});
-		} catch (Throwable t) {
-			clear(env);
-			throw t;
+			break;
+		}
 		}
 
-		System.out.printf("Loaded mappings for %d classes, %d methods (%d args, %d vars) and %d fields (comments: %d/%d/%d).%n",
-				dstNameCounts[MatchableKind.CLASS.ordinal()],
-				dstNameCounts[MatchableKind.METHOD.ordinal()],
-				dstNameCounts[MatchableKind.METHOD_ARG.ordinal()],
-				dstNameCounts[MatchableKind.METHOD_VAR.ordinal()],
-				dstNameCounts[MatchableKind.FIELD.ordinal()],
-				commentCounts[MatchableKind.CLASS.ordinal()],
-				commentCounts[MatchableKind.METHOD.ordinal()],
-				commentCounts[MatchableKind.FIELD.ordinal()]);
+		return true;
+	}
+
+	private static Map<String, ClassInstance> indexClasses(LocalClassEnv env, NameType type) {
+		Map<String, ClassInstance> ret = new HashMap<>(env.getClasses().size());
+
+		for (ClassInstance cls : env.getClasses()) {
+			String name = cls.getName(type);
+			if (name != null) ret.putIfAbsent(name, cls); // first wins like ClassEnv.getClsById(String, NameType)
+		}
+
+		return ret;
 	}
 
-	private static ClassInstance findClass(String name, MappingField type, LocalClassEnv env) {
+	private static ClassInstance findClass(String name, MappingField type, LocalClassEnv env, Map<String, ClassInstance> index) {
 		switch (type) {
 		case PLAIN:
 			return env.getLocalClsByName(name);
@@ -412,7 +424,8 @@ public class Mappings {
 		case AUX:
 		case AUX2:
 		case UID:
-			ClassInstance ret = env.getClsByName(name, type.type);
+			ClassInstance ret = index.get(name);
+			if (ret == null) ret = env.getClsByName(name); // same fallback as getClsById(String, NameType)
 
 			return ret != null && !ret.isShared() ? ret : null;
 		default:
@@ -420,6 +433,59 @@ public class Mappings {
 		}
 	}
 
+	private static MethodVarInstance getMethodVar(MethodInstance method, ElementRecord record) {
+		boolean isArg = record.kind == MappedElementKind.METHOD_ARG;
+		int varIndex = record.argPosition;
+		int lvIndex = record.lvIndex;
+		int startOpIdx = record.startOpIdx;
+		int asmIndex = record.asmIndex;
+
+		if (isArg && varIndex < -1 || varIndex >= method.getArgs().length) {
+			record.warning = "invalid var index "+varIndex+" for method "+method;
+		} else if (lvIndex < -1 || lvIndex >= (isArg ? method.getArgs() : method.getVars()).length * 2 + 1) {
+			record.warning = "invalid lv index "+lvIndex+" for method "+method;
+		} else if (asmIndex < -1) {
+			record.warning = "invalid lv asm index "+asmIndex+" for method "+method;
+		} else {
+			if (!isArg || varIndex == -1) {
+				if (asmIndex >= 0) {
+					varIndex = findVarIndexByAsm(isArg ? method.getArgs() : method.getVars(), asmIndex);
+
+					if (varIndex == -1) {
+						record.warning = "invalid lv asm index "+asmIndex+" for method "+method;
+						return null;
+					}
+				} else if (lvIndex <= -1) {
+					record.warning = "missing arg+lvt index "+lvIndex+" for method "+method;
+					return null;
+				} else {
+					varIndex = findVarIndexByLv(isArg ? method.getArgs() : method.getVars(), lvIndex, startOpIdx);
+
+					if (varIndex == -1) {
+						record.warning = "invalid lv index "+lvIndex+" for method "+method;
+						return null;
+					}
+				}
+			}
+
+			MethodVarInstance var = isArg ? method.getArg(varIndex) : method.getVar(varIndex);
+
+			if (lvIndex != -1 && var.getLvIndex() != lvIndex) {
+				record.warning = "mismatched lv index "+lvIndex+" for method "+method;
+				return null;
+			}
+
+			if (asmIndex != -1 && var.getAsmIndex() != asmIndex) {
+				record.warning = "mismatched lv asm index "+asmIndex+" for method "+method;
+				return null;
+			}
+
+			return var;
+		}
+
+		return null;
+	}
+
 	private static int findVarIndexByLv(MethodVarInstance[] vars, int lvIndex, int startOpcodeIdx) {
 		MethodVarInstance ret = null;
 
@@ -445,6 +511,19 @@ public class Mappings {
 	public static boolean save(Path file, MappingFormat format, LocalClassEnv env,
 			List<NameType> nsTypes, List<String> nsNames,
 			MappingsExportVerbosity verbosity, boolean fieldsFirst) throws IOException {
+		return save(file, format, env, nsTypes, nsNames, verbosity, fieldsFirst, progress -> { });
+	}
+
+	/**
+	 * Save the mappings of env.
+	 *
+	 * <p>Cancelling through a {@link TaskControl} progressReceiver stops between class windows and leaves an incomplete
+	 * file behind, callers wanting to keep an existing file have to save to a temporary location first.
+	 */
+	public static boolean save(Path file, MappingFormat format, LocalClassEnv env,
+			List<NameType> nsTypes, List<String> nsNames,
+			MappingsExportVerbosity verbosity, boolean fieldsFirst,
+			DoubleConsumer progressReceiver) throws IOException {
 		if (nsTypes.size() < 2 || nsTypes.size() > 2 && !format.hasNamespaces) throw new IllegalArgumentException("invalid namespace count");
 		if (nsNames != null && nsNames.size() != nsTypes.size()) throw new IllegalArgumentException("namespace types and names don't have the same number of entries");
 
@@ -471,65 +550,32 @@ public class Mappings {
 
 		classes.sort(ClassInstance.nameComparator);
 
-		String[] dstClassNames = new String[nsTypes.size() - 1];
-		String[] dstMemberNames = new String[dstClassNames.length];
-		String[] dstMemberDescs = new String[dstClassNames.length];
-		String[] dstVarNames = new String[dstClassNames.length];
-
-		List<MethodInstance> methods = new ArrayList<>();
-		List<FieldInstance> fields = new ArrayList<>();
-		List<MethodVarInstance> vars = new ArrayList<>();
-		Set<Set<MethodInstance>> exportedHierarchies = verbosity == MappingsExportVerbosity.MINIMAL ? Util.newIdentityHashSet() : null;
+		// names of multi-class hierarchies are exported only once for MINIMAL, determine where upfront to allow exporting classes in any order
+		Map<Set<MethodInstance>, MethodInstance> hierarchyNameOwners = verbosity == MappingsExportVerbosity.MINIMAL ? findHierarchyNameOwners(classes, nsTypes) : null;
 
 		try (MappingWriter writer = new MappingWriter(file, format)) {
 			writer.visitNamespaces(nsNames.get(0), nsNames.subList(1, nsNames.size()));
 
-			for (ClassInstance cls : classes) {
-				String srcClsName = cls.getName(nsTypes.get(0));
-				if (srcClsName == null) continue;
-				boolean hasAnyDstName = false;
+			// produce the class blocks concurrently, but only a window of them at a time to bound the buffered amount
 
-				for (int i = 1; i < nsTypes.size(); i++) {
-					NameType dstType = nsTypes.get(i);
-					String dstName = cls.getName(dstType);
-
-					if (dstName != null && (dstName.equals(srcClsName) || dstType != dstType.withMapped(false) && cls.hasNoFullyMappedName())) {
-						// don't save no-op or partial mappings (partial = only outer class is mapped)
-						dstName = null;
-					}
+			for (int start = 0; start < classes.size(); start += exportWindowSize) {
+				TaskControl.checkCancelled(progressReceiver);
 
-					hasAnyDstName |= dstName != null;
-					dstClassNames[i - 1] = dstName;
-				}
+				List<ClassInstance> window = classes.subList(start, Math.min(start + exportWindowSize, classes.size()));
+				Map<ClassInstance, FlatMappingBuffer> buffers = new IdentityHashMap<>(window.size());
 
-				if (!hasAnyDstName
-						&& (!format.supportsComments || cls.getMappedComment() == null)
-						&& !shouldExportAny(cls.getMethods(), format, nsTypes, verbosity, exportedHierarchies)
-						&& !shouldExportAny(cls.getFields(), format, nsTypes)) {
-					continue; // no data for the class, skip
+				for (ClassInstance cls : window) {
+					buffers.put(cls, new FlatMappingBuffer());
 				}
 
-				writer.visitClass(srcClsName, dstClassNames);
-
-				// comment
-
-				if (cls.getMappedComment() != null) writer.visitClassComment(srcClsName, dstClassNames, cls.getMappedComment());
+				Matcher.runInParallel(window, cls -> exportClass(cls, format, nsTypes, verbosity, fieldsFirst, hierarchyNameOwners, buffers.get(cls)), progress -> { });
 
-				if (fieldsFirst) {
-					exportFields(cls, srcClsName, dstClassNames, format, nsTypes,
-							dstMemberNames, dstMemberDescs, fields, writer);
+				for (ClassInstance cls : window) {
+					buffers.get(cls).replay(writer);
 				}
 
-				exportMethods(cls, srcClsName, dstClassNames,
-						format, nsTypes, verbosity,
-						dstMemberNames, dstMemberDescs, dstVarNames,
-						methods, vars, exportedHierarchies,
-						writer);
-
-				if (!fieldsFirst) {
-					exportFields(cls, srcClsName, dstClassNames, format, nsTypes,
-							dstMemberNames, dstMemberDescs, fields, writer);
-				}
+				writer.flush();
+				progressReceiver.accept((double) (start + window.size()) / classes.size());
 			}
 
 			writer.visitEnd();
@@ -540,13 +586,94 @@ public class Mappings {
 		return true;
 	}
 
+	private static void exportClass(ClassInstance cls, MappingFormat format, List<NameType> nsTypes, MappingsExportVerbosity verbosity, boolean fieldsFirst,
+			Map<Set<MethodInstance>, MethodInstance> hierarchyNameOwners,
+			FlatMappingVisitor writer) {
+		String srcClsName = cls.getName(nsTypes.get(0));
+		if (srcClsName == null) return;
+
+		String[] dstClassNames = new String[nsTypes.size() - 1];
+		boolean hasAnyDstName = false;
+
+		for (int i = 1; i < nsTypes.size(); i++) {
+			NameType dstType = nsTypes.get(i);
+			String dstName = cls.getName(dstType);
+
+			if (dstName != null && (dstName.equals(srcClsName) || dstType != dstType.withMapped(false) && cls.hasNoFullyMappedName())) {
+				// don't save no-op or partial mappings (partial = only outer class is mapped)
+				dstName = null;
+			}
+
+			hasAnyDstName |= dstName != null;
+			dstClassNames[i - 1] = dstName;
+		}
+
+		if (!hasAnyDstName
+				&& (!format.supportsComments || cls.getMappedComment() == null)
+				&& !shouldExportAny(cls.getMethods(), format, nsTypes, verbosity, hierarchyNameOwners)
+				&& !shouldExportAny(cls.getFields(), format, nsTypes)) {
+			return; // no data for the class, skip
+		}
+
+		String[] dstMemberNames = new String[dstClassNames.length];
+		String[] dstMemberDescs = new String[dstClassNames.length];
+		String[] dstVarNames = new String[dstClassNames.length];
+
+		writer.visitClass(srcClsName, dstClassNames);
+
+		// comment
+
+		if (cls.getMappedComment() != null) writer.visitClassComment(srcClsName, dstClassNames, cls.getMappedComment());
+
+		if (fieldsFirst) {
+			exportFields(cls, srcClsName, dstClassNames, format, nsTypes,
+					dstMemberNames, dstMemberDescs, new ArrayList<>(), writer);
+		}
+
+		exportMethods(cls, srcClsName, dstClassNames,
+				format, nsTypes, verbosity,
+				dstMemberNames, dstMemberDescs, dstVarNames,
+				new ArrayList<>(), new ArrayList<>(), hierarchyNameOwners,
+				writer);
+
+		if (!fieldsFirst) {
+			exportFields(cls, srcClsName, dstClassNames, format, nsTypes,
+					dstMemberNames, dstMemberDescs, new ArrayList<>(), writer);
+		}
+	}
+
+	/**
+	 * Determine the method exporting the name of each multi-class hierarchy for MappingsExportVerbosity.MINIMAL.
+	 *
+	 * <p>This is the first root method with any names in export order.
+	 */
+	private static Map<Set<MethodInstance>, MethodInstance> findHierarchyNameOwners(List<ClassInstance> classes, List<NameType> nsTypes) {
+		Map<Set<MethodInstance>, MethodInstance> ret = new IdentityHashMap<>();
+
+		for (ClassInstance cls : classes) {
+			if (cls.getName(nsTypes.get(0)) == null) continue;
+
+			for (MethodInstance m : cls.getMethods()) { // a hierarchy has at most one member per class, so the order within the class is irrelevant
+				if (m.getAllHierarchyMembers().size() == 1 || !m.getParents().isEmpty()) continue;
+
+				String srcName = m.getName(nsTypes.get(0));
+
+				if (srcName != null && hasAnyNames(m, srcName, nsTypes)) {
+					ret.putIfAbsent(m.getAllHierarchyMembers(), m);
+				}
+			}
+		}
+
+		return ret;
+	}
+
 	private static void exportMethods(ClassInstance cls, String srcClsName, String[] dstClassNames,
 			MappingFormat format, List<NameType> nsTypes, MappingsExportVerbosity verbosity,
 			String[] dstMemberNames, String[] dstMemberDescs, String[] dstVarNames,
-			List<MethodInstance> methods, List<MethodVarInstance> vars, Set<Set<MethodInstance>> exportedHierarchies,
-			MappingWriter writer) {
+			List<MethodInstance> methods, List<MethodVarInstance> vars, Map<Set<MethodInstance>, MethodInstance> hierarchyNameOwners,
+			FlatMappingVisitor writer) {
 		for (MethodInstance m : cls.getMethods()) {
-			if (shouldExport(m, format, nsTypes, verbosity, exportedHierarchies)) methods.add(m);
+			if (shouldExport(m, format, nsTypes, verbosity, hierarchyNameOwners)) methods.add(m);
 		}
 
 		methods.sort(MemberInstance.nameComparator);
@@ -573,8 +700,7 @@ public class Mappings {
 
 			String[] dstMethodNames;
 
-			if (hasAnyDstName && shouldExportName(m, verbosity, exportedHierarchies)) {
-				if (verbosity == MappingsExportVerbosity.MINIMAL) exportedHierarchies.add(m.getAllHierarchyMembers());
+			if (hasAnyDstName && shouldExportName(m, verbosity, hierarchyNameOwners)) {
 				dstMethodNames = dstMemberNames;
 			} else {
 				dstMethodNames = null;
@@ -668,7 +794,7 @@ public class Mappings {
 			MappingFormat format, List<NameType> nsTypes,
 			String[] dstMemberNames, String[] dstMemberDescs,
 			List<FieldInstance> fields,
-			MappingWriter writer) {
+			FlatMappingVisitor writer) {
 		for (FieldInstance f : cls.getFields()) {
 			if (shouldExport(f, format, nsTypes)) fields.add(f);
 		}
@@ -731,14 +857,14 @@ public class Mappings {
 		}
 	}
 
-	private static boolean shouldExport(MethodInstance method, MappingFormat format, List<NameType> nsTypes, MappingsExportVerbosity verbosity, Set<Set<MethodInstance>> exportedHierarchies) {
+	private static boolean shouldExport(MethodInstance method, MappingFormat format, List<NameType> nsTypes, MappingsExportVerbosity verbosity, Map<Set<MethodInstance>, MethodInstance> hierarchyNameOwners) {
 		String srcName = method.getName(nsTypes.get(0));
 		if (srcName == null) return false;
 
 		return format.supportsComments && method.getMappedComment() != null
 				|| format.supportsArgs && shouldExportAny(method.getArgs(), format, nsTypes)
 				|| format.supportsLocals && shouldExportAny(method.getVars(), format, nsTypes)
-				|| hasAnyNames(method, srcName, nsTypes) && shouldExportName(method, verbosity, exportedHierarchies);
+				|| hasAnyNames(method, srcName, nsTypes) && shouldExportName(method, verbosity, hierarchyNameOwners);
 	}
 
 	private static boolean shouldExport(MethodVarInstance var, MappingFormat format, List<NameType> nsTypes) {
@@ -764,9 +890,9 @@ public class Mappings {
 		return false;
 	}
 
-	private static boolean shouldExportAny(MethodInstance[] methods, MappingFormat format, List<NameType> nsTypes, MappingsExportVerbosity verbosity, Set<Set<MethodInstance>> exportedHierarchies) {
+	private static boolean shouldExportAny(MethodInstance[] methods, MappingFormat format, List<NameType> nsTypes, MappingsExportVerbosity verbosity, Map<Set<MethodInstance>, MethodInstance> hierarchyNameOwners) {
 		for (MethodInstance m : methods) {
-			if (shouldExport(m, format, nsTypes, verbosity, exportedHierarchies)) return true;
+			if (shouldExport(m, format, nsTypes, verbosity, hierarchyNameOwners)) return true;
 		}
 
 		return false;
@@ -788,10 +914,10 @@ public class Mappings {
 		return false;
 	}
 
-	private static boolean shouldExportName(MethodInstance method, MappingsExportVerbosity verbosity, Set<Set<MethodInstance>> exportedHierarchies) {
+	private static boolean shouldExportName(MethodInstance method, MappingsExportVerbosity verbosity, Map<Set<MethodInstance>, MethodInstance> hierarchyNameOwners) {
 		return verbosity == MappingsExportVerbosity.FULL
 				|| method.getAllHierarchyMembers().size() == 1
-				|| method.getParents().isEmpty() && (verbosity == MappingsExportVerbosity.ROOTS || !exportedHierarchies.contains(method.getAllHierarchyMembers()));
+				|| method.getParents().isEmpty() && (verbosity == MappingsExportVerbosity.ROOTS || hierarchyNameOwners.get(method.getAllHierarchyMembers()) == method);
 	}
 
 	private static String getDesc(MethodInstance member, NameType type) {
@@ -821,6 +947,23 @@ public class Mappings {
 	}
 
 	public static void clear(ClassEnv env) {
+		MatchesJournal journal = env.getGlobal().getJournal();
+		if (journal != null) journal.beginBulkChange();
+
+		try {
+			clearUnjournaled(env);
+		} finally {
+			if (journal != null) {
+				try {
+					journal.endBulkChange();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+
+	private static void clearUnjournaled(ClassEnv env) {
 		for (ClassInstance cls : env.getClasses()) {
 			cls.setMappedName(null);
 			cls.setMappedComment(null);
@@ -847,6 +990,153 @@ public class Mappings {
 		}
 	}
 
+	private static class ElementRecord {
+		ElementRecord(MappedElementKind kind, String srcName, String srcDesc) {
+			this.kind = kind;
+			this.srcName = srcName;
+			this.srcDesc = srcDesc;
+			this.method = null;
+			this.argPosition = -1;
+			this.lvIndex = -1;
+			this.startOpIdx = -1;
+			this.asmIndex = -1;
+		}
+
+		ElementRecord(MappedElementKind kind, ElementRecord method, int argPosition, int lvIndex, int startOpIdx, int asmIndex) {
+			this.kind = kind;
+			this.srcName = null;
+			this.srcDesc = null;
+			this.method = method;
+			this.argPosition = argPosition;
+			this.lvIndex = lvIndex;
+			this.startOpIdx = startOpIdx;
+			this.asmIndex = asmIndex;
+		}
+
+		final MappedElementKind kind;
+		final String srcName;
+		final String srcDesc;
+		final ElementRecord method; // owning method for args and vars
+		final int argPosition;
+		final int lvIndex;
+		final int startOpIdx;
+		final int asmIndex;
+		final List<String> dstNames = new ArrayList<>(1);
+		final List<String> comments = new ArrayList<>(0);
+
+		Matchable<?> matchable;
+		String warning;
+	}
+
+	private static final class ClassRecord extends ElementRecord {
+		ClassRecord(String srcName) {
+			super(MappedElementKind.CLASS, srcName, null);
+		}
+
+		ElementRecord add(ElementRecord element) {
+			elements.add(element);
+
+			return element;
+		}
+
+		void resolve(MappingField fieldSource, LocalClassEnv env, Map<String, ClassInstance> clsIndex) {
+			cls = findClass(srcName, fieldSource, env, clsIndex);
+			if (cls == null) return;
+
+			NameType type = fieldSource.type;
+
+			for (ElementRecord element : elements) {
+				switch (element.kind) {
+				case METHOD: {
+					MethodInstance method = type == NameType.PLAIN ? cls.getMethod(element.srcName, element.srcDesc) : findMember(getMethodIndex(type), element, type);
+
+					if (method == null || !method.isReal()) {
+						element.warning = String.format("can't find mapped method %s/%s%s",
+								cls.getName(type), element.srcName, element.srcDesc);
+					} else {
+						element.matchable = method;
+					}
+
+					break;
+				}
+				case FIELD: {
+					FieldInstance field = type == NameType.PLAIN ? cls.getField(element.srcName, element.srcDesc) : findMember(getFieldIndex(type), element, type);
+
+					if (field == null || !field.isReal()) {
+						element.warning = "can't find mapped field "+cls.getName(type)+"/"+element.srcName;
+					} else {
+						element.matchable = field;
+					}
+
+					break;
+				}
+				case METHOD_ARG:
+				case METHOD_VAR:
+					if (element.method != null && element.method.matchable != null) { // skipped with the method otherwise
+						element.matchable = getMethodVar((MethodInstance) element.method.matchable, element);
+					}
+
+					break;
+				default:
+					throw new IllegalStateException();
+				}
+			}
+		}
+
+		private Map<String, List<MethodInstance>> getMethodIndex(NameType type) {
+			if (methodIndex == null) methodIndex = indexMembers(cls.getMethods(), type);
+
+			return methodIndex;
+		}
+
+		private Map<String, List<FieldInstance>> getFieldIndex(NameType type) {
+			if (fieldIndex == null) fieldIndex = indexMembers(cls.getFields(), type);
+
+			return fieldIndex;
+		}
+
+		private static <T extends MemberInstance<T>> Map<String, List<T>> indexMembers(T[] members, NameType type) {
+			Map<String, List<T>> ret = new HashMap<>(members.length);
+
+			for (T member : members) {
+				String name = member.getName(type);
+				if (name != null) ret.computeIfAbsent(name, ignore -> new ArrayList<>(1)).add(member);
+			}
+
+			return ret;
+		}
+
+		/**
+		 * Same as ClassInstance.getMethod/getField(name, desc, type), but using the per class name index.
+		 */
+		private static <T extends MemberInstance<T>> T findMember(Map<String, List<T>> index, ElementRecord element, NameType type) {
+			List<T> candidates = index.get(element.srcName);
+			if (candidates == null) return null;
+
+			T ret = null;
+
+			for (T member : candidates) {
+				if (element.srcDesc != null
+						&& !(member instanceof MethodInstance ? ClassInstance.hasDesc((MethodInstance) member, element.srcDesc, type) : ClassInstance.hasDesc((FieldInstance) member, element.srcDesc, type))) {
+					continue;
+				}
+
+				if (ret != null) return null; // non-unique
+
+				ret = member;
+			}
+
+			return ret;
+		}
+
+		final List<ElementRecord> elements = new ArrayList<>();
+		ClassInstance cls;
+		private Map<String, List<MethodInstance>> methodIndex;
+		private Map<String, List<FieldInstance>> fieldIndex;
+	}
+
+	private static final int exportWindowSize = 512;
+
 	public static final String metaUidNextClass = "uid-next-class";
 	public static final String metaUidNextMethod = "uid-next-method";
 	public static final String metaUidNextField = "uid-next-field";
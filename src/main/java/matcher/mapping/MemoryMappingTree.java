@@ -8,12 +8,25 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 	}
 
 	public MemoryMappingTree(boolean indexByDstNames) {
+		this(indexByDstNames, false);
+	}
+
+	/**
+	 * @param compact whether to trade some speed for memory: names are interned, members are kept in sorted arrays
+	 * instead of hash maps and the dst name indexes are only built for the namespaces actually queried. Members are
+	 * iterated in name order in this mode.
+	 */
+	public MemoryMappingTree(boolean indexByDstNames, boolean compact) {
 		this.indexByDstNames = indexByDstNames;
+		this.compact = compact;
 	}
 
 	public MemoryMappingTree(MappingTree src) {
 		if (src instanceof MemoryMappingTree) {
 			indexByDstNames = ((MemoryMappingTree) src).indexByDstNames;
+			compact = ((MemoryMappingTree) src).compact;
+		} else {
+			compact = false;
 		}
 
 		setSrcNamespace(src.getSrcNamespace());
@@ -31,18 +44,23 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 	public void setIndexByDstNames(boolean indexByDstNames) {
 		if (indexByDstNames == this.indexByDstNames) return;
 
-		if (indexByDstNames) {
+		this.indexByDstNames = indexByDstNames;
+
+		if (!indexByDstNames) {
 			classesByDstNames = null;
 		} else if (dstNamespaces != null) {
 			initClassesByDstNames();
 		}
+	}
 
-		this.indexByDstNames = indexByDstNames;
+	public boolean isCompact() {
+		return compact;
 	}
 
 	@SuppressWarnings("unchecked")
 	private void initClassesByDstNames() {
 		classesByDstNames = new Map[dstNamespaces.size()];
+		if (compact) return; // built on demand by getClassesByDstName
 
 		for (int i = 0; i < classesByDstNames.length; i++) {
 			classesByDstNames[i] = new HashMap<String, ClassEntry>(classesBySrcName.size());
@@ -56,6 +74,30 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		}
 	}
 
+	/**
+	 * Get the dst name index for namespace, building it on first use. Synchronized since concurrent readers may build
+	 * it at the same time.
+	 */
+	private synchronized Map<String, ClassEntry> getClassesByDstName(int namespace) {
+		Map<String, ClassEntry> ret = classesByDstNames[namespace];
+		if (ret != null) return ret;
+
+		ret = new HashMap<>(classesBySrcName.size());
+
+		for (ClassEntry cls : classesBySrcName.values()) {
+			String dstName = cls.dstNames[namespace];
+			if (dstName != null) ret.put(dstName, cls);
+		}
+
+		classesByDstNames[namespace] = ret;
+
+		return ret;
+	}
+
+	String intern(String str) {
+		return compact && str != null ? str.intern() : str;
+	}
+
 	@Override
 	public String getSrcNamespace() {
 		return srcNamespace;
@@ -135,7 +177,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		if (namespace < 0 || !indexByDstNames) {
 			return (ClassEntry) MappingTree.super.getClass(name, namespace);
 		} else {
-			return classesByDstNames[namespace].get(name);
+			return getClassesByDstName(namespace).get(name);
 		}
 	}
 
@@ -150,7 +192,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 				for (int i = 0; i < ret.dstNames.length; i++) {
 					String dstName = ret.dstNames[i];
 
-					if (dstName != null && !dstName.equals(entry.dstNames[i])) {
+					if (dstName != null && !dstName.equals(entry.dstNames[i]) && classesByDstNames[i] != null) {
 						classesByDstNames[i].remove(dstName);
 					}
 				}
@@ -158,7 +200,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 
 			for (int i = 0; i < entry.dstNames.length; i++) {
 				String dstName = entry.dstNames[i];
-				if (dstName != null) classesByDstNames[i].put(dstName, entry);
+				if (dstName != null && classesByDstNames[i] != null) classesByDstNames[i].put(dstName, entry);
 			}
 		}
 
@@ -172,7 +214,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		if (ret != null && indexByDstNames) {
 			for (int i = 0; i < ret.dstNames.length; i++) {
 				String dstName = ret.dstNames[i];
-				if (dstName != null) classesByDstNames[i].remove(dstName);
+				if (dstName != null && classesByDstNames[i] != null) classesByDstNames[i].remove(dstName);
 			}
 		}
 
@@ -264,8 +306,10 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 				if (indexByDstNames) {
 					classesByDstNames = Arrays.copyOf(classesByDstNames, newSize);
 
-					for (int i = newSize - newDstNamespaces; i < classesByDstNames.length; i++) {
-						classesByDstNames[i] = new HashMap<String, ClassEntry>(classesBySrcName.size());
+					if (!compact) {
+						for (int i = newSize - newDstNamespaces; i < classesByDstNames.length; i++) {
+							classesByDstNames[i] = new HashMap<String, ClassEntry>(classesBySrcName.size());
+						}
 					}
 				}
 			}
@@ -399,13 +443,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		namespace = dstNameMap[namespace];
 
 		if (currentEntry == null) throw new UnsupportedOperationException("Tried to visit mapped name before owner");
-		currentEntry.setDstName(namespace, name);
-
-		if (indexByDstNames) {
-			if (targetKind == MappedElementKind.CLASS) {
-				classesByDstNames[namespace].put(name, currentClass);
-			}
-		}
+		currentEntry.setDstName(namespace, name); // ClassEntry.setDstName maintains classesByDstNames
 	}
 
 	@Override
@@ -429,15 +467,16 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 
 	static abstract class Entry implements ElementMapping {
 		protected Entry(MemoryMappingTree tree, String srcName) {
-			this.srcName = srcName;
+			this.srcName = tree.intern(srcName);
 			this.dstNames = new String[tree.dstNamespaces.size()];
 		}
 
 		protected Entry(MemoryMappingTree tree, ElementMapping src) {
 			this(tree, src.getSrcName());
 
+			// assigned directly since subclass state isn't initialized yet, the class index is updated by addClass
 			for (int i = 0; i < dstNames.length; i++) {
-				setDstName(i, src.getDstName(i));
+				dstNames[i] = tree.intern(src.getDstName(i));
 			}
 
 			setComment(src.getComment());
@@ -457,7 +496,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 
 		@Override
 		public void setDstName(int namespace, String name) {
-			dstNames[namespace] = name;
+			dstNames[namespace] = ((MemoryMappingTree) getTree()).intern(name);
 		}
 
 		void resizeDstNames(int newSize) {
@@ -541,15 +580,11 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 			if (tree.indexByDstNames) {
 				String oldName = dstNames[namespace];
 
-				if (!Objects.equals(name, oldName)) {
-					Map<String, ClassEntry> map = tree.classesByDstNames[namespace];
-					if (oldName != null) map.remove(oldName);
+				Map<String, ClassEntry> map = tree.classesByDstNames[namespace];
 
-					if (name != null) {
-						map.put(name, this);
-					} else {
-						map.remove(oldName);
-					}
+				if (map != null && !Objects.equals(name, oldName)) {
+					if (oldName != null) map.remove(oldName);
+					if (name != null) map.put(name, this);
 				}
 			}
 
@@ -558,6 +593,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 
 		@Override
 		public Collection<FieldEntry> getFields() {
+			if (tree.compact) return fieldArray != null ? fieldArray : Collections.emptyList();
 			if (fields == null) return Collections.emptyList();
 
 			return fields.values();
@@ -565,6 +601,8 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 
 		@Override
 		public FieldEntry getField(String srcName, String srcDesc) {
+			if (tree.compact) return getMember(srcName, srcDesc, fieldArray, flags);
+
 			return getMember(srcName, srcDesc, fields, flags);
 		}
 
@@ -577,6 +615,12 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		public FieldEntry addField(FieldMapping field) {
 			FieldEntry entry = field instanceof FieldEntry && field.getOwner() == this ? (FieldEntry) field : new FieldEntry(this, field);
 
+			if (tree.compact) {
+				if (fieldArray == null) fieldArray = new MemberArray<>();
+
+				return addMember(entry, fieldArray, FLAG_HAS_ANY_FIELD_DESC, FLAG_MISSES_ANY_FIELD_DESC);
+			}
+
 			if (fields == null) fields = new LinkedHashMap<>();
 
 			return addMember(entry, fields, FLAG_HAS_ANY_FIELD_DESC, FLAG_MISSES_ANY_FIELD_DESC);
@@ -585,13 +629,21 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		@Override
 		public FieldEntry removeField(String srcName, String srcDesc) {
 			FieldEntry ret = getField(srcName, srcDesc);
-			if (ret != null) fields.remove(ret.key);
+
+			if (ret != null) {
+				if (tree.compact) {
+					fieldArray.remove(ret);
+				} else {
+					fields.remove(ret.key);
+				}
+			}
 
 			return ret;
 		}
 
 		@Override
 		public Collection<MethodEntry> getMethods() {
+			if (tree.compact) return methodArray != null ? methodArray : Collections.emptyList();
 			if (methods == null) return Collections.emptyList();
 
 			return methods.values();
@@ -599,6 +651,8 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 
 		@Override
 		public MethodEntry getMethod(String srcName, String srcDesc) {
+			if (tree.compact) return getMember(srcName, srcDesc, methodArray, flags >>> 2);
+
 			return getMember(srcName, srcDesc, methods, flags >>> 2);
 		}
 
@@ -611,6 +665,12 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		public MethodEntry addMethod(MethodMapping method) {
 			MethodEntry entry = method instanceof MethodEntry && method.getOwner() == this ? (MethodEntry) method : new MethodEntry(this, method);
 
+			if (tree.compact) {
+				if (methodArray == null) methodArray = new MemberArray<>();
+
+				return addMember(entry, methodArray, FLAG_HAS_ANY_METHOD_DESC, FLAG_MISSES_ANY_METHOD_DESC);
+			}
+
 			if (methods == null) methods = new LinkedHashMap<>();
 
 			return addMember(entry, methods, FLAG_HAS_ANY_METHOD_DESC, FLAG_MISSES_ANY_METHOD_DESC);
@@ -619,7 +679,14 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		@Override
 		public MethodEntry removeMethod(String srcName, String srcDesc) {
 			MethodEntry ret = getMethod(srcName, srcDesc);
-			if (ret != null) methods.remove(ret.key);
+
+			if (ret != null) {
+				if (tree.compact) {
+					methodArray.remove(ret);
+				} else {
+					methods.remove(ret.key);
+				}
+			}
 
 			return ret;
 		}
@@ -667,12 +734,12 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 			}
 
 			if (entry.srcDesc != null) {
-				return map.remove(new MemberKey(srcName, null));
+				return map.remove(new MemberKey(entry.srcName, null));
 			} else {
 				for (Iterator<T> it = map.values().iterator(); it.hasNext(); ) {
 					T prevEntry = it.next();
 
-					if (prevEntry != entry && prevEntry.srcName.equals(srcName)) {
+					if (prevEntry != entry && prevEntry.srcName.equals(entry.srcName)) {
 						it.remove();
 
 						return prevEntry;
@@ -683,18 +750,67 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 			}
 		}
 
+		private static <T extends MemberEntry> T getMember(String srcName, String srcDesc, MemberArray<T> array, int flags) {
+			if (array == null) return null;
+
+			boolean hasAnyDesc = (flags & FLAG_HAS_ANY_FIELD_DESC) != 0;
+			if (!hasAnyDesc) srcDesc = null;
+
+			int idx = array.indexOf(srcName, srcDesc, false);
+
+			if (idx >= 0
+					|| !hasAnyDesc
+					|| srcDesc != null && (flags & FLAG_MISSES_ANY_FIELD_DESC) == 0) {
+				return idx >= 0 ? array.get(idx) : null;
+			}
+
+			idx = array.indexOf(srcName, null, srcDesc == null);
+
+			return idx >= 0 ? array.get(idx) : null;
+		}
+
+		private <T extends MemberEntry> T addMember(T entry, MemberArray<T> array, int flagHasAny, int flagMissesAny) {
+			int oldFlags = flags;
+
+			if (entry.srcDesc == null) {
+				flags |= flagMissesAny;
+			} else {
+				flags |= flagHasAny;
+			}
+
+			T ret = array.put(entry);
+
+			if (ret != null
+					|| entry.srcDesc != null && (oldFlags & flagMissesAny) == 0
+					|| entry.srcDesc == null && (oldFlags & flagHasAny) == 0) {
+				return ret;
+			}
+
+			if (entry.srcDesc != null) {
+				int idx = array.indexOf(entry.srcName, null, false);
+
+				return idx >= 0 ? array.remove(idx) : null;
+			} else {
+				for (int i = 0; i < array.size(); i++) {
+					T prevEntry = array.get(i);
+
+					if (prevEntry != entry && prevEntry.srcName.equals(entry.srcName)) {
+						return array.remove(i);
+					}
+				}
+
+				return null;
+			}
+		}
+
 		void accept(MappingVisitor visitor, boolean supplyFieldDstDescs, boolean supplyMethodDstDescs) {
 			if (visitor.visitClass(srcName) && acceptElement(visitor, null)) {
-				if (fields != null) {
-					for (FieldEntry field : fields.values()) {
-						field.accept(visitor, supplyFieldDstDescs);
-					}
+				for (FieldEntry field : getFields()) {
+					field.accept(visitor, supplyFieldDstDescs);
 				}
 
-				if (methods != null) {
-					for (MethodEntry method : methods.values()) {
-						method.accept(visitor, supplyMethodDstDescs);
-					}
+				for (MethodEntry method : getMethods()) {
+					method.accept(visitor, supplyMethodDstDescs);
 				}
 			}
 		}
@@ -712,6 +828,8 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		protected final MemoryMappingTree tree;
 		private Map<MemberKey, FieldEntry> fields = null;
 		private Map<MemberKey, MethodEntry> methods = null;
+		private MemberArray<FieldEntry> fieldArray = null; // compact mode replacement for fields
+		private MemberArray<MethodEntry> methodArray = null; // compact mode replacement for methods
 		private byte flags;
 	}
 
@@ -720,16 +838,16 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 			super(owner.tree, srcName);
 
 			this.owner = owner;
-			this.srcDesc = srcDesc;
-			this.key = new MemberKey(srcName, srcDesc);
+			this.srcDesc = owner.tree.intern(srcDesc);
+			this.key = owner.tree.compact ? null : new MemberKey(srcName, srcDesc);
 		}
 
 		protected MemberEntry(ClassEntry owner, MemberMapping src) {
 			super(owner.tree, src);
 
 			this.owner = owner;
-			this.srcDesc = src.getSrcDesc();
-			this.key = new MemberKey(srcName, srcDesc);
+			this.srcDesc = owner.tree.intern(src.getSrcDesc());
+			this.key = owner.tree.compact ? null : new MemberKey(srcName, srcDesc);
 		}
 
 		@Override
@@ -766,7 +884,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 
 		protected final ClassEntry owner;
 		protected final String srcDesc;
-		final MemberKey key;
+		final MemberKey key; // null in compact mode
 	}
 
 	public static final class FieldEntry extends MemberEntry implements FieldMapping {
@@ -1101,6 +1219,133 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 		private final int startOpIdx;
 	}
 
+	/**
+	 * Member table for the compact mode, sorted by name and descriptor.
+	 *
+	 * <p>Additions get inserted at their sorted position, so reads never modify the array and may run concurrently.
+	 */
+	static final class MemberArray<T extends MemberEntry> extends AbstractList<T> {
+		@Override
+		@SuppressWarnings("unchecked")
+		public T get(int index) {
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException(Integer.toString(index));
+
+			return (T) entries[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Add or replace the entry with the same name and descriptor.
+		 *
+		 * @return replaced entry or null if there was none
+		 */
+		@SuppressWarnings("unchecked")
+		T put(T entry) {
+			int low = 0;
+			int high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(entries[mid], entry.srcName, entry.srcDesc);
+
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid;
+				} else {
+					T ret = (T) entries[mid];
+					entries[mid] = entry;
+
+					return ret;
+				}
+			}
+
+			if (size == entries.length) entries = Arrays.copyOf(entries, Math.max(4, size * 2));
+
+			System.arraycopy(entries, low, entries, low + 1, size - low);
+			entries[low] = entry;
+			size++;
+			modCount++;
+
+			return null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T remove(int index) {
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException(Integer.toString(index));
+
+			T ret = (T) entries[index];
+			System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+			entries[--size] = null;
+			modCount++;
+
+			return ret;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			for (int i = 0; i < size; i++) {
+				if (entries[i] == o) {
+					remove(i);
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Find an entry by name and descriptor.
+		 *
+		 * @param anyDesc whether to ignore desc and return the first entry with a matching name
+		 * @return index of the entry or -1 if there is none, valid until the next modification
+		 */
+		int indexOf(String name, String desc, boolean anyDesc) {
+			int low = 0;
+			int high = size;
+
+			while (low < high) { // find the first entry with the name
+				int mid = (low + high) >>> 1;
+
+				if (entries[mid].srcName.compareTo(name) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			for (int i = low; i < size; i++) {
+				MemberEntry entry = entries[i];
+				if (!entry.srcName.equals(name)) break;
+				if (anyDesc || Objects.equals(entry.srcDesc, desc)) return i;
+			}
+
+			return -1;
+		}
+
+		/**
+		 * Compare by name, then descriptor with a missing descriptor first.
+		 */
+		private static int compare(MemberEntry entry, String name, String desc) {
+			int ret = entry.srcName.compareTo(name);
+			if (ret != 0) return ret;
+
+			if (entry.srcDesc == null) {
+				return desc == null ? 0 : -1;
+			} else {
+				return desc == null ? 1 : entry.srcDesc.compareTo(desc);
+			}
+		}
+
+		private MemberEntry[] entries = new MemberEntry[2];
+		private int size;
+	}
+
 	static final class MemberKey {
 		public MemberKey(String name, String desc) {
 			this.name = name;
@@ -1138,6 +1383,7 @@ public final class MemoryMappingTree implements MappingTree, MappingVisitor {
 	}
 
 	private boolean indexByDstNames;
+	private final boolean compact;
 	private String srcNamespace;
 	private List<String> dstNamespaces;
 	private final List<Map.Entry<String, String>> metadata = new ArrayList<>();
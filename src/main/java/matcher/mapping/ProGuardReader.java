@@ -1,10 +1,8 @@
 package matcher.mapping;
 
-import java.io.BufferedReader;
-import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.Arrays;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 
@@ -18,27 +16,21 @@ public final class ProGuardReader {
 	}
 
 	public static void read(Reader reader, String sourceNs, String targetNs, MappingVisitor visitor) throws IOException {
-		BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
-
-		read(br, sourceNs, targetNs, visitor);
+		read(new ColumnFileReader(reader, ' '), sourceNs, targetNs, visitor);
 	}
 
-	private static void read(BufferedReader reader, String sourceNs, String targetNs, MappingVisitor visitor) throws IOException {
-		CharArrayReader parentReader = null;
+	/**
+	 * Read a mapping file through a byte level, lazily decoding tokenizer.
+	 */
+	public static void read(Path file, MappingVisitor visitor) throws IOException {
+		try (ColumnFileReader reader = new ByteColumnFileReader(file, ' ')) {
+			read(reader, MappingUtil.NS_SOURCE_FALLBACK, MappingUtil.NS_TARGET_FALLBACK, visitor);
+		}
+	}
 
+	private static void read(ColumnFileReader reader, String sourceNs, String targetNs, MappingVisitor visitor) throws IOException {
 		if (visitor.getFlags().contains(MappingFlag.NEEDS_MULTIPLE_PASSES)) {
-			char[] buffer = new char[100_000];
-			int pos = 0;
-			int len;
-
-			while ((len = reader.read(buffer, pos, buffer.length - pos)) >= 0) {
-				pos += len;
-
-				if (pos == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
-			}
-
-			parentReader = new CharArrayReader(buffer, 0, pos);
-			reader = new BufferedReader(parentReader);
+			reader.mark();
 		}
 
 		StringBuilder tmp = null;
@@ -53,48 +45,46 @@ public final class ProGuardReader {
 			if (visitor.visitContent()) {
 				if (tmp == null) tmp = new StringBuilder();
 
-				String line;
 				boolean visitClass = false;
 
-				while ((line = reader.readLine()) != null) {
-					line = line.trim();
-					if (line.isEmpty() || line.startsWith("#")) continue;
+				do {
+					String part0 = nextNonEmptyCol(reader); // skips indentation
+					if (part0 == null || part0.startsWith("#")) continue;
 
-					if (line.endsWith(":")) { // class: <deobf> -> <obf>:
-						int pos = line.indexOf(" -> ");
-						if (pos < 0) throw new IOException("invalid proguard line (invalid separator): "+line);
-						if (pos == 0) throw new IOException("invalid proguard line (empty src class): "+line);
-						if (pos + 4 + 1 >= line.length()) throw new IOException("invalid proguard line (empty dst class): "+line);
+					String part1 = nextNonEmptyCol(reader);
+					String part2 = nextNonEmptyCol(reader);
+					if (part1 == null || part2 == null) throw new IOException("invalid proguard line "+reader.getLineNumber()+" (missing columns)");
 
-						String name = line.substring(0, pos).replace('.', '/');
+					if (part2.endsWith(":")) { // class: <deobf> -> <obf>:
+						if (!part1.equals("->")) throw new IOException("invalid proguard line "+reader.getLineNumber()+" (invalid separator)");
+						if (part2.length() == 1) throw new IOException("invalid proguard line "+reader.getLineNumber()+" (empty dst class)");
+						if (nextNonEmptyCol(reader) != null) throw new IOException("invalid proguard line "+reader.getLineNumber()+" (extra columns)");
+
+						String name = part0.replace('.', '/');
 						visitClass = visitor.visitClass(name);
 
 						if (visitClass) {
-							String mappedName = line.substring(pos + 4, line.length() - 1).replace('.', '/');
+							String mappedName = part2.substring(0, part2.length() - 1).replace('.', '/');
 							visitor.visitDstName(MappedElementKind.CLASS, 0, mappedName);
 							visitClass = visitor.visitElementContent(MappedElementKind.CLASS);
 						}
 					} else if (visitClass) { // method or field: <type> <deobf> -> <obf>
-						String[] parts = line.split(" ");
+						if (!part2.equals("->")) throw new IOException("invalid proguard line "+reader.getLineNumber()+" (invalid separator)");
 
-						if (parts.length != 4) throw new IOException("invalid proguard line (extra columns): "+line);
-						if (parts[0].isEmpty()) throw new IOException("invalid proguard line (empty type): "+line);
-						if (parts[1].isEmpty()) throw new IOException("invalid proguard line (empty src member): "+line);
-						if (!parts[2].equals("->")) throw new IOException("invalid proguard line (invalid separator): "+line);
-						if (parts[3].isEmpty()) throw new IOException("invalid proguard line (empty dst member): "+line);
+						String part3 = nextNonEmptyCol(reader);
+						if (part3 == null) throw new IOException("invalid proguard line "+reader.getLineNumber()+" (empty dst member)");
+						if (nextNonEmptyCol(reader) != null) throw new IOException("invalid proguard line "+reader.getLineNumber()+" (extra columns)");
 
-						if (parts[1].indexOf('(') < 0) { // field: <type> <deobf> -> <obf>
-							String name = parts[1];
-							String desc = pgTypeToAsm(parts[0], tmp);
+						if (part1.indexOf('(') < 0) { // field: <type> <deobf> -> <obf>
+							String name = part1;
+							String desc = pgTypeToAsm(part0, tmp);
 
 							if (visitor.visitField(name, desc)) {
-								String mappedName = parts[3];
-								visitor.visitDstName(MappedElementKind.FIELD, 0, mappedName);
+								visitor.visitDstName(MappedElementKind.FIELD, 0, part3);
 								visitor.visitElementContent(MappedElementKind.FIELD);
 							}
 						} else { // method: [<lineStart>:<lineEndIncl>:]<rtype> [<clazz>.]<deobf><arg-desc>[:<deobf-lineStart>[:<deobf-lineEnd>]] -> <obf>
 							// lineStart, lineEndIncl, rtype
-							String part0 = parts[0];
 							int pos = part0.indexOf(':');
 
 							String retType;
@@ -109,7 +99,6 @@ public final class ProGuardReader {
 							}
 
 							// clazz, deobf, arg-desc, obf
-							String part1 = parts[1];
 							pos = part1.indexOf('(');
 							int pos3 = part1.indexOf(')', pos + 1); // arg-desc, obf
 							assert pos3 != -1;
@@ -120,27 +109,29 @@ public final class ProGuardReader {
 								String desc = pgDescToAsm(argDesc, retType, tmp);
 
 								if (visitor.visitMethod(name, desc)) {
-									String mappedName = parts[3];
-									visitor.visitDstName(MappedElementKind.METHOD, 0, mappedName);
+									visitor.visitDstName(MappedElementKind.METHOD, 0, part3);
 									visitor.visitElementContent(MappedElementKind.METHOD);
 								}
 							}
 						}
 					}
-				}
+				} while (reader.nextLine(0));
 			}
 
 			if (visitor.visitEnd()) break;
 
-			if (parentReader == null) {
-				throw new IllegalStateException("repeated visitation requested without NEEDS_MULTIPLE_PASSES");
-			} else {
-				parentReader.reset();
-				reader = new BufferedReader(parentReader);
-			}
+			reader.reset();
 		}
 	}
 
+	private static String nextNonEmptyCol(ColumnFileReader reader) throws IOException {
+		String ret;
+
+		while ((ret = reader.nextCol()) != null && ret.isEmpty()) { }
+
+		return ret;
+	}
+
 	private static String pgDescToAsm(String pgArgDesc, String pgRetType, StringBuilder tmp) {
 		tmp.setLength(0);
 		tmp.append('(');
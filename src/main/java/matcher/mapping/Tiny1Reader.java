@@ -2,6 +2,7 @@ package matcher.mapping;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -32,6 +33,15 @@ public final class Tiny1Reader {
 		read(new ColumnFileReader(reader, '\t'), visitor);
 	}
 
+	/**
+	 * Read a mapping file through a byte level, lazily decoding tokenizer.
+	 */
+	public static void read(Path file, MappingVisitor visitor) throws IOException {
+		try (ColumnFileReader reader = new ByteColumnFileReader(file, '\t')) {
+			read(reader, visitor);
+		}
+	}
+
 	private static void read(ColumnFileReader reader, MappingVisitor visitor) throws IOException {
 		if (!reader.nextCol("v1")) { // magic/version
 			throw new IOException("invalid/unsupported tiny file: no tiny 1 header");
@@ -53,7 +63,7 @@ public final class Tiny1Reader {
 
 		if (flags.contains(MappingFlag.NEEDS_UNIQUENESS)) {
 			parentVisitor = visitor;
-			visitor = new MemoryMappingTree();
+			visitor = new MemoryMappingTree(false, true); // buffers the whole file, compact to limit the memory use of large ones
 		} else if (flags.contains(MappingFlag.NEEDS_MULTIPLE_PASSES)) {
 			reader.mark();
 		}
@@ -2,6 +2,7 @@ package matcher.mapping;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,6 +34,15 @@ public final class Tiny2Reader {
 		read(new ColumnFileReader(reader, '\t'), visitor);
 	}
 
+	/**
+	 * Read a mapping file through a byte level, lazily decoding tokenizer.
+	 */
+	public static void read(Path file, MappingVisitor visitor) throws IOException {
+		try (ColumnFileReader reader = new ByteColumnFileReader(file, '\t')) {
+			read(reader, visitor);
+		}
+	}
+
 	private static void read(ColumnFileReader reader, MappingVisitor visitor) throws IOException {
 		if (!reader.nextCol("tiny") // magic
 				|| reader.nextIntCol() != 2 // major version
@@ -2,24 +2,13 @@ package matcher.mapping;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 public final class TsrgReader {
-	public static void main(String[] args) throws IOException {
-		MemoryMappingTree tree = new MemoryMappingTree();
-
-		try (Reader reader = Files.newBufferedReader(Paths.get("/home/m/git/MCPConfig/versions/release/1.15.2/joined.tsrg"))) {
-			read(reader, tree);
-		}
-
-		System.out.println(tree);
-	}
-
 	public static List<String> getNamespaces(Reader reader) throws IOException {
 		return getNamespaces(new ColumnFileReader(reader, ' '));
 	}
@@ -45,6 +34,15 @@ public final class TsrgReader {
 		read(new ColumnFileReader(reader, ' '), visitor);
 	}
 
+	/**
+	 * Read a mapping file through a byte level, lazily decoding tokenizer.
+	 */
+	public static void read(Path file, MappingVisitor visitor) throws IOException {
+		try (ColumnFileReader reader = new ByteColumnFileReader(file, ' ')) {
+			read(reader, visitor);
+		}
+	}
+
 	private static void read(ColumnFileReader reader, MappingVisitor visitor) throws IOException {
 		boolean isTsrg2 = reader.nextCol("tsrg2");
 		String srcNamespace;
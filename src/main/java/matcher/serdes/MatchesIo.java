@@ -1,10 +1,12 @@
 package matcher.serdes;
 
 import matcher.Matcher;
+import matcher.TaskControl;
 import matcher.type.*;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.file.Files;
@@ -151,6 +153,8 @@ public class MatchesIo {
 					}
 
 					if (line.startsWith("c\t")) { // class
+						TaskControl.checkCancelled(progressReceiver); // stop before the next class, keeping the complete ones
+
 						int pos = line.indexOf('\t', 2);
 						if (pos == -1 || pos == 2 || pos + 1 == line.length()) throw new IOException("invalid matches file");
 						String idA = line.substring(2, pos);
@@ -330,70 +334,99 @@ public class MatchesIo {
 
 
 	public static boolean write(Matcher matcher, Path path) throws IOException {
-		ClassEnvironment env = matcher.getEnv();
-		List<ClassInstance> classes = Stream.concat(env.getClassesA().stream()
+		List<ClassInstance> classes = getWrittenClasses(matcher.getEnv());
+		if (classes.isEmpty()) return false;
+
+		try (Writer writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			write(matcher, classes, writer);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Render the matches file into memory, capturing the current state without any file I/O.
+	 *
+	 * @return file content or null if there are no matches to write
+	 */
+	public static String writeToString(Matcher matcher) {
+		List<ClassInstance> classes = getWrittenClasses(matcher.getEnv());
+		if (classes.isEmpty()) return null;
+
+		StringWriter writer = new StringWriter();
+
+		try {
+			write(matcher, classes, writer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return writer.toString();
+	}
+
+	private static List<ClassInstance> getWrittenClasses(ClassEnvironment env) {
+		return Stream.concat(env.getClassesA().stream()
 				.filter(cls -> cls.hasMatch() || !cls.isMatchable())
 				.sorted(Comparator.comparing(cls -> cls.getId())),
 				env.getClassesB().stream()
 				.filter(cls -> !cls.isMatchable())
 				.sorted(Comparator.comparing(cls -> cls.getId())))
 				.collect(Collectors.toList());
-		if (classes.isEmpty()) return false;
+	}
 
-		try (Writer writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
-			writer.write("Matches saved ");
-			writer.write(LocalDate.now().toString());
-			Matcher.MatchingStatus status = matcher.getStatus(true);
-			writer.write(", status:");
-			writer.write(" c:" + status.matchedClassCount + "/" + status.totalClassCount);
-			writer.write(" m:" + status.matchedMethodCount + "/" + status.totalMethodCount);
-			writer.write(" f:" + status.matchedFieldCount + "/" + status.totalFieldCount);
-			writer.write(" ma:" + status.matchedMethodArgCount + "/" + status.totalMethodArgCount);
-			writer.write(", input files:\n\ta:\n");
-			writeInputFiles(env.getInputFilesA(), writer);
-			writer.write("\tb:\n");
-			writeInputFiles(env.getInputFilesB(), writer);
-			writer.write("\tcp:\n");
-			writeInputFiles(env.getClassPathFiles(), writer);
-			writer.write("\tcp a:\n");
-			writeInputFiles(env.getClassPathFilesA(), writer);
-			writer.write("\tcp b:\n");
-			writeInputFiles(env.getClassPathFilesB(), writer);
-
-			if (env.getNonObfuscatedClassPatternA() != null) {
-				writer.write("\tnon-obf cls a\t");
-				writer.write(env.getNonObfuscatedClassPatternA().toString());
-				writer.write('\n');
-			}
+	private static void write(Matcher matcher, List<ClassInstance> classes, Writer writer) throws IOException {
+		ClassEnvironment env = matcher.getEnv();
 
-			if (env.getNonObfuscatedClassPatternB() != null) {
-				writer.write("\tnon-obf cls b\t");
-				writer.write(env.getNonObfuscatedClassPatternB().toString());
-				writer.write('\n');
-			}
+		writer.write("Matches saved ");
+		writer.write(LocalDate.now().toString());
+		Matcher.MatchingStatus status = matcher.getStatus(true);
+		writer.write(", status:");
+		writer.write(" c:" + status.matchedClassCount + "/" + status.totalClassCount);
+		writer.write(" m:" + status.matchedMethodCount + "/" + status.totalMethodCount);
+		writer.write(" f:" + status.matchedFieldCount + "/" + status.totalFieldCount);
+		writer.write(" ma:" + status.matchedMethodArgCount + "/" + status.totalMethodArgCount);
+		writer.write(", input files:\n\ta:\n");
+		writeInputFiles(env.getInputFilesA(), writer);
+		writer.write("\tb:\n");
+		writeInputFiles(env.getInputFilesB(), writer);
+		writer.write("\tcp:\n");
+		writeInputFiles(env.getClassPathFiles(), writer);
+		writer.write("\tcp a:\n");
+		writeInputFiles(env.getClassPathFilesA(), writer);
+		writer.write("\tcp b:\n");
+		writeInputFiles(env.getClassPathFilesB(), writer);
+
+		if (env.getNonObfuscatedClassPatternA() != null) {
+			writer.write("\tnon-obf cls a\t");
+			writer.write(env.getNonObfuscatedClassPatternA().toString());
+			writer.write('\n');
+		}
 
-			if (env.getNonObfuscatedMemberPatternA() != null) {
-				writer.write("\tnon-obf mem a\t");
-				writer.write(env.getNonObfuscatedMemberPatternA().toString());
-				writer.write('\n');
-			}
+		if (env.getNonObfuscatedClassPatternB() != null) {
+			writer.write("\tnon-obf cls b\t");
+			writer.write(env.getNonObfuscatedClassPatternB().toString());
+			writer.write('\n');
+		}
 
-			if (env.getNonObfuscatedMemberPatternB() != null) {
-				writer.write("\tnon-obf mem b\t");
-				writer.write(env.getNonObfuscatedMemberPatternB().toString());
-				writer.write('\n');
-			}
+		if (env.getNonObfuscatedMemberPatternA() != null) {
+			writer.write("\tnon-obf mem a\t");
+			writer.write(env.getNonObfuscatedMemberPatternA().toString());
+			writer.write('\n');
+		}
+
+		if (env.getNonObfuscatedMemberPatternB() != null) {
+			writer.write("\tnon-obf mem b\t");
+			writer.write(env.getNonObfuscatedMemberPatternB().toString());
+			writer.write('\n');
+		}
 
-			LocalClassEnv envA = env.getEnvA();
+		LocalClassEnv envA = env.getEnvA();
 
-			for (ClassInstance cls : classes) {
-				assert !cls.isShared();
+		for (ClassInstance cls : classes) {
+			assert !cls.isShared();
 
-				writeClass(cls, cls.getEnv() == envA ? 'a' : 'b', writer);
-			}
+			writeClass(cls, cls.getEnv() == envA ? 'a' : 'b', writer);
 		}
-
-		return true;
 	}
 
 	private static void writeInputFiles(Iterable<InputFile> files, Writer out) throws IOException {
@@ -0,0 +1,624 @@
+package matcher.serdes;
+
+import matcher.Matcher;
+import matcher.type.*;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Append-only write-ahead log of match and mapping changes on top of a matches file snapshot.
+ *
+ * <p>Every match, unmatch, matchable flag and mapped name/comment change is appended as a single line to
+ * {@code <matches file>.journal}. Saving only has to flush the journal, a full matches file is written when the
+ * journal gets compacted. Opening a journal replays any leftover records from a previous (crashed) session.
+ *
+ * <p>The matches file doesn't store mappings, compaction writes the latest mapping record per element and property to
+ * {@code <matches file>.mappings} instead, which gets replayed before the journal. Both files start with a generation
+ * header, the mappings file is replaced first, so a journal older than it only contributes its match records. Bulk
+ * mapping changes such as loading a mappings file skip the journal and get persisted by a compaction once done, see
+ * {@link #beginBulkChange}.
+ *
+ * <p>Compaction renames the journal to {@code <matches file>.journal.<generation>} and continues with a new one right
+ * away, the rotated journals get replayed first and are deleted once the snapshot replaced the matches file.
+ *
+ * <p>Record format, tab separated: {@code <op> <ref> [<ref or value>...]}, refs are encoded as
+ * {@code c <side> <cls>}, {@code m|f <side> <cls> <member>} or {@code a|v <side> <cls> <method> <index>}.
+ */
+public final class MatchesJournal implements Closeable {
+	public static MatchesJournal open(Path matchesFile, Matcher matcher) throws IOException {
+		MatchesJournal ret = new MatchesJournal(matchesFile, matcher);
+		int mappingsGeneration = ret.replay(ret.mappingsFile, 0);
+		ret.recordCount = 0; // only journal records count towards compaction
+		NavigableMap<Integer, Path> rotatedFiles = getRotatedFiles(ret.journalFile);
+
+		for (Path file : rotatedFiles.values()) {
+			ret.replay(file, mappingsGeneration);
+		}
+
+		boolean journalExists = Files.exists(ret.journalFile);
+		int journalGeneration = ret.replay(ret.journalFile, mappingsGeneration);
+		ret.generation = Math.max(mappingsGeneration, journalGeneration);
+		if (!rotatedFiles.isEmpty()) ret.generation = Math.max(ret.generation, rotatedFiles.lastKey() + 1);
+		matcher.getEnv().setJournal(ret);
+
+		if (!rotatedFiles.isEmpty() || journalExists && journalGeneration < mappingsGeneration) { // left over from an interrupted compaction
+			ret.compact();
+		} else {
+			if (!journalExists) writeAtomically(ret.journalFile, ret.generation, Collections.emptyList());
+			ret.writer = Files.newBufferedWriter(ret.journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+
+		return ret;
+	}
+
+	public static Path getJournalFile(Path matchesFile) {
+		return matchesFile.resolveSibling(matchesFile.getFileName().toString()+".journal");
+	}
+
+	/**
+	 * Find the journals rotated out by compactions that didn't finish yet, keyed and ordered by their generation.
+	 */
+	private static NavigableMap<Integer, Path> getRotatedFiles(Path journalFile) throws IOException {
+		NavigableMap<Integer, Path> ret = new TreeMap<>();
+		String prefix = journalFile.getFileName().toString()+".";
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalFile.toAbsolutePath().getParent(), prefix+"*")) {
+			for (Path file : stream) {
+				String suffix = file.getFileName().toString().substring(prefix.length());
+
+				try {
+					ret.put(Integer.parseInt(suffix), file);
+				} catch (NumberFormatException e) {
+					// not a rotated journal, e.g. the temporary file of writeAtomically
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	public static Path getMappingsFile(Path matchesFile) {
+		return matchesFile.resolveSibling(matchesFile.getFileName().toString()+".mappings");
+	}
+
+	/**
+	 * Delete the journal and mappings file belonging to matchesFile, for starting over with a fresh snapshot.
+	 */
+	public static void delete(Path matchesFile) throws IOException {
+		Path journalFile = getJournalFile(matchesFile);
+
+		for (Path file : getRotatedFiles(journalFile).values()) {
+			Files.delete(file);
+		}
+
+		Files.deleteIfExists(journalFile);
+		Files.deleteIfExists(getMappingsFile(matchesFile));
+	}
+
+	private MatchesJournal(Path matchesFile, Matcher matcher) {
+		this.matchesFile = matchesFile;
+		this.journalFile = getJournalFile(matchesFile);
+		this.mappingsFile = getMappingsFile(matchesFile);
+		this.matcher = matcher;
+	}
+
+	public Path getMatchesFile() {
+		return matchesFile;
+	}
+
+	/**
+	 * Apply the records in file.
+	 *
+	 * @param minGeneration generation below which the mapping records are superseded by the mappings file
+	 * @return generation from the file's header, 0 if absent
+	 */
+	private int replay(Path file, int minGeneration) throws IOException {
+		if (!Files.exists(file)) return 0;
+
+		int generation = 0;
+		int lineNumber = 0;
+		int count = 0;
+
+		try (BufferedReader reader = Files.newBufferedReader(file)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty()) continue;
+
+				if (line.startsWith(generationPrefix)) {
+					generation = Integer.parseInt(line.substring(generationPrefix.length()));
+					continue;
+				}
+
+				if (generation < minGeneration && isMappingRecord(line)) continue;
+
+				try {
+					replay(line);
+					count++;
+				} catch (RuntimeException e) {
+					System.err.println("Skipping invalid journal record in "+file+" line "+lineNumber+": "+e);
+				}
+			}
+		}
+
+		System.out.println("Replayed "+count+" journal records from "+file);
+		recordCount += count;
+
+		return generation;
+	}
+
+	private void replay(String line) {
+		String[] parts = line.split("\t", -1);
+		int[] pos = { 1 };
+		Matchable<?> subject = resolve(parts, pos);
+
+		if (subject == null) {
+			System.err.println("Unknown journal element: "+line);
+			return;
+		}
+
+		switch (parts[0]) {
+		case "M": {
+			Matchable<?> target = resolve(parts, pos);
+
+			if (target == null) {
+				System.err.println("Unknown journal element: "+line);
+				return;
+			}
+
+			if (!subject.isMatchable()) subject.setMatchable(true);
+			if (!target.isMatchable()) target.setMatchable(true);
+
+			applyMatch(subject, target);
+			break;
+		}
+		case "U":
+			applyUnmatch(subject);
+			break;
+		case "X":
+			if (subject.hasMatch()) applyUnmatch(subject);
+			subject.setMatchable(parts[pos[0]].equals("1"));
+			break;
+		case "N": {
+			String value = readValue(parts, pos[0]);
+			setMappedName(subject, value);
+			putMappingRecord(getMappingKey(line, pos[0]), line, value);
+			break;
+		}
+		case "C": {
+			String value = readValue(parts, pos[0]);
+			subject.setMappedComment(value);
+			putMappingRecord(getMappingKey(line, pos[0]), line, value);
+			break;
+		}
+		case "A": {
+			String value = readValue(parts, pos[0] + 1);
+			setAuxName(subject, Integer.parseInt(parts[pos[0]]), value);
+			putMappingRecord(getMappingKey(line, pos[0] + 1), line, value);
+			break;
+		}
+		default:
+			throw new IllegalArgumentException("unknown journal op: "+parts[0]);
+		}
+
+	}
+
+	private Matchable<?> resolve(String[] parts, int[] pos) {
+		int i = pos[0];
+		String kind = parts[i];
+		boolean isA = parts[i + 1].equals("a");
+		ClassEnvironment env = matcher.getEnv();
+		ClassInstance cls = isA ? env.getLocalClsByIdA(parts[i + 2]) : env.getLocalClsByIdB(parts[i + 2]);
+		Matchable<?> ret;
+
+		switch (kind) {
+		case "c":
+			pos[0] = i + 3;
+			ret = cls;
+			break;
+		case "m":
+			pos[0] = i + 4;
+			ret = cls != null ? cls.getMethod(parts[i + 3]) : null;
+			break;
+		case "f":
+			pos[0] = i + 4;
+			ret = cls != null ? cls.getField(parts[i + 3]) : null;
+			break;
+		case "a":
+		case "v": {
+			pos[0] = i + 5;
+			MethodInstance method = cls != null ? cls.getMethod(parts[i + 3]) : null;
+			int idx = Integer.parseInt(parts[i + 4]);
+			MethodVarInstance[] vars = method == null ? null : kind.equals("a") ? method.getArgs() : method.getVars();
+			ret = vars != null && idx >= 0 && idx < vars.length ? vars[idx] : null;
+			break;
+		}
+		default:
+			throw new IllegalArgumentException("unknown journal ref kind: "+kind);
+		}
+
+		return ret;
+	}
+
+	private void applyMatch(Matchable<?> a, Matchable<?> b) {
+		switch (a.getKind()) {
+		case CLASS:
+			matcher.match((ClassInstance) a, (ClassInstance) b);
+			break;
+		case METHOD:
+			matcher.match((MethodInstance) a, (MethodInstance) b);
+			break;
+		case FIELD:
+			matcher.match((FieldInstance) a, (FieldInstance) b);
+			break;
+		case METHOD_ARG:
+		case METHOD_VAR:
+			matcher.match((MethodVarInstance) a, (MethodVarInstance) b);
+			break;
+		}
+	}
+
+	private void applyUnmatch(Matchable<?> m) {
+		if (m instanceof ClassInstance) {
+			matcher.unmatch((ClassInstance) m);
+		} else if (m instanceof MemberInstance) {
+			matcher.unmatch((MemberInstance<?>) m);
+		} else {
+			matcher.unmatch((MethodVarInstance) m);
+		}
+	}
+
+	private static void setMappedName(Matchable<?> m, String name) {
+		if (m instanceof ClassInstance) {
+			((ClassInstance) m).setMappedName(name);
+		} else if (m instanceof MemberInstance) {
+			((MemberInstance<?>) m).setMappedName(name);
+		} else {
+			((MethodVarInstance) m).setMappedName(name);
+		}
+	}
+
+	private static void setAuxName(Matchable<?> m, int index, String name) {
+		if (m instanceof ClassInstance) {
+			((ClassInstance) m).setAuxName(index, name);
+		} else if (m instanceof MemberInstance) {
+			((MemberInstance<?>) m).setAuxName(index, name);
+		} else {
+			((MethodVarInstance) m).setAuxName(index, name);
+		}
+	}
+
+	public synchronized void logMatch(Matchable<?> a, Matchable<?> b) {
+		StringBuilder sb = new StringBuilder("M");
+		writeRef(a, sb);
+		writeRef(b, sb);
+		append(sb.toString());
+	}
+
+	public synchronized void logUnmatch(Matchable<?> m) {
+		StringBuilder sb = new StringBuilder("U");
+		writeRef(m, sb);
+		append(sb.toString());
+	}
+
+	public synchronized void logMatchable(Matchable<?> m, boolean matchable) {
+		StringBuilder sb = new StringBuilder("X");
+		writeRef(m, sb);
+		sb.append(matchable ? "\t1" : "\t0");
+		append(sb.toString());
+	}
+
+	public synchronized void logMappedName(Matchable<?> m, String name) {
+		logMapping("N", m, null, name);
+	}
+
+	public synchronized void logMappedComment(Matchable<?> m, String comment) {
+		logMapping("C", m, null, comment);
+	}
+
+	public synchronized void logAuxName(Matchable<?> m, int index, String name) {
+		logMapping("A", m, Integer.toString(index), name);
+	}
+
+	private void logMapping(String op, Matchable<?> m, String arg, String value) {
+		StringBuilder sb = new StringBuilder(op);
+		writeRef(m, sb);
+		if (arg != null) sb.append('\t').append(arg);
+		String key = sb.toString();
+
+		if (value != null) {
+			sb.append('\t');
+			writeEscaped(value, sb);
+		}
+
+		String line = sb.toString();
+		putMappingRecord(key, line, value);
+		if (bulkChangeDepth == 0) append(line);
+	}
+
+	/**
+	 * Track the latest record for the mapping property key, unset properties need no record since a freshly loaded
+	 * project doesn't have any mappings.
+	 */
+	private void putMappingRecord(String key, String line, String value) {
+		if (value != null) {
+			mappingRecords.put(key, line);
+		} else {
+			mappingRecords.remove(key);
+		}
+	}
+
+	private static boolean isMappingRecord(String line) {
+		return line.startsWith("N\t") || line.startsWith("C\t") || line.startsWith("A\t");
+	}
+
+	private void writeRef(Matchable<?> m, StringBuilder out) {
+		switch (m.getKind()) {
+		case CLASS:
+			out.append("\tc");
+			writeClassRef((ClassInstance) m, out);
+			break;
+		case METHOD:
+		case FIELD: {
+			MemberInstance<?> member = (MemberInstance<?>) m;
+			out.append(member instanceof MethodInstance ? "\tm" : "\tf");
+			writeClassRef(member.getCls(), out);
+			out.append('\t').append(member.getId());
+			break;
+		}
+		case METHOD_ARG:
+		case METHOD_VAR: {
+			MethodVarInstance var = (MethodVarInstance) m;
+			out.append(var.isArg() ? "\ta" : "\tv");
+			writeClassRef(var.getMethod().getCls(), out);
+			out.append('\t').append(var.getMethod().getId());
+			out.append('\t').append(var.getIndex());
+			break;
+		}
+		}
+	}
+
+	private void writeClassRef(ClassInstance cls, StringBuilder out) {
+		out.append(cls.getEnv() == matcher.getEnv().getEnvA() ? "\ta\t" : "\tb\t");
+		out.append(cls.getId());
+	}
+
+	private void append(String line) {
+		if (writer == null) return; // replaying
+
+		try {
+			writer.write(line);
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		recordCount++;
+	}
+
+	/**
+	 * Make all records logged so far durable, this is the incremental equivalent of saving the matches file.
+	 */
+	public synchronized void flush() throws IOException {
+		if (writer != null) writer.flush();
+	}
+
+	public synchronized boolean needsCompaction() {
+		return !compacting && recordCount >= compactionThreshold;
+	}
+
+	/**
+	 * Stop journaling mapping changes until the matching {@link #endBulkChange}, which persists them at once.
+	 */
+	public synchronized void beginBulkChange() {
+		bulkChangeDepth++;
+	}
+
+	public synchronized void endBulkChange() throws IOException {
+		if (bulkChangeDepth <= 0) throw new IllegalStateException("no bulk change in progress");
+		if (--bulkChangeDepth == 0) compact();
+	}
+
+	/**
+	 * Fold the journal into a new matches file snapshot and mappings file, then start over with an empty journal.
+	 */
+	public void compact() throws IOException {
+		beginCompaction().run();
+	}
+
+	/**
+	 * Start a compaction by capturing the matches and mappings in memory and rotating the journal.
+	 *
+	 * <p>Records logged from here on go to the new journal. The returned compaction does the file writes and may run on
+	 * any thread, a later compaction waits for it to finish.
+	 */
+	public synchronized Compaction beginCompaction() throws IOException {
+		awaitCompaction();
+
+		String snapshot = MatchesIo.writeToString(matcher);
+		List<String> mappingLines = new ArrayList<>(mappingRecords.values());
+		Path rotatedFile = journalFile.resolveSibling(journalFile.getFileName().toString()+"."+generation);
+		if (Files.exists(rotatedFile)) throw new FileAlreadyExistsException(rotatedFile.toString());
+
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+
+		if (Files.exists(journalFile)) Files.move(journalFile, rotatedFile, StandardCopyOption.ATOMIC_MOVE);
+
+		Compaction ret = new Compaction(snapshot, mappingLines, generation, generation + 1);
+		generation++;
+		writeAtomically(journalFile, generation, Collections.emptyList());
+		writer = Files.newBufferedWriter(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		recordCount = 0;
+		compacting = true;
+
+		return ret;
+	}
+
+	private void awaitCompaction() throws IOException {
+		while (compacting) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	/**
+	 * Writes of a compaction started by {@link #beginCompaction}.
+	 *
+	 * <p>Without any matches to snapshot the rotated journals stay, their match records still apply on top of the old
+	 * matches file while their mapping records are superseded by the new mappings file.
+	 */
+	public final class Compaction {
+		private Compaction(String snapshot, List<String> mappingLines, int rotatedGeneration, int mappingsGeneration) {
+			this.snapshot = snapshot;
+			this.mappingLines = mappingLines;
+			this.rotatedGeneration = rotatedGeneration;
+			this.mappingsGeneration = mappingsGeneration;
+		}
+
+		public void run() throws IOException {
+			try {
+				Path tmpFile = matchesFile.resolveSibling(matchesFile.getFileName().toString()+".tmp");
+				if (snapshot != null) Files.writeString(tmpFile, snapshot);
+
+				writeAtomically(mappingsFile, mappingsGeneration, mappingLines);
+
+				if (snapshot != null) {
+					Files.move(tmpFile, matchesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+					for (Path file : getRotatedFiles(journalFile).headMap(rotatedGeneration, true).values()) {
+						Files.delete(file);
+					}
+				}
+			} finally {
+				synchronized (MatchesJournal.this) {
+					compacting = false;
+					MatchesJournal.this.notifyAll();
+				}
+			}
+		}
+
+		private final String snapshot;
+		private final List<String> mappingLines;
+		private final int rotatedGeneration;
+		private final int mappingsGeneration;
+	}
+
+	private static void writeAtomically(Path file, int generation, Collection<String> lines) throws IOException {
+		Path tmpFile = file.resolveSibling(file.getFileName().toString()+".tmp");
+
+		try (Writer writer = Files.newBufferedWriter(tmpFile)) {
+			writer.write(generationPrefix);
+			writer.write(Integer.toString(generation));
+			writer.write('\n');
+
+			for (String line : lines) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (matcher.getEnv().getJournal() == this) matcher.getEnv().setJournal(null);
+
+		awaitCompaction();
+
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	private static String getMappingKey(String line, int valuePos) {
+		int end = -1;
+
+		for (int i = 0; i < valuePos; i++) {
+			end = line.indexOf('\t', end + 1);
+			if (end < 0) return line;
+		}
+
+		return line.substring(0, end);
+	}
+
+	private static String readValue(String[] parts, int pos) {
+		return pos < parts.length ? unescape(parts[pos]) : null;
+	}
+
+	private static void writeEscaped(String s, StringBuilder out) {
+		for (int i = 0, max = s.length(); i < max; i++) {
+			char c = s.charAt(i);
+			int idx = toEscape.indexOf(c);
+
+			if (idx >= 0) {
+				out.append('\\').append(escaped.charAt(idx));
+			} else {
+				out.append(c);
+			}
+		}
+	}
+
+	private static String unescape(String s) {
+		if (s.indexOf('\\') < 0) return s;
+
+		StringBuilder ret = new StringBuilder(s.length());
+
+		for (int i = 0, max = s.length(); i < max; i++) {
+			char c = s.charAt(i);
+
+			if (c == '\\' && i + 1 < max) {
+				int idx = escaped.indexOf(s.charAt(++i));
+				if (idx < 0) throw new IllegalArgumentException("invalid escape sequence in "+s);
+				ret.append(toEscape.charAt(idx));
+			} else {
+				ret.append(c);
+			}
+		}
+
+		return ret.toString();
+	}
+
+	private static final String toEscape = "\\\n\r\t";
+	private static final String escaped = "\\nrt";
+	private static final String generationPrefix = "G\t";
+	private static final int compactionThreshold = 100_000;
+
+	private final Path matchesFile;
+	private final Path journalFile;
+	private final Path mappingsFile;
+	private final Matcher matcher;
+	private final Map<String, String> mappingRecords = new LinkedHashMap<>();
+	private Writer writer;
+	private int generation;
+	private int recordCount;
+	private int bulkChangeDepth;
+	private boolean compacting;
+}
@@ -1,7 +1,26 @@
 package matcher.srcprocess;
 
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
+import matcher.NameType;
+import matcher.type.ClassEnvironment;
+import matcher.type.ClassInstance;
+
 public enum BuiltinDecompiler {
 	CFR("CFR", Cfr::new),
 	FERNFLOWER("Fernflower", Fernflower::new),
@@ -12,18 +31,146 @@ public enum BuiltinDecompiler {
 		this.supplier = supplier;
 	}
 
-	public Decompiler get() {
-		Decompiler ret = instance.get();
+	/**
+	 * Decompile cls with a pooled decompiler instance.
+	 *
+	 * <p>Concurrent calls run in parallel on separate instances, bounded by the number of available processors across
+	 * all decompilers. Excess calls block until an instance gets returned.
+	 */
+	public String decompile(ClassEnvironment env, ClassInstance cls, NameType nameType) {
+		return decompile(env, cls, new ClassFileSnapshot(nameType));
+	}
+
+	String decompile(ClassEnvironment env, ClassInstance cls, ClassFileSnapshot classFiles) {
+		permits.acquireUninterruptibly();
+
+		try {
+			return run(env, cls, classFiles);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Decompile cls on a separate worker, giving up after timeout ms.
+	 *
+	 * <p>Decompilers generally don't react to interruption, a timed out worker is thus abandoned and no longer counts
+	 * towards the concurrency limit. At most {@link #maxAbandoned} workers get abandoned at a time, beyond that a timed
+	 * out worker keeps its permit until it finishes, so runaway decompilers can't pile up. The class gets recorded as
+	 * too slow for this decompiler, see {@link #hasTimedOut}. The timeout only starts once a permit is available,
+	 * waiting for it can be interrupted.
+	 *
+	 * @throws TimeoutException if the decompiler didn't finish in time
+	 */
+	String decompile(ClassEnvironment env, ClassInstance cls, ClassFileSnapshot classFiles, long timeout) throws TimeoutException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 
-		if (ret == null) {
-			ret = supplier.get();
-			instance.set(ret);
+			throw new CancellationException("interrupted");
 		}
 
-		return ret;
+		AtomicInteger state = new AtomicInteger(stateNew);
+		Future<String> future;
+
+		try {
+			future = workers.submit(() -> {
+				if (!state.compareAndSet(stateNew, stateRunning)) return null; // given up before starting
+
+				try {
+					return run(env, cls, classFiles);
+				} finally {
+					if (state.getAndSet(stateDone) == stateAbandoned) {
+						abandonSlots.release();
+					} else {
+						permits.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			abandon(future, state);
+
+			synchronized (timedOut) {
+				timedOut.add(cls);
+			}
+
+			throw e;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+
+			throw new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			abandon(future, state);
+			Thread.currentThread().interrupt();
+
+			throw new CancellationException("interrupted");
+		}
+	}
+
+	/**
+	 * Give up on a timed run, moving its permit to an abandon slot if one is free.
+	 */
+	private static void abandon(Future<String> future, AtomicInteger state) {
+		future.cancel(true);
+
+		if (state.compareAndSet(stateNew, stateDone)) { // never started
+			permits.release();
+		} else if (abandonSlots.tryAcquire()) {
+			if (state.compareAndSet(stateRunning, stateAbandoned)) {
+				permits.release();
+			} else { // finished meanwhile and released its permit
+				abandonSlots.release();
+			}
+		}
+	}
+
+	/**
+	 * Check whether decompiling cls exceeded the time limit before in this session.
+	 */
+	public boolean hasTimedOut(ClassInstance cls) {
+		synchronized (timedOut) {
+			return timedOut.contains(cls);
+		}
 	}
 
+	private String run(ClassEnvironment env, ClassInstance cls, ClassFileSnapshot classFiles) {
+		Decompiler decompiler = idle.poll();
+		if (decompiler == null) decompiler = supplier.get();
+
+		try {
+			return env.decompile(decompiler, cls, classFiles);
+		} finally {
+			idle.add(decompiler);
+		}
+	}
+
+	private static final int stateNew = 0;
+	private static final int stateRunning = 1;
+	private static final int stateAbandoned = 2;
+	private static final int stateDone = 3;
+
+	private static final int maxAbandoned = Runtime.getRuntime().availableProcessors();
+	private static final Semaphore permits = new Semaphore(Runtime.getRuntime().availableProcessors());
+	private static final Semaphore abandonSlots = new Semaphore(maxAbandoned);
+	private static final ExecutorService workers = Executors.newCachedThreadPool(task -> {
+		Thread ret = new Thread(task, "decompiler worker");
+		ret.setDaemon(true); // abandoned workers mustn't keep the vm alive
+
+		return ret;
+	});
+
 	public final String name;
 	private final Supplier<? extends Decompiler> supplier;
-	private final ThreadLocal<Decompiler> instance = new ThreadLocal<>();
+	private final Queue<Decompiler> idle = new ConcurrentLinkedQueue<>();
+	private final Set<ClassInstance> timedOut = Collections.newSetFromMap(new WeakHashMap<>());
 }
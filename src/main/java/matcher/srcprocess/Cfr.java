@@ -19,14 +19,15 @@ import matcher.type.ClassInstance;
 
 public class Cfr implements Decompiler {
 	@Override
-	public synchronized String decompile(ClassInstance cls, ClassFeatureExtractor env, NameType nameType) {
+	public String decompile(ClassInstance cls, ClassFeatureExtractor env, ClassFileSnapshot classFiles) {
+		NameType nameType = classFiles.getNameType();
 		Map<String, String> options = new HashMap<>();
 
 		Sink sink = new Sink();
 
 		CfrDriver driver = new CfrDriver.Builder()
 				.withOptions(options)
-				.withClassFileSource(new Source(env, nameType))
+				.withClassFileSource(new Source(env, classFiles))
 				.withOutputSink(sink)
 				.build();
 
@@ -36,9 +37,10 @@ public class Cfr implements Decompiler {
 	}
 
 	private static class Source implements ClassFileSource {
-		Source(ClassFeatureExtractor env, NameType nameType) {
+		Source(ClassFeatureExtractor env, ClassFileSnapshot snapshot) {
 			this.env = env;
-			this.nameType = nameType;
+			this.nameType = snapshot.getNameType();
+			this.snapshot = snapshot;
 		}
 
 		@Override
@@ -78,13 +80,12 @@ public class Cfr implements Decompiler {
 				throw new NoSuchFileException(path);
 			}
 
-			byte[] data = cls.serialize(nameType);
-
-			return Pair.make(data, path);
+			return Pair.make(snapshot.get(cls), path);
 		}
 
 		private final ClassFeatureExtractor env;
 		private final NameType nameType;
+		private final ClassFileSnapshot snapshot;
 	}
 
 	private static class Sink implements OutputSinkFactory {
@@ -0,0 +1,60 @@
+package matcher.srcprocess;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.objectweb.asm.ClassWriter;
+
+import matcher.NameType;
+import matcher.type.ClassInstance;
+
+/**
+ * Remapped class files for a single decompilation job.
+ *
+ * <p>Each class is serialized at most once per job and the resulting bytes are never modified afterwards, so the
+ * decompiler works on a consistent view and doesn't need to touch the shared asm nodes again. Instances are confined
+ * to the job, they are not thread safe.
+ */
+public final class ClassFileSnapshot {
+	public ClassFileSnapshot(NameType nameType) {
+		this.nameType = nameType;
+		this.tokens = null;
+	}
+
+	/**
+	 * Create a snapshot with the renameable names replaced by tokens.
+	 */
+	ClassFileSnapshot(NameTokens tokens) {
+		this.nameType = tokens.getNameType();
+		this.tokens = tokens;
+	}
+
+	public NameType getNameType() {
+		return nameType;
+	}
+
+	/**
+	 * Get the class file bytes for cls, which has to have an asm node.
+	 */
+	public byte[] get(ClassInstance cls) {
+		byte[] ret = data.get(cls);
+
+		if (ret == null) {
+			if (tokens == null) {
+				ret = cls.serialize(nameType);
+			} else {
+				ClassWriter writer = new ClassWriter(0);
+				cls.accept(writer, tokens.createRemapper(cls.getEnv()));
+				ret = writer.toByteArray();
+			}
+
+			data.put(cls, ret);
+		}
+
+		return ret;
+	}
+
+	private final NameType nameType;
+	private final NameTokens tokens;
+	private final Map<ClassInstance, byte[]> data = new IdentityHashMap<>();
+}
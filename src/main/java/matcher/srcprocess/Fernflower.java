@@ -15,7 +15,8 @@ import java.util.jar.Manifest;
 
 public class Fernflower implements Decompiler {
 	@Override
-	public String decompile(ClassInstance cls, ClassFeatureExtractor env, NameType nameType) {
+	public String decompile(ClassInstance cls, ClassFeatureExtractor env, ClassFileSnapshot classFiles) {
+		NameType nameType = classFiles.getNameType();
 		// invoke ff with on-demand class lookup into matcher's state and string based output
 		Map<String, Object> properties = new HashMap<>(IFernflowerPreferences.DEFAULTS);
 		properties.putAll(Map.of(
@@ -30,7 +31,7 @@ public class Fernflower implements Decompiler {
 					properties,
 					new PrintStreamLogger(System.out)
 			);
-			decompiler.addSource(new ClassSource(cls, env, nameType, resultSaver));
+			decompiler.addSource(new ClassSource(cls, env, classFiles, resultSaver));
 			decompiler.decompileContext();
 			return resultSaver.results.get(cls.getName(nameType));
 		} catch (IOException e) {
@@ -42,12 +43,14 @@ public class Fernflower implements Decompiler {
 		private final ClassInstance cls;
 		private final ClassFeatureExtractor env;
 		private final NameType nameType;
+		private final ClassFileSnapshot snapshot;
 		private final ResultSaver resultSaver;
 
-		public ClassSource(ClassInstance cls, ClassFeatureExtractor env, NameType nameType, ResultSaver resultSaver) {
+		public ClassSource(ClassInstance cls, ClassFeatureExtractor env, ClassFileSnapshot snapshot, ResultSaver resultSaver) {
 			this.cls = cls;
 			this.env = env;
-			this.nameType = nameType;
+			this.nameType = snapshot.getNameType();
+			this.snapshot = snapshot;
 			this.resultSaver = resultSaver;
 		}
 
@@ -72,12 +75,12 @@ public class Fernflower implements Decompiler {
 			List<Entry> entries = new ArrayList<>();
 			String name = getName(cls, nameType);
 			entries.add(Entry.parse(name));
-			cache.put(name, cls.serialize(nameType));
+			cache.put(name, snapshot.get(cls));
 
 			for (ClassInstance innerCls : cls.getInnerClasses()) {
 				String innerName = getName(innerCls, nameType);
 				entries.add(Entry.parse(innerName));
-				cache.put(innerName, innerCls.serialize(nameType));
+				cache.put(innerName, snapshot.get(innerCls));
 			}
 
 			return new Entries(entries, List.of(), List.of());
@@ -705,7 +705,9 @@ public class HtmlPrinter implements VoidVisitor<Void> {
 		printer.print(".");
 		printer.print("<span class=\"field");
 		String name = n.getNameAsString();
-		if (name.toUpperCase(Locale.ROOT).equals(name)) {
+		if (typeResolver.isToken(name)) {
+			printer.print(NameTokens.getConstantFlag(name)); // depends on the name substituted later
+		} else if (name.toUpperCase(Locale.ROOT).equals(name)) {
 			printer.print(" constant");
 		}
 		printer.print("\">");
@@ -0,0 +1,337 @@
+package matcher.srcprocess;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import matcher.NameType;
+import matcher.bcremap.AsmRemapper;
+import matcher.type.ClassEnv;
+import matcher.type.ClassInstance;
+import matcher.type.FieldInstance;
+import matcher.type.Matchable;
+import matcher.type.MemberInstance;
+import matcher.type.MethodInstance;
+import matcher.type.MethodVarInstance;
+
+/**
+ * Placeholder names for the renameable members, args and vars of a single decompilation.
+ *
+ * <p>Class files remapped through {@link #createRemapper} carry a unique token instead of each such name, the
+ * decompiled and decorated source can then be turned into the source for any naming state by substituting the tokens
+ * through {@link #apply}. Class names and names that can't be changed are emitted as is and recorded, the result is
+ * only usable while all of those are unchanged, as checked by {@link #isValid}.
+ *
+ * <p>The token marker is chosen per class to not occur in its string constants and comments, so no literal text gets
+ * substituted. Names clashing after substitution can't be handled here since the decompiler only saw distinct tokens,
+ * see {@link #hasNameClash}.
+ *
+ * <p>Instances are confined to the decompilation until complete, afterwards they are read-only.
+ */
+final class NameTokens {
+	/**
+	 * @param cls class being decompiled, including its inner classes
+	 */
+	NameTokens(NameType nameType, ClassInstance cls) {
+		this.nameType = nameType;
+		this.cls = cls;
+
+		String marker = "$$";
+		while (containsText(cls, marker)) marker += "$";
+		this.tokenMarker = marker;
+	}
+
+	public NameType getNameType() {
+		return nameType;
+	}
+
+	public AsmRemapper createRemapper(ClassEnv env) {
+		return new AsmRemapper(env, nameType, env.getRemapTable(nameType)) {
+			@Override
+			protected String getName(Matchable<?> matchable) {
+				String ret = get(matchable);
+				if (ret != null) return ret;
+
+				ret = super.getName(matchable);
+				addFixedName(matchable, ret);
+
+				return ret;
+			}
+
+			@Override
+			protected void onClassUse(ClassInstance cls) {
+				addFixedName(cls, cls.getName(nameType));
+			}
+		};
+	}
+
+	/**
+	 * Get the token standing in for matchable's name, or null if its name is emitted as is.
+	 *
+	 * <p>All methods of a hierarchy share a token, decompilers compare their names to detect overrides.
+	 */
+	public String get(Matchable<?> matchable) {
+		if (!isRenameable(matchable)) return null;
+
+		Object key = matchable instanceof MethodInstance ? ((MethodInstance) matchable).getAllHierarchyMembers() : matchable;
+		String ret = tokens.get(key);
+		if (ret != null) return ret;
+
+		ret = tokenMarker+Integer.toString(tokenized.size(), 36)+tokenMarker;
+		tokens.put(key, ret);
+		tokenized.add(matchable);
+
+		return ret;
+	}
+
+	/**
+	 * Get the member, arg or var a token stands for, null if name is no token of this instance.
+	 *
+	 * <p>For methods this is any member of the hierarchy sharing the token.
+	 */
+	public Matchable<?> resolve(String name) {
+		int end = name.length() - tokenMarker.length();
+		if (end <= tokenMarker.length() || !name.startsWith(tokenMarker) || !name.endsWith(tokenMarker)) return null;
+
+		int index = parseIndex(name, tokenMarker.length(), end);
+
+		return index >= 0 ? tokenized.get(index) : null;
+	}
+
+	/**
+	 * Get a placeholder for the css class marking token's name as a constant, substituted along with the names.
+	 */
+	public static String getConstantFlag(String token) {
+		return token+constantSuffix;
+	}
+
+	/**
+	 * Check whether the names emitted as is still match.
+	 */
+	public boolean isValid() {
+		for (Map.Entry<Matchable<?>, String> entry : fixedNames.entrySet()) {
+			if (!Objects.equals(entry.getKey().getName(nameType), entry.getValue())) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check whether substituting the current names would yield source the decompiler wouldn't have produced for them.
+	 *
+	 * <p>This is the case if names in a common scope became equal, which the decompiler would have resolved by
+	 * qualifying or renaming: args and vars with overlapping ranges, a var and a field its method accesses, two fields or
+	 * two methods with the same argument types within a class. It also covers emitted as is names containing the token
+	 * marker. Such classes have to be decompiled with the actual names instead.
+	 */
+	public boolean hasNameClash() {
+		for (String name : fixedNames.values()) {
+			if (name != null && name.contains(tokenMarker)) return true;
+		}
+
+		return hasNameClash(cls);
+	}
+
+	private boolean hasNameClash(ClassInstance cls) {
+		Map<String, FieldInstance> fields = new HashMap<>();
+
+		for (FieldInstance field : cls.getFields()) {
+			FieldInstance prev = fields.put(getCurrentName(field), field);
+			if (prev != null && (hasToken(prev) || hasToken(field))) return true;
+		}
+
+		Map<String, MethodInstance> methods = new HashMap<>();
+
+		for (MethodInstance method : cls.getMethods()) {
+			String desc = method.getDesc();
+			MethodInstance prev = methods.put(getCurrentName(method)+desc.substring(0, desc.lastIndexOf(')') + 1), method);
+			if (prev != null && (hasToken(prev) || hasToken(method))) return true;
+
+			if (hasVarClash(method)) return true;
+		}
+
+		for (ClassInstance innerCls : cls.getInnerClasses()) {
+			if (hasNameClash(innerCls)) return true;
+		}
+
+		return false;
+	}
+
+	private boolean hasVarClash(MethodInstance method) {
+		List<MethodVarInstance> vars = new ArrayList<>(method.getArgs().length + method.getVars().length);
+		vars.addAll(List.of(method.getArgs()));
+		vars.addAll(List.of(method.getVars()));
+		if (vars.isEmpty()) return false;
+
+		List<String> names = new ArrayList<>(vars.size());
+
+		for (MethodVarInstance var : vars) {
+			names.add(getCurrentName(var));
+		}
+
+		for (int i = 0; i < vars.size(); i++) {
+			for (int j = i + 1; j < vars.size(); j++) {
+				if (names.get(i).equals(names.get(j)) && overlaps(vars.get(i), vars.get(j))) return true;
+			}
+		}
+
+		// a var shadowing an accessed field requires qualifying the access
+
+		for (FieldInstance field : method.getFieldReadRefs()) {
+			if (names.contains(getCurrentName(field))) return true;
+		}
+
+		for (FieldInstance field : method.getFieldWriteRefs()) {
+			if (names.contains(getCurrentName(field))) return true;
+		}
+
+		return false;
+	}
+
+	private static boolean overlaps(MethodVarInstance a, MethodVarInstance b) {
+		if (a.isArg() || b.isArg()) return true; // args are in scope for the whole method
+
+		return a.getStartInsn() < b.getEndInsn() && b.getStartInsn() < a.getEndInsn();
+	}
+
+	private boolean hasToken(Matchable<?> matchable) {
+		if (!isRenameable(matchable)) return false;
+
+		return tokens.containsKey(matchable instanceof MethodInstance ? ((MethodInstance) matchable).getAllHierarchyMembers() : matchable);
+	}
+
+	private String getCurrentName(Matchable<?> matchable) {
+		return Objects.requireNonNullElse(matchable.getName(nameType), matchable.getName());
+	}
+
+	/**
+	 * Replace all tokens in text with the current names, html escaping them as requested.
+	 */
+	public String apply(String text, boolean html) {
+		StringBuilder ret = new StringBuilder(text.length());
+		int copied = 0;
+		int start;
+
+		while ((start = text.indexOf(tokenMarker, copied)) >= 0) {
+			int end = text.indexOf(tokenMarker, start + tokenMarker.length());
+			if (end < 0) break;
+
+			int index = parseIndex(text, start + tokenMarker.length(), end);
+
+			if (index < 0) { // not a token, continue after the first marker
+				ret.append(text, copied, start + 1);
+				copied = start + 1;
+				continue;
+			}
+
+			String name = getCurrentName(tokenized.get(index));
+
+			ret.append(text, copied, start);
+			copied = end + tokenMarker.length();
+
+			if (text.startsWith(constantSuffix, copied)) {
+				if (name.toUpperCase(Locale.ROOT).equals(name)) ret.append(" constant");
+				copied += constantSuffix.length();
+			} else {
+				ret.append(html ? HtmlUtil.escape(name) : name);
+			}
+		}
+
+		ret.append(text, copied, text.length());
+
+		return ret.toString();
+	}
+
+	private int parseIndex(String str, int start, int end) {
+		if (start == end || end - start > 6) return -1;
+
+		int ret = 0;
+
+		for (int i = start; i < end; i++) {
+			int digit = Character.digit(str.charAt(i), 36);
+			if (digit < 0 || Character.isUpperCase(str.charAt(i))) return -1;
+
+			ret = ret * 36 + digit;
+		}
+
+		return ret < tokenized.size() ? ret : -1;
+	}
+
+	private void addFixedName(Matchable<?> matchable, String name) {
+		fixedNames.putIfAbsent(matchable, name);
+	}
+
+	/**
+	 * Determine whether str occurs in a string constant or comment of cls or its inner classes.
+	 */
+	private static boolean containsText(ClassInstance cls, String str) {
+		if (contains(cls.getMappedComment(), str)) return true;
+
+		for (String constant : cls.getStrings()) {
+			if (constant.contains(str)) return true;
+		}
+
+		for (MethodInstance method : cls.getMethods()) {
+			if (contains(method.getMappedComment(), str)) return true;
+
+			for (MethodVarInstance arg : method.getArgs()) {
+				if (contains(arg.getMappedComment(), str)) return true;
+			}
+
+			for (MethodVarInstance var : method.getVars()) {
+				if (contains(var.getMappedComment(), str)) return true;
+			}
+		}
+
+		for (FieldInstance field : cls.getFields()) {
+			if (contains(field.getMappedComment(), str)) return true;
+		}
+
+		for (ClassInstance innerCls : cls.getInnerClasses()) {
+			if (containsText(innerCls, str)) return true;
+		}
+
+		return false;
+	}
+
+	private static boolean contains(String text, String str) {
+		return text != null && text.contains(str);
+	}
+
+	/**
+	 * Determine whether matchable's name may change with the naming state and has no special meaning to decompilers.
+	 */
+	private static boolean isRenameable(Matchable<?> matchable) {
+		if (matchable instanceof MethodVarInstance) return true;
+		if (!(matchable instanceof MemberInstance<?>)) return false;
+
+		MemberInstance<?> member = (MemberInstance<?>) matchable;
+		ClassInstance cls = member.getCls();
+		if (!cls.isInput() || !member.isReal() || member.isSynthetic()) return false; // only input classes have hierarchy data
+
+		if (member instanceof MethodInstance) {
+			String name = member.getName();
+			if (name.startsWith("<")) return false;
+			if (cls.isEnum() && (name.equals("values") || name.equals("valueOf"))) return false;
+
+			for (MemberInstance<?> m : member.getAllHierarchyMembers()) {
+				if (!m.getCls().isInput()) return false; // name fixed by a library method
+			}
+		}
+
+		return true;
+	}
+
+	private static final String constantSuffix = "$c";
+
+	private final NameType nameType;
+	private final ClassInstance cls;
+	private final String tokenMarker;
+	private final Map<Object, String> tokens = new IdentityHashMap<>(); // keyed by matchable or method hierarchy
+	private final List<Matchable<?>> tokenized = new ArrayList<>();
+	private final Map<Matchable<?>, String> fixedNames = new IdentityHashMap<>();
+}
@@ -16,11 +16,12 @@ import matcher.type.ClassInstance;
 
 public class Procyon implements Decompiler {
 	@Override
-	public String decompile(ClassInstance cls, ClassFeatureExtractor env, NameType nameType) {
+	public String decompile(ClassInstance cls, ClassFeatureExtractor env, ClassFileSnapshot classFiles) {
+		NameType nameType = classFiles.getNameType();
 		DecompilerSettings settings = DecompilerSettings.javaDefaults();
 		settings.setShowSyntheticMembers(true);
 		settings.setTypeLoader(new CompositeTypeLoader(
-				new TypeLoader(env, nameType),
+				new TypeLoader(env, classFiles),
 				new ClasspathTypeLoader()));
 
 		PlainTextOutput out = new PlainTextOutput();
@@ -31,9 +32,10 @@ public class Procyon implements Decompiler {
 	}
 
 	private static class TypeLoader implements ITypeLoader {
-		TypeLoader(ClassFeatureExtractor env, NameType nameType) {
+		TypeLoader(ClassFeatureExtractor env, ClassFileSnapshot snapshot) {
 			this.env = env;
-			this.nameType = nameType;
+			this.nameType = snapshot.getNameType();
+			this.snapshot = snapshot;
 		}
 
 		@Override
@@ -56,7 +58,7 @@ public class Procyon implements Decompiler {
 				return false;
 			}
 
-			byte[] data = cls.serialize(nameType);
+			byte[] data = snapshot.get(cls);
 
 			buffer.reset(data.length);
 			buffer.putByteArray(data, 0, data.length);
@@ -73,6 +75,7 @@ public class Procyon implements Decompiler {
 
 		private final ClassFeatureExtractor env;
 		private final NameType nameType;
+		private final ClassFileSnapshot snapshot;
 
 		private final Set<String> warnedClasses = new HashSet<>();
 	}
@@ -0,0 +1,508 @@
+package matcher.srcprocess;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+import matcher.NameType;
+import matcher.type.ClassEnvironment;
+import matcher.type.ClassInstance;
+import matcher.type.FieldInstance;
+import matcher.type.MethodInstance;
+import matcher.type.MethodVarInstance;
+
+/**
+ * Cache for decompiled and decorated class sources.
+ *
+ * <p>Entries are keyed by the class content, the name type, the decompiler and a fingerprint of all names the class
+ * references under that name type plus the mapped comments it shows, so renaming or matching anything the class doesn't
+ * refer to keeps its entry valid. The in-memory LRU part is optionally backed by a directory holding one file per
+ * entry, which gets trimmed to {@link #maxDirSize} by evicting the least recently used files.
+ *
+ * <p>On a miss the source is produced from a template, which got decompiled and decorated with {@link NameTokens} in
+ * place of member and variable names. Changes to those names thus only require substituting the tokens, decompiling
+ * again is limited to changes in the referenced class names.
+ */
+public final class SourceCache {
+	/**
+	 * @param timeout time limit in ms for a single decompiler run, 0 for no limit
+	 */
+	public SourceCache(int maxEntries, Path dir, long timeout) {
+		this.maxEntries = maxEntries;
+		this.dir = dir;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Get the decorated source for cls, decompiling it on a cache miss.
+	 */
+	public String get(ClassEnvironment env, ClassInstance cls, NameType nameType, BuiltinDecompiler decompiler) {
+		String key = getKey(cls, nameType, decompiler);
+		String ret;
+
+		synchronized (entries) {
+			ret = entries.get(key);
+		}
+
+		if (ret != null) return ret;
+
+		if (dir != null) {
+			ret = readFile(key);
+
+			if (ret != null) {
+				put(key, ret);
+				return ret;
+			}
+		}
+
+		Template template = getTemplate(env, cls, nameType, decompiler);
+
+		if (template != null && template.hasNameClash()) {
+			// the decompiler only saw distinct tokens, it has to see the actual names to resolve the clash
+			template = decompile(env, cls, nameType, decompiler, false);
+		}
+
+		if (template != null) {
+			ret = template.render();
+			put(key, ret);
+
+			// fallback output isn't persisted, a later session may try the preferred decompiler again
+			if (dir != null && template.decompiler == decompiler) writeFile(key, ret);
+		} else { // not persisted either
+			ret = getBytecodeListing(cls, nameType);
+			put(key, ret);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Get the tokenized source for cls, decompiling only if there is none yet or a class name it depends on changed.
+	 *
+	 * <p>Concurrent requests for the same template, e.g. from prefetching and the selection, share one decompilation.
+	 *
+	 * @return template or null if all decompilers exceeded the time limit
+	 */
+	private Template getTemplate(ClassEnvironment env, ClassInstance cls, NameType nameType, BuiltinDecompiler decompiler) {
+		String key = getTemplateKey(cls, nameType, decompiler);
+		CompletableFuture<Template> future;
+		boolean running;
+
+		synchronized (templates) {
+			Template ret = templates.get(key);
+			if (ret != null && ret.tokens.isValid()) return ret;
+
+			future = pendingTemplates.get(key);
+			running = future != null;
+
+			if (!running) {
+				future = new CompletableFuture<>();
+				pendingTemplates.put(key, future);
+			}
+		}
+
+		if (running) {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+				if (e.getCause() instanceof Error) throw (Error) e.getCause();
+
+				throw e;
+			}
+		}
+
+		try {
+			Template ret = decompile(env, cls, nameType, decompiler, true);
+
+			synchronized (templates) {
+				if (ret != null) templates.put(key, ret);
+				pendingTemplates.remove(key);
+			}
+
+			future.complete(ret);
+
+			return ret;
+		} catch (Throwable t) {
+			synchronized (templates) {
+				pendingTemplates.remove(key);
+			}
+
+			future.completeExceptionally(t);
+
+			throw t;
+		}
+	}
+
+	/**
+	 * Decompile cls into a template, falling back to the other decompilers if the preferred one exceeds the time limit.
+	 *
+	 * <p>Decompilers that timed out for cls before are skipped right away.
+	 *
+	 * @param tokenize whether to decompile with {@link NameTokens}, otherwise the template holds the current names
+	 */
+	private Template decompile(ClassEnvironment env, ClassInstance cls, NameType nameType, BuiltinDecompiler preferred, boolean tokenize) {
+		List<BuiltinDecompiler> decompilers = new ArrayList<>();
+		decompilers.add(preferred);
+
+		for (BuiltinDecompiler decompiler : BuiltinDecompiler.values()) {
+			if (decompiler != preferred) decompilers.add(decompiler);
+		}
+
+		for (BuiltinDecompiler decompiler : decompilers) {
+			if (decompiler.hasTimedOut(cls)) continue;
+
+			NameTokens tokens = tokenize ? new NameTokens(nameType, cls) : null; // per attempt, an abandoned run may still be using the previous one
+			ClassFileSnapshot classFiles = tokens != null ? new ClassFileSnapshot(tokens) : new ClassFileSnapshot(nameType);
+			String src;
+
+			if (timeout <= 0) {
+				src = decompiler.decompile(env, cls, classFiles);
+			} else {
+				try {
+					src = decompiler.decompile(env, cls, classFiles, timeout);
+				} catch (TimeoutException e) {
+					System.out.printf("decompiling %s with %s exceeded the time limit%n", cls, decompiler.name);
+					continue;
+				}
+			}
+
+			String html = tokens != null ? SrcDecorator.decorate(src, cls, tokens, true) : SrcDecorator.decorate(src, cls, nameType, true);
+
+			if (decompiler != preferred) {
+				html = String.format("<span class=\"comment\">// %s exceeded the time limit, decompiled with %s</span>%n%s",
+						preferred.name, decompiler.name, html);
+			}
+
+			return new Template(html, tokens, decompiler);
+		}
+
+		return null;
+	}
+
+	private static String getBytecodeListing(ClassInstance cls, NameType nameType) {
+		StringWriter writer = new StringWriter();
+
+		try (PrintWriter pw = new PrintWriter(writer)) {
+			printBytecode(cls, nameType, pw);
+		}
+
+		return String.format("<span class=\"comment\">// all decompilers exceeded the time limit, showing bytecode</span>%n%s",
+				HtmlUtil.escape(writer.toString()));
+	}
+
+	private static void printBytecode(ClassInstance cls, NameType nameType, PrintWriter out) {
+		if (cls.getMergedAsmNode() == null) return;
+
+		new ClassReader(cls.serialize(nameType)).accept(new TraceClassVisitor(out), 0);
+
+		for (ClassInstance innerCls : cls.getInnerClasses()) {
+			out.println();
+			printBytecode(innerCls, nameType, out);
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+
+		synchronized (templates) {
+			templates.clear();
+		}
+
+		synchronized (contentHashes) {
+			contentHashes.clear();
+		}
+	}
+
+	private void put(String key, String src) {
+		synchronized (entries) {
+			entries.put(key, src);
+		}
+	}
+
+	private String getKey(ClassInstance cls, NameType nameType, BuiltinDecompiler decompiler) {
+		MessageDigest digest = createDigest();
+
+		digest.update(getContentHash(cls));
+		digest.update(nameType.name().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(decompiler.name().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		updateNameFingerprint(cls, nameType, digest);
+		updateCommentFingerprint(cls, digest);
+
+		return toHex(digest.digest());
+	}
+
+	private String getTemplateKey(ClassInstance cls, NameType nameType, BuiltinDecompiler decompiler) {
+		MessageDigest digest = createDigest();
+
+		digest.update(getContentHash(cls));
+		digest.update(nameType.name().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(decompiler.name().getBytes(StandardCharsets.UTF_8));
+		updateCommentFingerprint(cls, digest); // comments get rendered into the template
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Hash of the unmapped class and its inner classes, which don't change for the lifetime of the ClassInstance.
+	 */
+	private byte[] getContentHash(ClassInstance cls) {
+		byte[] ret;
+
+		synchronized (contentHashes) {
+			ret = contentHashes.get(cls);
+		}
+
+		if (ret == null) {
+			MessageDigest digest = createDigest();
+			updateContentHash(cls, digest);
+			ret = digest.digest();
+
+			synchronized (contentHashes) {
+				contentHashes.put(cls, ret);
+			}
+		}
+
+		return ret;
+	}
+
+	private static void updateContentHash(ClassInstance cls, MessageDigest digest) {
+		digest.update(cls.serialize(NameType.PLAIN));
+
+		for (ClassInstance innerCls : cls.getInnerClasses()) {
+			updateContentHash(innerCls, digest);
+		}
+	}
+
+	/**
+	 * Hash the names referenced by cls and its inner classes as they appear in the remapped class files.
+	 *
+	 * <p>All class, member and local variable names the decompiler may emit are part of the constant pool, the
+	 * utf8 entries are thus sufficient.
+	 */
+	private static void updateNameFingerprint(ClassInstance cls, NameType nameType, MessageDigest digest) {
+		byte[] data = cls.serialize(nameType);
+		ClassReader reader = new ClassReader(data);
+
+		for (int i = 1, max = reader.getItemCount(); i < max; i++) {
+			int offset = reader.getItem(i);
+			if (offset <= 0 || data[offset - 1] != utf8Tag) continue;
+
+			int len = reader.readUnsignedShort(offset);
+			digest.update(data, offset, len + 2); // includes the length as a separator
+		}
+
+		for (ClassInstance innerCls : cls.getInnerClasses()) {
+			updateNameFingerprint(innerCls, nameType, digest);
+		}
+	}
+
+	/**
+	 * Hash the mapped comments {@link SrcDecorator} adds for cls and its inner classes, members and args.
+	 */
+	private static void updateCommentFingerprint(ClassInstance cls, MessageDigest digest) {
+		updateComment(cls.getMappedComment(), digest);
+
+		for (MethodInstance method : cls.getMethods()) {
+			updateComment(method.getMappedComment(), digest);
+
+			for (MethodVarInstance arg : method.getArgs()) {
+				updateComment(arg.getMappedComment(), digest);
+			}
+		}
+
+		for (FieldInstance field : cls.getFields()) {
+			updateComment(field.getMappedComment(), digest);
+		}
+
+		for (ClassInstance innerCls : cls.getInnerClasses()) {
+			updateCommentFingerprint(innerCls, digest);
+		}
+	}
+
+	private static void updateComment(String comment, MessageDigest digest) {
+		if (comment == null) {
+			digest.update((byte) 0);
+		} else {
+			digest.update((byte) 1);
+			digest.update(comment.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+	}
+
+	private String readFile(String key) {
+		Path file = dir.resolve(key+fileSuffix);
+
+		try {
+			String ret = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis())); // recency for trimDir
+
+			return ret;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private void writeFile(String key, String src) {
+		try {
+			Files.createDirectories(dir);
+
+			Path tmp = Files.createTempFile(dir, key, ".tmp");
+			Files.write(tmp, src.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, dir.resolve(key+fileSuffix), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		if (writeCount.getAndIncrement() % trimInterval == 0) trimDir(); // also on the first write for leftovers
+	}
+
+	/**
+	 * Delete the least recently used files until the directory is within {@link #maxDirSize}.
+	 */
+	private void trimDir() {
+		if (!trimming.compareAndSet(false, true)) return;
+
+		try (Stream<Path> stream = Files.list(dir)) {
+			List<CacheFile> files = new ArrayList<>();
+			long totalSize = 0;
+
+			for (Path file : (Iterable<Path>) stream::iterator) {
+				if (!file.getFileName().toString().endsWith(fileSuffix)) continue;
+
+				try {
+					BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+					files.add(new CacheFile(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+					totalSize += attrs.size();
+				} catch (NoSuchFileException e) {
+					// removed concurrently
+				}
+			}
+
+			if (totalSize <= maxDirSize) return;
+
+			files.sort(Comparator.comparingLong(f -> f.time));
+
+			for (CacheFile file : files) {
+				if (totalSize <= maxDirSize) break;
+
+				Files.deleteIfExists(file.path);
+				totalSize -= file.size;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			trimming.set(false);
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toHex(byte[] data) {
+		char[] ret = new char[data.length * 2];
+
+		for (int i = 0; i < data.length; i++) {
+			ret[i * 2] = hexDigits[(data[i] >> 4) & 0xf];
+			ret[i * 2 + 1] = hexDigits[data[i] & 0xf];
+		}
+
+		return new String(ret);
+	}
+
+	private static final class Template {
+		Template(String html, NameTokens tokens, BuiltinDecompiler decompiler) {
+			this.html = html;
+			this.tokens = tokens;
+			this.decompiler = decompiler;
+		}
+
+		String render() {
+			return tokens != null ? tokens.apply(html, true) : html;
+		}
+
+		boolean hasNameClash() {
+			return tokens != null && tokens.hasNameClash();
+		}
+
+		final String html;
+		final NameTokens tokens; // null if html holds the actual names
+		final BuiltinDecompiler decompiler; // the one that produced html, differs from the requested one for fallbacks
+	}
+
+	private static final class CacheFile {
+		CacheFile(Path path, long size, long time) {
+			this.path = path;
+			this.size = size;
+			this.time = time;
+		}
+
+		final Path path;
+		final long size;
+		final long time;
+	}
+
+	private static final byte utf8Tag = 1; // CONSTANT_Utf8
+	private static final String fileSuffix = ".html";
+	private static final long maxDirSize = 256L << 20; // bytes
+	private static final int trimInterval = 64; // writes between directory size checks
+	private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+	private final int maxEntries;
+	private final Path dir;
+	private final long timeout;
+	private final Map<String, String> entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > maxEntries;
+		}
+	};
+	private final Map<String, Template> templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+			return size() > maxEntries;
+		}
+	};
+	private final Map<String, CompletableFuture<Template>> pendingTemplates = new HashMap<>(); // guarded by templates
+	private final Map<ClassInstance, byte[]> contentHashes = new WeakHashMap<>();
+	private final AtomicInteger writeCount = new AtomicInteger();
+	private final AtomicBoolean trimming = new AtomicBoolean();
+}
@@ -0,0 +1,225 @@
+package matcher.srcprocess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.DoubleConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import matcher.NameType;
+import matcher.TaskControl;
+import matcher.bcremap.RemapTable;
+import matcher.type.ClassEnvironment;
+import matcher.type.ClassInstance;
+import matcher.type.LocalClassEnv;
+
+/**
+ * Decompiles all input classes of one side into a source tree.
+ *
+ * <p>Classes are processed in windows of {@link #windowSize}, each window decompiled in parallel and then written in
+ * name order, which bounds the memory used for pending sources and keeps the output deterministic. Inner classes are
+ * part of their outermost class' source. A class exceeding the timeout or failing otherwise is replaced by a stub
+ * describing the problem, so the resulting trees stay comparable. A class whose file name is already taken by a
+ * class earlier in name order gets skipped.
+ */
+public final class SourceExporter {
+	/**
+	 * Export the sources of all input classes in side.
+	 *
+	 * @param out target directory, or zip file if the name ends with .zip or .jar
+	 * @param decorate whether to apply mapped names and comments through {@link SrcDecorator}
+	 * @param timeout maximum time in ms a single class may take, 0 for no limit
+	 * @return number of classes that couldn't be exported
+	 */
+	public static int export(ClassEnvironment env, LocalClassEnv side, Path out,
+			NameType nameType, BuiltinDecompiler decompiler, boolean decorate, long timeout,
+			DoubleConsumer progressReceiver) throws IOException {
+		List<ClassInstance> classes = new ArrayList<>();
+
+		for (ClassInstance cls : side.getClasses()) {
+			if (cls.isInput() && cls.getOuterClass() == null && cls.getAsmNodes() != null) {
+				classes.add(cls);
+			}
+		}
+
+		classes.sort(ClassInstance.nameComparator);
+
+		Set<String> fileNames = new HashSet<>();
+		int failed = 0;
+
+		for (Iterator<ClassInstance> it = classes.iterator(); it.hasNext(); ) {
+			ClassInstance cls = it.next();
+			String fileName = getFileName(cls, nameType);
+
+			if (!fileNames.add(fileName)) {
+				System.out.printf("skipping %s, its file name %s is already in use%n", cls, fileName);
+				it.remove();
+				failed++;
+			}
+		}
+
+		RemapTable remapTable = side.getRemapTable(nameType);
+		if (remapTable != null && nameType != NameType.PLAIN) remapTable.build(progress -> { });
+
+		long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, task -> {
+			Thread ret = new Thread(task, "source export");
+			ret.setDaemon(true);
+
+			return ret;
+		});
+
+		try (Output output = isArchive(out) ? new ZipOutput(out) : new DirOutput(out)) {
+			for (int start = 0; start < classes.size(); start += windowSize) {
+				TaskControl.checkCancelled(progressReceiver);
+
+				List<ClassInstance> window = classes.subList(start, Math.min(start + windowSize, classes.size()));
+				List<Job> jobs = new ArrayList<>(window.size());
+
+				for (ClassInstance cls : window) {
+					Job job = new Job();
+					job.future = executor.submit(() -> {
+						// the timed variant starts the clock once it got a permit and releases the permit on timeout
+						String src = timeout > 0
+								? decompiler.decompile(env, cls, new ClassFileSnapshot(nameType), timeout)
+								: decompiler.decompile(env, cls, nameType);
+
+						return decorate ? SrcDecorator.decorate(src, cls, nameType, false) : src;
+					});
+					jobs.add(job);
+				}
+
+				// every class gets its own timeout once running, allow for all rounds plus one for permits held elsewhere
+				long deadline = timeout > 0 ? System.nanoTime() + timeoutNanos * ((window.size() + parallelism - 1) / parallelism + 1) : 0;
+
+				for (int i = 0; i < jobs.size(); i++) {
+					ClassInstance cls = window.get(i);
+					String src = await(jobs.get(i), deadline);
+
+					if (src == null) {
+						System.out.printf("source export failed for %s: %s%n", cls, jobs.get(i).error);
+						src = String.format("/* source export failed: %s */%n", jobs.get(i).error);
+						failed++;
+					}
+
+					output.write(getFileName(cls, nameType), src);
+				}
+
+				progressReceiver.accept((double) (start + window.size()) / classes.size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return failed;
+	}
+
+	private static boolean isArchive(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ENGLISH);
+
+		return name.endsWith(".zip") || name.endsWith(".jar");
+	}
+
+	private static String getFileName(ClassInstance cls, NameType nameType) {
+		return Objects.requireNonNullElse(cls.getName(nameType), cls.getName()).concat(".java");
+	}
+
+	/**
+	 * Wait for a job until deadline, the per class timeout is applied by the decompiler.
+	 *
+	 * @param deadline {@link System#nanoTime} by which the job has to be done, 0 to wait without limit
+	 * @return source or null if the job failed or timed out, with the reason in job.error
+	 */
+	private static String await(Job job, long deadline) throws InterruptedIOException {
+		try {
+			if (deadline == 0) {
+				return job.future.get();
+			} else {
+				return job.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+		} catch (TimeoutException e) {
+			job.future.cancel(true); // interrupts waiting for a permit
+			job.error = "no decompiler available in time";
+			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) {
+				job.error = "timeout";
+			} else {
+				e.getCause().printStackTrace();
+				job.error = e.getCause().toString();
+			}
+
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("source export interrupted");
+		}
+	}
+
+	private static class Job {
+		Future<String> future;
+		String error;
+	}
+
+	private interface Output extends Closeable {
+		void write(String file, String content) throws IOException;
+	}
+
+	private static class DirOutput implements Output {
+		DirOutput(Path dir) {
+			this.dir = dir;
+		}
+
+		@Override
+		public void write(String file, String content) throws IOException {
+			Path path = dir.resolve(file);
+			Files.createDirectories(path.getParent());
+			Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() { }
+
+		private final Path dir;
+	}
+
+	private static class ZipOutput implements Output {
+		ZipOutput(Path file) throws IOException {
+			this.zos = new ZipOutputStream(Files.newOutputStream(file), StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void write(String file, String content) throws IOException {
+			zos.putNextEntry(new ZipEntry(file));
+			zos.write(content.getBytes(StandardCharsets.UTF_8));
+			zos.closeEntry();
+		}
+
+		@Override
+		public void close() throws IOException {
+			zos.close();
+		}
+
+		private final ZipOutputStream zos;
+	}
+
+	private static final int windowSize = 256;
+}
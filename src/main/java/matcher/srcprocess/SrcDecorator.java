@@ -31,6 +31,26 @@ public class SrcDecorator {
 	}
 
 	public static String decorate(String src, ClassInstance cls, NameType nameType) {
+		return decorate(src, cls, nameType, true);
+	}
+
+	/**
+	 * Apply names and comments to decompiled source, producing either html for display or plain Java source.
+	 */
+	public static String decorate(String src, ClassInstance cls, NameType nameType, boolean html) {
+		return decorate(src, cls, nameType, null, html);
+	}
+
+	/**
+	 * Decorate source decompiled from class files with tokens in place of the renameable names.
+	 *
+	 * <p>The tokens are kept in the output, including comments referring to them, for {@link NameTokens#apply}.
+	 */
+	static String decorate(String src, ClassInstance cls, NameTokens tokens, boolean html) {
+		return decorate(src, cls, tokens.getNameType(), tokens, html);
+	}
+
+	private static String decorate(String src, ClassInstance cls, NameType nameType, NameTokens tokens, boolean html) {
 		if (cls.getOuterClass() != null) {
 			// replace <outer>.<inner> with <outer>$<inner> since . is not a legal identifier within class names and thus gets rejected by JavaParser
 
@@ -66,10 +86,12 @@ public class SrcDecorator {
 		}
 
 		TypeResolver resolver = new TypeResolver();
-		resolver.setup(cls, nameType, cu);
+		resolver.setup(cls, nameType, tokens, cu);
 
 		cu.accept(remapVisitor, resolver);
 
+		if (!html) return cu.toString();
+
 		HtmlPrinter printer = new HtmlPrinter(resolver);
 		cu.accept(printer, null);
 
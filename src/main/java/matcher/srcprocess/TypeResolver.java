@@ -33,9 +33,17 @@ import matcher.type.MethodInstance;
 
 class TypeResolver {
 	public void setup(ClassInstance rootCls, NameType nameType, CompilationUnit cu) {
+		setup(rootCls, nameType, null, cu);
+	}
+
+	/**
+	 * Set up resolution for a source decompiled with tokens in place of the renameable names, if tokens is not null.
+	 */
+	public void setup(ClassInstance rootCls, NameType nameType, NameTokens tokens, CompilationUnit cu) {
 		this.rootCls = rootCls;
 		this.env = rootCls.getEnv();
 		this.nameType = nameType;
+		this.tokens = tokens;
 
 		if (cu.getPackageDeclaration().isPresent()) {
 			pkg = cu.getPackageDeclaration().get().getNameAsString().replace('.', '/');
@@ -121,6 +129,14 @@ class TypeResolver {
 			name = "<init>";
 		} else {
 			name = methodDecl.getName().getIdentifier();
+
+			Matchable<?> token = resolveToken(name);
+
+			if (token instanceof MethodInstance) {
+				for (MethodInstance method : ((MethodInstance) token).getAllHierarchyMembers()) {
+					if (method.getCls() == cls) return method;
+				}
+			}
 		}
 
 		return cls.getMethod(name, desc, nameType);
@@ -131,6 +147,9 @@ class TypeResolver {
 		if (cls == null) return null;
 
 		String name = var.getName().getIdentifier();
+		Matchable<?> token = resolveToken(name);
+		if (token instanceof FieldInstance) return (FieldInstance) token;
+
 		String desc = toDesc(var.getType(), rootCls);
 
 		return cls.getField(name, desc, nameType);
@@ -141,6 +160,9 @@ class TypeResolver {
 		if (cls == null) return null;
 
 		String name = var.getName().getIdentifier();
+		Matchable<?> token = resolveToken(name);
+		if (token instanceof FieldInstance) return (FieldInstance) token;
+
 		String desc = !cls.isPrimitive() ? "L"+cls.getName(nameType)+";" : cls.getId();
 
 		return cls.getField(name, desc, nameType);
@@ -258,12 +280,26 @@ class TypeResolver {
 	}
 
 	public String getName(Matchable<?> e) {
-		return e.getName(nameType);
+		String token = tokens != null ? tokens.get(e) : null;
+
+		return token != null ? token : e.getName(nameType);
+	}
+
+	/**
+	 * Check whether name is a token standing in for a renameable name.
+	 */
+	public boolean isToken(String name) {
+		return resolveToken(name) != null;
+	}
+
+	private Matchable<?> resolveToken(String name) {
+		return tokens != null ? tokens.resolve(name) : null;
 	}
 
 	private ClassInstance rootCls;
 	private ClassEnv env;
 	private NameType nameType;
+	private NameTokens tokens;
 	private String pkg;
 	private final Map<String, String> imports = new HashMap<>();
 	private final List<String> wildcardImports = new ArrayList<>();
@@ -1,6 +1,7 @@
 package matcher.type;
 
 import matcher.NameType;
+import matcher.bcremap.RemapTable;
 
 import java.util.Collection;
 
@@ -33,6 +34,13 @@ public interface ClassEnv {
 
 	ClassInstance getClsById(String id, NameType nameType);
 
+	/**
+	 * Get the remapping lookup table for nameType, null if the environment doesn't maintain one.
+	 */
+	default RemapTable getRemapTable(NameType nameType) {
+		return null;
+	}
+
 	ClassEnvironment getGlobal();
 	ClassEnv getOther();
 }
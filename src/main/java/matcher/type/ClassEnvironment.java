@@ -5,6 +5,8 @@ import matcher.Util;
 import matcher.classifier.ClassifierUtil;
 import matcher.classifier.MatchingCache;
 import matcher.config.ProjectConfig;
+import matcher.serdes.MatchesJournal;
+import matcher.srcprocess.ClassFileSnapshot;
 import matcher.srcprocess.Decompiler;
 import matcher.type.Signature.ClassSignature;
 import org.objectweb.asm.ClassReader;
@@ -21,8 +23,11 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleConsumer;
 import java.util.regex.Pattern;
 
@@ -101,6 +106,12 @@ public final class ClassEnvironment implements ClassEnv {
 		extractorA.reset();
 		extractorB.reset();
 		cache.clear();
+		matchCounter.reset();
+
+		if (journal != null) {
+			Util.closeSilently(journal);
+			journal = null;
+		}
 	}
 
 	public void addOpenFileSystem(FileSystem fs) {
@@ -293,6 +304,10 @@ public final class ClassEnvironment implements ClassEnv {
 	}
 
 	public String decompile(Decompiler decompiler, ClassInstance cls, NameType nameType) {
+		return decompile(decompiler, cls, new ClassFileSnapshot(nameType));
+	}
+
+	public String decompile(Decompiler decompiler, ClassInstance cls, ClassFileSnapshot classFiles) {
 		ClassFeatureExtractor extractor;
 
 		if (extractorA.getLocalClsById(cls.getId()) == cls) {
@@ -303,7 +318,7 @@ public final class ClassEnvironment implements ClassEnv {
 			throw new IllegalArgumentException("unknown class: "+cls);
 		}
 
-		return decompiler.decompile(cls, extractor, nameType);
+		return decompiler.decompile(cls, extractor, classFiles);
 	}
 
 	@Override
@@ -545,6 +560,70 @@ public final class ClassEnvironment implements ClassEnv {
 		return cache;
 	}
 
+	/**
+	 * @return the journal receiving match and mapping changes or null if none is attached
+	 */
+	public MatchesJournal getJournal() {
+		return journal;
+	}
+
+	public void setJournal(MatchesJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Get the counter tracking class match and matchability changes on either side.
+	 */
+	public int getMatchVersion() {
+		return matchVersion.get();
+	}
+
+	void onMatchChange() {
+		matchVersion.incrementAndGet();
+	}
+
+	/**
+	 * Get a version covering all class, member, arg and var match changes and class matchability changes.
+	 */
+	public long getMatchStateVersion() {
+		return (long) matchVersion.get() << 32 | matchCounter.getVersion() & 0xffffffffL;
+	}
+
+	/**
+	 * Run reader against a single match state while the matches may change concurrently.
+	 *
+	 * <p>Matches only change on the FX thread, but background tasks read them at any time, e.g. while a match task
+	 * commits its passes. reader gets repeated until no match changed while it ran. An exception only propagates if
+	 * nothing changed either, otherwise it is taken as the result of reading a changing state. Cancellation isn't
+	 * retried.
+	 */
+	public <T> T readConsistently(Callable<T> reader) throws Exception {
+		for (;;) {
+			long version = getMatchStateVersion();
+			T ret;
+
+			try {
+				ret = reader.call();
+			} catch (CancellationException | InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				if (getMatchStateVersion() == version) throw e;
+
+				continue;
+			}
+
+			if (getMatchStateVersion() == version) return ret;
+			if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * Get the running match counts of side A.
+	 */
+	public MatchCounter getMatchCounter() {
+		return matchCounter;
+	}
+
 	private final List<InputFile> cpFiles = new ArrayList<>();
 	private final Map<String, ClassInstance> sharedClasses = new HashMap<>();
 	private final List<FileSystem> openFileSystems = new ArrayList<>();
@@ -552,6 +631,9 @@ public final class ClassEnvironment implements ClassEnv {
 	private final ClassFeatureExtractor extractorA = new ClassFeatureExtractor(this);
 	private final ClassFeatureExtractor extractorB = new ClassFeatureExtractor(this);
 	private final MatchingCache cache = new MatchingCache();
+	private volatile MatchesJournal journal;
+	private final AtomicInteger matchVersion = new AtomicInteger();
+	private final MatchCounter matchCounter = new MatchCounter(this);
 
 	private boolean inputsBeforeClassPath;
 	private Pattern nonObfuscatedClassPatternA;
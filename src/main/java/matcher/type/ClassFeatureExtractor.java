@@ -2,6 +2,7 @@ package matcher.type;
 
 import matcher.NameType;
 import matcher.Util;
+import matcher.bcremap.RemapTable;
 import matcher.type.Analysis.CommonClasses;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
@@ -140,6 +141,10 @@ public class ClassFeatureExtractor implements LocalClassEnv {
 		classPathIndex.clear();
 		classes.clear();
 		arrayClasses.clear();
+
+		synchronized (remapTables) {
+			Arrays.fill(remapTables, null);
+		}
 	}
 
 	@Override
@@ -607,6 +612,20 @@ public class ClassFeatureExtractor implements LocalClassEnv {
 		return cls;
 	}
 
+	@Override
+	public RemapTable getRemapTable(NameType nameType) {
+		synchronized (remapTables) {
+			RemapTable ret = remapTables[nameType.ordinal()];
+
+			if (ret == null) {
+				ret = new RemapTable(this, nameType);
+				remapTables[nameType.ordinal()] = ret;
+			}
+
+			return ret;
+		}
+	}
+
 	@Override
 	public ClassEnvironment getGlobal() {
 		return env;
@@ -624,6 +643,7 @@ public class ClassFeatureExtractor implements LocalClassEnv {
 	private final Map<String, ClassInstance> classes = new HashMap<>();
 	private final Map<String, ClassInstance> roClasses = Collections.unmodifiableMap(classes);
 	private final Map<String, ClassInstance> arrayClasses = new HashMap<>();
+	private final RemapTable[] remapTables = new RemapTable[NameType.values().length];
 
 	private int initStep;
 }
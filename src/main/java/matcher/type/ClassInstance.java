@@ -6,14 +6,17 @@ import matcher.Util;
 import matcher.bcremap.AsmClassRemapper;
 import matcher.bcremap.AsmRemapper;
 import matcher.classifier.ClassifierUtil;
+import matcher.serdes.MatchesJournal;
 import matcher.type.Signature.ClassSignature;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ClassInstance implements Matchable<ClassInstance> {
 	/**
@@ -243,6 +246,10 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 		return env;
 	}
 
+	MatchesJournal getJournal() {
+		return isShared() ? null : env.getGlobal().getJournal();
+	}
+
 	public ClassNode[] getAsmNodes() {
 		return asmNodes;
 	}
@@ -282,7 +289,12 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 	public boolean setMatchable(boolean matchable) {
 		if (!matchable && matchedClass != null) return false;
 
+		MatchesJournal journal;
+		if (this.matchable != matchable && (journal = getJournal()) != null) journal.logMatchable(this, matchable);
+
 		this.matchable = matchable;
+		onNameChange();
+		env.getGlobal().onMatchChange();
 
 		return true;
 	}
@@ -296,7 +308,11 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 		assert cls == null || isMatchable();
 		assert cls == null || cls.getEnv() != env && !cls.getEnv().isShared();
 
+		boolean wasMatched = matchedClass != null;
 		this.matchedClass = cls;
+		env.getGlobal().getMatchCounter().onMatchChange(this, wasMatched, cls != null);
+		onNameChange();
+		env.getGlobal().onMatchChange();
 	}
 
 	@Override
@@ -494,73 +510,80 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 
 		MethodInstance ret = null;
 
-		methodLoop: for (MethodInstance method : methods) {
+		for (MethodInstance method : methods) {
 			String mappedName = method.getName(nameType);
 
 			if (mappedName == null || !name.equals(mappedName)) {
 				continue;
 			}
 
-			if (desc != null) {
-				assert desc.startsWith("(");
-				int idx = 0;
-				int pos = 1;
-				boolean last = false;
-
-				do {
-					char c = desc.charAt(pos);
-					ClassInstance match;
-
-					if (c == ')') {
-						if (idx != method.args.length) continue methodLoop;
-						last = true;
-						pos++;
-						c = desc.charAt(pos);
-						match = method.retType;
-					} else {
-						if (idx >= method.args.length) continue methodLoop;
-						match = method.args[idx].type;
-					}
+			if (desc != null && !hasDesc(method, desc, nameType)) continue;
 
-					if (c == '[') { // array cls
-						int dims = 1;
-						while ((c = desc.charAt(++pos)) == '[') dims++;
+			if (ret != null) return null; // non-unique
 
-						if (match.getArrayDimensions() != dims) continue methodLoop;
-						match = match.elementClass;
-					} else {
-						if (match.isArray()) continue methodLoop;
-					}
+			ret = method;
+		}
 
-					int end;
+		return ret;
+	}
 
-					if (c != 'L') { // primitive cls
-						end = pos + 1;
-					} else {
-						end = desc.indexOf(';', pos + 1) + 1;
-						assert end != 0;
-					}
+	/**
+	 * Check whether the method's descriptor matches desc with all class names expressed in nameType.
+	 */
+	public static boolean hasDesc(MethodInstance method, String desc, NameType nameType) {
+		assert desc.startsWith("(");
+		int idx = 0;
+		int pos = 1;
+		boolean last = false;
 
-					String clsMappedName = match.getName(nameType);
-					if (clsMappedName == null) continue methodLoop;
+		do {
+			char c = desc.charAt(pos);
+			ClassInstance match;
+
+			if (c == ')') {
+				if (idx != method.args.length) return false;
+				last = true;
+				pos++;
+				c = desc.charAt(pos);
+				match = method.retType;
+			} else {
+				if (idx >= method.args.length) return false;
+				match = method.args[idx].type;
+			}
 
-					if (c != 'L') {
-						if (clsMappedName.length() != end - pos || !desc.startsWith(clsMappedName, pos)) continue methodLoop;
-					} else {
-						if (clsMappedName.length() != end - pos - 2 || !desc.startsWith(clsMappedName, pos + 1)) continue methodLoop;
-					}
+			if (c == '[') { // array cls
+				int dims = 1;
+				while ((c = desc.charAt(++pos)) == '[') dims++;
 
-					pos = end;
-					idx++;
-				} while (!last);
+				if (match.getArrayDimensions() != dims) return false;
+				match = match.elementClass;
+			} else {
+				if (match.isArray()) return false;
 			}
 
-			if (ret != null) return null; // non-unique
+			int end;
 
-			ret = method;
-		}
+			if (c != 'L') { // primitive cls
+				end = pos + 1;
+			} else {
+				end = desc.indexOf(';', pos + 1) + 1;
+				assert end != 0;
+			}
 
-		return ret;
+			String clsMappedName = match.getName(nameType);
+			if (clsMappedName == null) return false;
+
+			if (c != 'L') {
+				if (clsMappedName.length() != end - pos || !desc.startsWith(clsMappedName, pos)) return false;
+			} else {
+				if (clsMappedName.length() != end - pos - 2 || !desc.startsWith(clsMappedName, pos + 1)) return false;
+			}
+
+			pos = end;
+			idx++;
+		} while (!last);
+
+		return true;
 	}
 
 	public FieldInstance getField(String name, String desc) {
@@ -593,16 +616,7 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 				continue;
 			}
 
-			if (desc != null) {
-				String clsMappedName = field.type.getName(nameType);
-				if (clsMappedName == null) continue;
-
-				if (desc.startsWith("[") || !desc.endsWith(";")) {
-					if (!desc.equals(clsMappedName)) continue;
-				} else {
-					if (desc.length() != clsMappedName.length() + 2 || !desc.startsWith(clsMappedName, 1)) continue;
-				}
-			}
+			if (desc != null && !hasDesc(field, desc, nameType)) continue;
 
 			if (ret != null) return null; // non-unique
 
@@ -612,6 +626,20 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 		return ret;
 	}
 
+	/**
+	 * Check whether the field's descriptor matches desc with all class names expressed in nameType.
+	 */
+	public static boolean hasDesc(FieldInstance field, String desc, NameType nameType) {
+		String clsMappedName = field.type.getName(nameType);
+		if (clsMappedName == null) return false;
+
+		if (desc.startsWith("[") || !desc.endsWith(";")) {
+			return desc.equals(clsMappedName);
+		} else {
+			return desc.length() == clsMappedName.length() + 2 && desc.startsWith(clsMappedName, 1);
+		}
+	}
+
 	public MethodInstance resolveMethod(String name, String desc, boolean toInterface) {
 		// toInterface = false: https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-5.html#jvms-5.4.3.3
 		// toInterface = true: https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-5.html#jvms-5.4.3.4
@@ -848,6 +876,7 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 
 	public void setTmpName(String tmpName) {
 		this.tmpName = tmpName;
+		onNameChange();
 	}
 
 	@Override
@@ -867,6 +896,7 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 
 	public void setUid(int uid) {
 		this.uid = uid;
+		onNameChange();
 	}
 
 	@Override
@@ -888,7 +918,11 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 	public void setMappedName(String mappedName) {
 		assert mappedName == null || !hasOuterName(mappedName);
 
+		MatchesJournal journal;
+		if (!Objects.equals(this.mappedName, mappedName) && (journal = getJournal()) != null) journal.logMappedName(this, mappedName);
+
 		this.mappedName = mappedName;
+		onNameChange();
 	}
 
 	@Override
@@ -906,6 +940,9 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 	public void setMappedComment(String comment) {
 		if (comment != null && comment.isEmpty()) comment = null;
 
+		MatchesJournal journal;
+		if (!Objects.equals(mappedComment, comment) && (journal = getJournal()) != null) journal.logMappedComment(this, comment);
+
 		this.mappedComment = comment;
 	}
 
@@ -917,8 +954,12 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 	public void setAuxName(int index, String name) {
 		assert name == null || !hasOuterName(name);
 
+		MatchesJournal journal;
+		if (!Objects.equals(auxName != null ? auxName[index] : null, name) && (journal = getJournal()) != null) journal.logAuxName(this, index, name);
+
 		if (this.auxName == null) this.auxName = new String[NameType.AUX_COUNT];
 		this.auxName[index] = name;
+		onNameChange();
 	}
 
 	public boolean isAssignableFrom(ClassInstance c) {
@@ -1035,23 +1076,102 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 	}
 
 	public void accept(ClassVisitor visitor, NameType nameType) {
+		if (nameType != NameType.PLAIN) {
+			accept(visitor, new AsmRemapper(env, nameType, env.getRemapTable(nameType)));
+		} else {
+			ClassNode cn = getMergedAsmNode();
+			if (cn == null) throw new IllegalArgumentException("cls without asm node: "+this);
+
+			synchronized (cn) { // visiting resets the shared label state in the node's instructions
+				cn.accept(visitor);
+			}
+		}
+	}
+
+	/**
+	 * Visit this class with the names supplied by a custom remapper.
+	 */
+	public void accept(ClassVisitor visitor, AsmRemapper remapper) {
 		ClassNode cn = getMergedAsmNode();
 		if (cn == null) throw new IllegalArgumentException("cls without asm node: "+this);
 
-		synchronized (Util.asmNodeSync) {
+		synchronized (cn) { // visiting resets the shared label state in the node's instructions
+			AsmClassRemapper.process(cn, remapper, visitor);
+		}
+	}
+
+	/**
+	 * Get the class file for this class with names from nameType applied.
+	 *
+	 * <p>The result is cached per name type until a name or match of any class involved in the remapping changes or the
+	 * garbage collector needs the memory, the returned array is shared and must not be modified.
+	 */
+	public byte[] serialize(NameType nameType) {
+		byte[] ret = getSerialized(nameType);
+		if (ret != null) return ret;
+
+		ClassNode cn = getMergedAsmNode();
+		if (cn == null) throw new IllegalArgumentException("cls without asm node: "+this);
+
+		synchronized (cn) {
+			ret = getSerialized(nameType);
+			if (ret != null) return ret;
+
+			Map<ClassInstance, Integer> dependencies = new IdentityHashMap<>();
+			ClassWriter writer = new ClassWriter(0);
+
 			if (nameType != NameType.PLAIN) {
-				AsmClassRemapper.process(cn, new AsmRemapper(env, nameType), visitor);
+				AsmClassRemapper.process(cn, new AsmRemapper(env, nameType, env.getRemapTable(nameType)) {
+					@Override
+					protected void onClassUse(ClassInstance cls) {
+						cls.addNameDependencies(dependencies);
+					}
+				}, writer);
 			} else {
-				cn.accept(visitor);
+				cn.accept(writer);
 			}
+
+			ret = writer.toByteArray();
+
+			if (serialized == null) serialized = new SerializedClass[NameType.values().length];
+			serialized[nameType.ordinal()] = new SerializedClass(ret, dependencies);
+
+			return ret;
 		}
 	}
 
-	public byte[] serialize(NameType nameType) {
-		ClassWriter writer = new ClassWriter(0);
-		accept(writer, nameType);
+	private byte[] getSerialized(NameType nameType) {
+		SerializedClass[] serialized = this.serialized;
+		if (serialized == null) return null;
+
+		SerializedClass entry = serialized[nameType.ordinal()];
 
-		return writer.toByteArray();
+		return entry != null && entry.isValid() ? entry.data.get() : null;
+	}
+
+	/**
+	 * Record all classes whose names or matches determine this class' name, together with their current name version.
+	 */
+	public void addNameDependencies(Map<ClassInstance, Integer> out) {
+		if (out.putIfAbsent(this, nameVersion.get()) != null) return;
+
+		if (elementClass != null) elementClass.addNameDependencies(out);
+		if (outerClass != null) outerClass.addNameDependencies(out);
+		if (matchedClass != null) matchedClass.addNameDependencies(out);
+	}
+
+	/**
+	 * Get the counter tracking name and match changes of this class and its members.
+	 */
+	public int getNameVersion() {
+		return nameVersion.get();
+	}
+
+	/**
+	 * Invalidate cached class files depending on the names of this class or its members.
+	 */
+	void onNameChange() {
+		nameVersion.incrementAndGet();
 	}
 
 	@Override
@@ -1108,6 +1228,33 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 		}
 	}
 
+	/**
+	 * Cached class file, softly referenced since there may be one per name type for every class.
+	 */
+	private static final class SerializedClass {
+		SerializedClass(byte[] data, Map<ClassInstance, Integer> dependencies) {
+			this.data = new SoftReference<>(data);
+			this.dependencies = dependencies.keySet().toArray(new ClassInstance[0]);
+			this.versions = new int[this.dependencies.length];
+
+			for (int i = 0; i < versions.length; i++) {
+				versions[i] = dependencies.get(this.dependencies[i]);
+			}
+		}
+
+		boolean isValid() {
+			for (int i = 0; i < versions.length; i++) {
+				if (dependencies[i].nameVersion.get() != versions[i]) return false;
+			}
+
+			return true;
+		}
+
+		final SoftReference<byte[]> data;
+		final ClassInstance[] dependencies;
+		final int[] versions;
+	}
+
 	public static final Comparator<ClassInstance> nameComparator = Comparator.comparing(ClassInstance::getName);
 
 	private static final ClassInstance[] noArrays = new ClassInstance[0];
@@ -1153,4 +1300,8 @@ public final class ClassInstance implements Matchable<ClassInstance> {
 
 	private boolean matchable = true;
 	private ClassInstance matchedClass;
+
+	private final AtomicInteger nameVersion = new AtomicInteger();
+	private volatile SerializedClass[] serialized;
+	volatile MatchStatus matchStatus;
 }
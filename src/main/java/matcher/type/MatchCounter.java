@@ -0,0 +1,139 @@
+package matcher.type;
+
+/**
+ * Running totals of the side A classes, real members, args and vars and how many of them are matched, for all classes
+ * and for input classes only.
+ *
+ * <p>The counts get established by a single scan on first use and are then kept current by the setMatch methods, so
+ * querying them doesn't depend on the project size. Adding classes to side A, which only happens for non-input
+ * classes, triggers a rescan. The scan runs without holding the lock and gets repeated if a match changed meanwhile.
+ */
+public final class MatchCounter {
+	MatchCounter(ClassEnvironment env) {
+		this.env = env;
+	}
+
+	/**
+	 * Get the total and matched count for each {@link MatchableKind}, interleaved in kind order.
+	 */
+	public int[] getCounts(boolean inputsOnly) {
+		int classCount;
+		int version;
+
+		synchronized (this) {
+			classCount = env.getClassesA().size();
+			if (valid && classCount == this.classCount) return (inputsOnly ? inputCounts : allCounts).clone();
+
+			version = this.version;
+		}
+
+		for (;;) {
+			int[] newInputCounts = new int[MatchableKind.VALUES.length * 2];
+			int[] newAllCounts = new int[MatchableKind.VALUES.length * 2];
+			for (ClassInstance cls : env.getClassesA()) {
+				count(cls, newInputCounts, newAllCounts);
+			}
+
+			synchronized (this) {
+				if (version == this.version) {
+					this.inputCounts = newInputCounts;
+					this.allCounts = newAllCounts;
+					this.classCount = classCount;
+					valid = true;
+
+					return (inputsOnly ? inputCounts : allCounts).clone();
+				}
+
+				// a match changed during the scan, which may or may not be reflected in the new counts
+				classCount = env.getClassesA().size();
+				version = this.version;
+			}
+		}
+	}
+
+	private static void count(ClassInstance cls, int[] inputCounts, int[] allCounts) {
+		boolean input = cls.isInput();
+
+		add(cls, input, inputCounts, allCounts);
+
+		for (MethodInstance method : cls.getMethods()) {
+			if (!method.isReal()) continue;
+
+			add(method, input, inputCounts, allCounts);
+
+			for (MethodVarInstance arg : method.getArgs()) {
+				add(arg, input, inputCounts, allCounts);
+			}
+
+			for (MethodVarInstance var : method.getVars()) {
+				add(var, input, inputCounts, allCounts);
+			}
+		}
+
+		for (FieldInstance field : cls.getFields()) {
+			if (field.isReal()) add(field, input, inputCounts, allCounts);
+		}
+	}
+
+	private static void add(Matchable<?> matchable, boolean input, int[] inputCounts, int[] allCounts) {
+		int idx = matchable.getKind().ordinal() * 2;
+		int matched = matchable.hasMatch() ? 1 : 0;
+
+		allCounts[idx]++;
+		allCounts[idx + 1] += matched;
+
+		if (input) {
+			inputCounts[idx]++;
+			inputCounts[idx + 1] += matched;
+		}
+	}
+
+	/**
+	 * Get the counter tracking match changes of classes, members, args and vars on either side.
+	 */
+	public synchronized int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Record a match change of matchable, must be called after storing the new match.
+	 */
+	synchronized void onMatchChange(Matchable<?> matchable, boolean wasMatched, boolean matched) {
+		version++;
+
+		if (!valid || wasMatched == matched) return;
+
+		ClassInstance cls;
+
+		if (matchable instanceof ClassInstance) {
+			cls = (ClassInstance) matchable;
+		} else if (matchable instanceof MemberInstance) {
+			if (!((MemberInstance<?>) matchable).isReal()) return;
+			cls = ((MemberInstance<?>) matchable).getCls();
+		} else {
+			MethodInstance method = ((MethodVarInstance) matchable).getMethod();
+			if (!method.isReal()) return;
+			cls = method.getCls();
+		}
+
+		if (cls.getEnv() != env.getEnvA() || cls.isArray()) return; // array classes aren't part of getClassesA
+
+		int idx = matchable.getKind().ordinal() * 2 + 1;
+		int delta = matched ? 1 : -1;
+
+		allCounts[idx] += delta;
+		if (cls.isInput()) inputCounts[idx] += delta;
+	}
+
+	synchronized void reset() {
+		valid = false;
+		version++;
+	}
+
+	private final ClassEnvironment env;
+	private int[] inputCounts;
+	private int[] allCounts;
+	private int classCount;
+	private int version;
+	private boolean valid;
+}
@@ -0,0 +1,219 @@
+package matcher.type;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+import matcher.Matcher;
+
+/**
+ * Match state and similarity of a class, member, arg or var, cached with the matchable.
+ *
+ * <p>Determining either requires scanning potential matches, members and method code, which is too slow to repeat for
+ * every cell render or sort comparison. {@link #get} thus only returns the cached value, {@link #computeUpdates}
+ * recomputes it in bulk for the entries whose classes saw a match or name change since, as tracked by
+ * {@link ClassInstance#getNameVersion} of the owning and matched class. Unmatched classes additionally depend on the
+ * match state of all classes, which is tracked by {@link ClassEnvironment#getMatchVersion}.
+ *
+ * <p>The recomputed values only get published by {@link Updates#apply} on the reading thread, so a sort never sees
+ * them change midway.
+ */
+public final class MatchStatus {
+	/**
+	 * Match states in their sort order.
+	 */
+	public enum State {
+		UNMATCHED, PARTIAL, SHALLOW, FULL, UNMATCHABLE;
+	}
+
+	private MatchStatus(State state, float similarity, int version, ClassInstance matchedOwner, int matchedVersion, int globalVersion) {
+		this.state = state;
+		this.similarity = similarity;
+		this.version = version;
+		this.matchedOwner = matchedOwner;
+		this.matchedVersion = matchedVersion;
+		this.globalVersion = globalVersion;
+	}
+
+	/**
+	 * Get the cached status of matchable, which may be outdated, or {@link #PENDING} if it was never computed.
+	 */
+	public static MatchStatus get(Matchable<?> matchable) {
+		MatchStatus ret = getCached(matchable);
+
+		return ret != null ? ret : PENDING;
+	}
+
+	/**
+	 * Recompute the missing or outdated status of the classes and their members, args and vars in parallel.
+	 *
+	 * <p>The new statuses aren't visible to {@link #get} before {@link Updates#apply} got called.
+	 */
+	public static Updates computeUpdates(Collection<ClassInstance> classes, DoubleConsumer progressReceiver) {
+		Updates ret = new Updates();
+
+		Matcher.runInParallel(new ArrayList<>(classes), cls -> {
+			Updates updates = new Updates();
+
+			updates.add(cls);
+
+			for (MethodInstance method : cls.getMethods()) {
+				updates.add(method);
+
+				for (MethodVarInstance arg : method.getArgs()) {
+					updates.add(arg);
+				}
+
+				for (MethodVarInstance var : method.getVars()) {
+					updates.add(var);
+				}
+			}
+
+			for (FieldInstance field : cls.getFields()) {
+				updates.add(field);
+			}
+
+			if (!updates.matchables.isEmpty()) {
+				synchronized (ret) {
+					ret.addAll(updates);
+				}
+			}
+		}, progressReceiver);
+
+		return ret;
+	}
+
+	/**
+	 * Recomputed statuses waiting to be published.
+	 */
+	public static final class Updates {
+		/**
+		 * Publish the statuses, must be called on the thread reading them, i.e. the FX thread.
+		 *
+		 * @return number of matchables whose state or similarity changed
+		 */
+		public int apply() {
+			for (int i = 0; i < matchables.size(); i++) {
+				setCached(matchables.get(i), statuses.get(i));
+			}
+
+			return changed;
+		}
+
+		private void add(Matchable<?> matchable) {
+			MatchStatus old = getCached(matchable);
+			if (old != null && old.isValid(matchable)) return;
+
+			MatchStatus status = compute(matchable);
+			matchables.add(matchable);
+			statuses.add(status);
+
+			if (old == null || old.state != status.state || old.similarity != status.similarity) changed++;
+		}
+
+		private void addAll(Updates updates) {
+			matchables.addAll(updates.matchables);
+			statuses.addAll(updates.statuses);
+			changed += updates.changed;
+		}
+
+		private final List<Matchable<?>> matchables = new ArrayList<>();
+		private final List<MatchStatus> statuses = new ArrayList<>();
+		private int changed;
+	}
+
+	private static MatchStatus compute(Matchable<?> matchable) {
+		// read the versions before the state, a concurrent change will invalidate the result
+		ClassInstance owner = getOwnerClass(matchable);
+		int version = owner.getNameVersion();
+		ClassInstance matchedOwner = owner.getMatch();
+		int matchedVersion = matchedOwner != null ? matchedOwner.getNameVersion() : 0;
+		int globalVersion = matchable == owner ? owner.getEnv().getGlobal().getMatchVersion() : 0;
+
+		State state;
+
+		if (!matchable.hasPotentialMatch()) {
+			state = State.UNMATCHABLE;
+		} else if (!matchable.hasMatch()) {
+			state = State.UNMATCHED;
+		} else if (!matchable.isFullyMatched(false)) {
+			state = State.PARTIAL;
+		} else if (!matchable.isFullyMatched(true)) {
+			state = State.SHALLOW;
+		} else {
+			state = State.FULL;
+		}
+
+		return new MatchStatus(state, matchable.getSimilarity(), version, matchedOwner, matchedVersion, globalVersion);
+	}
+
+	private boolean isValid(Matchable<?> matchable) {
+		ClassInstance owner = getOwnerClass(matchable);
+
+		return owner.getNameVersion() == version
+				&& owner.getMatch() == matchedOwner
+				&& (matchedOwner == null || matchedOwner.getNameVersion() == matchedVersion)
+				&& (matchable != owner || owner.hasMatch() || owner.getEnv().getGlobal().getMatchVersion() == globalVersion);
+	}
+
+	private static ClassInstance getOwnerClass(Matchable<?> matchable) {
+		while (!(matchable instanceof ClassInstance)) {
+			matchable = matchable.getOwner();
+		}
+
+		return (ClassInstance) matchable;
+	}
+
+	private static MatchStatus getCached(Matchable<?> matchable) {
+		if (matchable instanceof ClassInstance) {
+			return ((ClassInstance) matchable).matchStatus;
+		} else if (matchable instanceof MemberInstance<?>) {
+			return ((MemberInstance<?>) matchable).matchStatus;
+		} else {
+			return ((MethodVarInstance) matchable).matchStatus;
+		}
+	}
+
+	private static void setCached(Matchable<?> matchable, MatchStatus status) {
+		if (matchable instanceof ClassInstance) {
+			((ClassInstance) matchable).matchStatus = status;
+		} else if (matchable instanceof MemberInstance<?>) {
+			((MemberInstance<?>) matchable).matchStatus = status;
+		} else {
+			((MethodVarInstance) matchable).matchStatus = status;
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public float getSimilarity() {
+		return similarity;
+	}
+
+	/**
+	 * Whether this is the placeholder for a status that wasn't computed yet.
+	 */
+	public boolean isPending() {
+		return this == PENDING;
+	}
+
+	@Override
+	public String toString() {
+		return state+" "+similarity;
+	}
+
+	/**
+	 * Placeholder status sorting like an unmatched matchable.
+	 */
+	public static final MatchStatus PENDING = new MatchStatus(State.UNMATCHED, 0, 0, null, 0, 0);
+
+	private final State state;
+	private final float similarity;
+	private final int version;
+	private final ClassInstance matchedOwner;
+	private final int matchedVersion;
+	private final int globalVersion;
+}
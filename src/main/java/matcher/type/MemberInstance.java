@@ -3,10 +3,12 @@ package matcher.type;
 import matcher.NameType;
 import matcher.SimilarityChecker;
 import matcher.Util;
+import matcher.serdes.MatchesJournal;
 import org.objectweb.asm.Opcodes;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Objects;
 import java.util.Set;
 
 public abstract class MemberInstance<T extends MemberInstance<T>> implements Matchable<T> {
@@ -211,6 +213,7 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 
 	public void setTmpName(String tmpName) {
 		hierarchyData.tmpName = tmpName;
+		onNameChange();
 	}
 
 	@Override
@@ -232,6 +235,7 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 
 	public void setUid(int uid) {
 		hierarchyData.matchedHierarchy.uid = uid;
+		onNameChange();
 	}
 
 	protected abstract String getUidString();
@@ -254,7 +258,11 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 	}
 
 	public void setMappedName(String mappedName) {
+		MatchesJournal journal;
+		if (!Objects.equals(hierarchyData.mappedName, mappedName) && (journal = cls.getJournal()) != null) journal.logMappedName(this, mappedName);
+
 		hierarchyData.mappedName = mappedName;
+		onNameChange();
 	}
 
 	@Override
@@ -272,6 +280,9 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 	public void setMappedComment(String comment) {
 		if (comment != null && comment.isEmpty()) comment = null;
 
+		MatchesJournal journal;
+		if (!Objects.equals(mappedComment, comment) && (journal = cls.getJournal()) != null) journal.logMappedComment(this, comment);
+
 		this.mappedComment = comment;
 	}
 
@@ -296,8 +307,12 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 	}
 
 	public void setAuxName(int index, String name) {
+		MatchesJournal journal;
+		if (!Objects.equals(hierarchyData.auxName != null ? hierarchyData.auxName[index] : null, name) && (journal = cls.getJournal()) != null) journal.logAuxName(this, index, name);
+
 		if (hierarchyData.auxName == null) hierarchyData.auxName = new String[NameType.AUX_COUNT];
 		hierarchyData.auxName[index] = name;
+		onNameChange();
 	}
 
 	@Override
@@ -312,7 +327,11 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 		if (hierarchyData == null) return !matchable;
 		if (!matchable && hierarchyData.matchedHierarchy != null) return false;
 
+		MatchesJournal journal;
+		if (hierarchyData.matchable != matchable && (journal = cls.getJournal()) != null) journal.logMatchable(this, matchable);
+
 		hierarchyData.matchable = matchable;
+		onNameChange();
 
 		return true;
 	}
@@ -326,8 +345,36 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 		assert match == null || isMatchable();
 		assert match == null || cls == match.cls.getMatch();
 
+		boolean wasMatched = matchedInstance != null;
 		this.matchedInstance = match;
 		this.hierarchyData.matchedHierarchy = match != null ? match.hierarchyData : null;
+		cls.getEnv().getGlobal().getMatchCounter().onMatchChange(this, wasMatched, match != null);
+		onNameChange();
+	}
+
+	/**
+	 * Invalidate cached class files of all classes using names from this member's hierarchy, directly or through a match.
+	 */
+	void onNameChange() {
+		if (hierarchyData == null) {
+			cls.onNameChange();
+			return;
+		}
+
+		for (T member : hierarchyData.getMembers()) {
+			member.cls.onNameChange();
+
+			T match = member.matchedInstance;
+			if (match == null) continue;
+
+			if (match.hierarchyData == null) {
+				match.cls.onNameChange();
+			} else {
+				for (T matchMember : match.hierarchyData.getMembers()) {
+					matchMember.cls.onNameChange();
+				}
+			}
+		}
 	}
 
 	@Override
@@ -358,4 +405,5 @@ public abstract class MemberInstance<T extends MemberInstance<T>> implements Mat
 	String mappedComment;
 
 	T matchedInstance;
+	volatile MatchStatus matchStatus;
 }
@@ -4,6 +4,9 @@ import matcher.NameType;
 import matcher.SimilarityChecker;
 import matcher.Util;
 import matcher.classifier.ClassifierUtil;
+import matcher.serdes.MatchesJournal;
+
+import java.util.Objects;
 
 public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 	MethodVarInstance(MethodInstance method, boolean isArg, int index, int lvIndex, int asmIndex,
@@ -170,6 +173,7 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 
 	public void setTmpName(String tmpName) {
 		this.tmpName = tmpName;
+		onNameChange();
 	}
 
 	@Override
@@ -179,6 +183,7 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 
 	public void setUid(int uid) {
 		this.uid = uid;
+		method.getCls().onNameChange();
 	}
 
 	@Override
@@ -187,7 +192,11 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 	}
 
 	public void setMappedName(String mappedName) {
+		MatchesJournal journal;
+		if (!Objects.equals(this.mappedName, mappedName) && (journal = method.getCls().getJournal()) != null) journal.logMappedName(this, mappedName);
+
 		this.mappedName = mappedName;
+		onNameChange();
 	}
 
 	@Override
@@ -205,6 +214,9 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 	public void setMappedComment(String comment) {
 		if (comment != null && comment.isEmpty()) comment = null;
 
+		MatchesJournal journal;
+		if (!Objects.equals(mappedComment, comment) && (journal = method.getCls().getJournal()) != null) journal.logMappedComment(this, comment);
+
 		this.mappedComment = comment;
 	}
 
@@ -214,8 +226,12 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 	}
 
 	public void setAuxName(int index, String name) {
+		MatchesJournal journal;
+		if (!Objects.equals(auxName != null ? auxName[index] : null, name) && (journal = method.getCls().getJournal()) != null) journal.logAuxName(this, index, name);
+
 		if (this.auxName == null) this.auxName = new String[NameType.AUX_COUNT];
 		this.auxName[index] = name;
+		onNameChange();
 	}
 
 	@Override
@@ -240,7 +256,11 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 		if (!matchable && matchedInstance != null) return false;
 		if (matchable && !method.isMatchable()) return false;
 
+		MatchesJournal journal;
+		if (this.matchable != matchable && (journal = method.getCls().getJournal()) != null) journal.logMatchable(this, matchable);
+
 		this.matchable = matchable;
+		method.getCls().onNameChange();
 
 		return true;
 	}
@@ -254,7 +274,18 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 		assert match == null || isMatchable();
 		assert match == null || method == match.method.getMatch();
 
+		boolean wasMatched = matchedInstance != null;
 		this.matchedInstance = match;
+		method.getCls().getEnv().getGlobal().getMatchCounter().onMatchChange(this, wasMatched, match != null);
+		method.getCls().onNameChange();
+	}
+
+	/**
+	 * Invalidate cached class files of the owning class and the class of the matched variable, which may use this name.
+	 */
+	private void onNameChange() {
+		method.getCls().onNameChange();
+		if (matchedInstance != null) matchedInstance.method.getCls().onNameChange();
 	}
 
 	@Override
@@ -296,4 +327,5 @@ public final class MethodVarInstance implements Matchable<MethodVarInstance> {
 
 	private boolean matchable = true;
 	private MethodVarInstance matchedInstance;
+	volatile MatchStatus matchStatus;
 }
@@ -0,0 +1,54 @@
+package matcher.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ProGuardReaderTest {
+	/**
+	 * Switching the source namespace to the target requires multiple passes, each has to start at the first line.
+	 */
+	@Test
+	public void multiPassFromFile(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("mappings.txt");
+		Files.write(file, mappings.getBytes(StandardCharsets.UTF_8));
+
+		MemoryMappingTree tree = new MemoryMappingTree();
+		MappingReader.read(file, MappingFormat.PROGUARD, "target", "source", tree);
+
+		assertEquals(List.of("a", "d"), getClassNames(tree));
+	}
+
+	@Test
+	public void multiPassFromReader() throws IOException {
+		MemoryMappingTree tree = new MemoryMappingTree();
+		ProGuardReader.read(new StringReader(mappings), new MappingSourceNsSwitch(tree, "target"));
+
+		assertEquals(List.of("a", "d"), getClassNames(tree));
+	}
+
+	private static List<String> getClassNames(MappingTree tree) {
+		List<String> ret = new ArrayList<>();
+
+		for (MappingTree.ClassMapping cls : tree.getClasses()) {
+			ret.add(cls.getSrcName());
+		}
+
+		return ret;
+	}
+
+	private static final String mappings = "com.example.Foo -> a:\n"
+			+ "    int bar -> b\n"
+			+ "    void baz(int) -> c\n"
+			+ "com.example.Qux -> d:\n"
+			+ "    int x -> e\n";
+}